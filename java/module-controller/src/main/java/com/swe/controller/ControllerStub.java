@@ -0,0 +1,39 @@
+package com.swe.controller;
+
+import com.swe.controller.RPCinterface.AbstractRPC;
+import com.swe.controller.RPCinterface.RemoteProcedure;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Typed client of the controller procedures. The procedure ids are
+ * resolved when the RPC connects, so a call is a plain method call.
+ */
+public class ControllerStub {
+    private final AbstractRPC rpc;
+
+    private final RemoteProcedure register;
+
+    private final RemoteProcedure createMeeting;
+
+    private final RemoteProcedure joinMeeting;
+
+    public ControllerStub(AbstractRPC rpc) {
+        this.rpc = rpc;
+        this.register = rpc.procedure(rpcUtils.REGISTER);
+        this.createMeeting = rpc.procedure(rpcUtils.CREATE_MEETING);
+        this.joinMeeting = rpc.procedure(rpcUtils.JOIN_MEETING);
+    }
+
+    public CompletableFuture<byte[]> register(byte[] data) {
+        return rpc.call(register, data);
+    }
+
+    public CompletableFuture<byte[]> createMeeting(byte[] data) {
+        return rpc.call(createMeeting, data);
+    }
+
+    public CompletableFuture<byte[]> joinMeeting(byte[] data) {
+        return rpc.call(joinMeeting, data);
+    }
+}
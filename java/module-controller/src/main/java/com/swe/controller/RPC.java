@@ -1,43 +1,1333 @@
 package com.swe.controller;
 
-import com.socketry.SocketryClient;
 import com.swe.controller.RPCinterface.AbstractRPC;
+import com.swe.controller.RPCinterface.BatchCall;
+import com.swe.controller.RPCinterface.HandlerStats;
+import com.swe.controller.RPCinterface.RemoteProcedure;
+import com.swe.controller.RPCinterface.RpcTransport;
+import com.swe.controller.RPCinterface.StreamSink;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
 
+/**
+ * RPC client and server over Socketry, or any other {@link RpcTransport}.
+ *
+ * <p>On connect the two sides swap the names of the procedures they serve
+ * through RPC-Hello. Calls are pipelined over the one connection: a call to
+ * a procedure the peer listed gets a request id, carried in a small header
+ * in front of its arguments, while a peer without RPC-Hello, such as a plain
+ * Socketry service, gets the arguments alone as before. At most
+ * {@code maxInFlight} calls are outstanding, further callers waiting for a
+ * slot. Each call completes with a {@link TimeoutException} once its deadline
+ * passes, and the wait for a slot counts against the deadline. An interrupted
+ * caller gets a failed future and keeps its interrupt flag. A call with the
+ * header that times out or is cancelled sends its request id to the peer's
+ * RPC-Cancel procedure, which interrupts the handler if it is still running.
+ * Handlers registered here accept calls with or without the header.
+ *
+ * <p>Several calls can share one round trip through RPC-Batch, either
+ * explicitly or by gathering the calls made within a short window. A batch
+ * is a count followed by each call's procedure name and arguments, and the
+ * reply holds a status and a result or error message per call. The peer runs
+ * the calls of a batch in order, each once the one before it has finished,
+ * through its procedure's handler like a single call, and a batch with the
+ * header is answered through RPC-Reply once all of them are done. A batch
+ * takes one slot of the window; if none is free it queues and is sent from
+ * the handler executor when a slot is returned, so neither the batching
+ * thread nor the thread returning the slot waits. A peer without RPC-Batch
+ * gets the calls of a batch one at a time, in the same order.
+ *
+ * <p>Subscribed handlers run on an executor, a virtual thread per call by
+ * default, so a slow handler does not hold up the connection. A call with the
+ * header is answered at once with a deferred marker, and its result follows
+ * through the caller's RPC-Reply procedure; calls without the header, and
+ * peers without RPC-Reply, wait for the handler as before. Each procedure can
+ * be limited to a number of concurrent calls, the rest queueing in order.
+ *
+ * <p>A streaming call opens through RPC-StreamOpen and its chunks come back
+ * through the caller's RPC-StreamChunk, numbered so they are delivered in
+ * order. The caller grants credit through RPC-StreamCredit as its subscriber
+ * requests chunks, and the handler's sink waits while it has none, so no more
+ * chunks are in flight than the subscriber asked for. A stream whose credit
+ * cannot be sent fails rather than waiting for chunks that will not come,
+ * and a chunk that cannot be sent cancels the stream, so the handler's next
+ * chunk throws. The subscriber is signalled outside any lock, one signal at
+ * a time, so it may request more from onNext. Streams have no deadline and
+ * do not count against the in-flight window, and fail at once if the peer
+ * does not serve RPC-StreamOpen.
+ */
 public class RPC implements AbstractRPC {
+    static final String CANCEL = "RPC-Cancel";
+
+    static final int DEFAULT_MAX_IN_FLIGHT = 64;
+
+    static final long DEFAULT_TIMEOUT_MILLIS = 30_000;
+
+    static final String BATCH = "RPC-Batch";
+
+    static final String REPLY = "RPC-Reply";
+
+    static final String STREAM_OPEN = "RPC-StreamOpen";
+
+    static final String STREAM_CHUNK = "RPC-StreamChunk";
+
+    static final String STREAM_CREDIT = "RPC-StreamCredit";
+
+    static final String HELLO = "RPC-Hello";
+
+    // a peer without RPC-Hello may never answer it
+    static final long HELLO_TIMEOUT_MILLIS = 2_000;
+
+    private static final byte OK = 0;
+
+    private static final byte FAILED = 1;
+
+    // stream chunks end with OK or FAILED
+    private static final byte DATA = 2;
+
+    private static final int MAGIC = 0x52504331;
+
+    private static final int DEFERRED = 0x52504344;
+
+    private static final int HEADER = Integer.BYTES + Long.BYTES;
+
     HashMap<String, Function<byte[], byte[]>> methods;
 
-    private SocketryClient socketryServer;
+    private final HashMap<String, Procedure> procedures;
+
+    private final RpcTransport transport;
+
+    private volatile boolean connected;
+
+    /** Procedures the peer listed in RPC-Hello; calls to them carry the header. */
+    private volatile Set<String> peerProcedures = Set.of();
+
+    private final Semaphore window;
+
+    private final long defaultTimeoutMillis;
+
+    private final AtomicLong nextRequestId = new AtomicLong();
+
+    private final Map<Long, Thread> running = new ConcurrentHashMap<>();
+
+    private final Map<Long, CompletableFuture<byte[]>> served = new ConcurrentHashMap<>();
+
+    private final Map<Long, CompletableFuture<byte[]>> awaitingReply = new ConcurrentHashMap<>();
+
+    private final Map<String, Handler> handlers = new ConcurrentHashMap<>();
+
+    private final Map<String, Handler> streamHandlers = new ConcurrentHashMap<>();
+
+    private final Map<Long, OutgoingStream> outgoing = new ConcurrentHashMap<>();
+
+    private final Map<Long, IncomingStream> incoming = new ConcurrentHashMap<>();
+
+    private volatile Executor handlerExecutor = defaultExecutor();
+
+    private final Procedure cancel;
+
+    private final Procedure batch;
+
+    private final Procedure reply;
+
+    private final Procedure streamOpen;
+
+    private final Procedure streamChunk;
+
+    private final Procedure streamCredit;
+
+    /** The RPC's own procedures, resolved only if the peer serves them. */
+    private final List<Procedure> internal = new ArrayList<>();
+
+    private final List<BatchCall> pendingCalls = new ArrayList<>();
+
+    private final List<CompletableFuture<byte[]>> pendingResults = new ArrayList<>();
+
+    private final ArrayDeque<Runnable> waitingBatches = new ArrayDeque<>();
+
+    private ScheduledExecutorService batchTimer;
+
+    private volatile long batchWindowMicros;
+
+    private int maxBatchCalls;
 
     public RPC() {
+        this(DEFAULT_MAX_IN_FLIGHT, DEFAULT_TIMEOUT_MILLIS);
+    }
+
+    public RPC(int maxInFlight, long timeoutMillis) {
+        this(new SocketryTransport(), maxInFlight, timeoutMillis);
+    }
+
+    public RPC(RpcTransport transport, int maxInFlight, long timeoutMillis) {
+        this.transport = transport;
         methods = new HashMap<>();
+        procedures = new HashMap<>();
+        window = new Semaphore(maxInFlight, true);
+        defaultTimeoutMillis = timeoutMillis;
+        cancel = internalProcedure(CANCEL);
+        batch = internalProcedure(BATCH);
+        reply = internalProcedure(REPLY);
+        methods.put(HELLO, this::receiveHello);
+        methods.put(CANCEL, this::cancelRunning);
+        methods.put(BATCH, this::runBatch);
+        methods.put(REPLY, this::receiveReply);
+        streamOpen = internalProcedure(STREAM_OPEN);
+        streamChunk = internalProcedure(STREAM_CHUNK);
+        streamCredit = internalProcedure(STREAM_CREDIT);
+        methods.put(STREAM_OPEN, this::openStream);
+        methods.put(STREAM_CHUNK, this::receiveChunk);
+        methods.put(STREAM_CREDIT, this::receiveCredit);
     }
 
     @Override
     public void subscribe(String methodName, Function<byte[], byte[]> method) {
-        methods.put(methodName, method);
+        subscribeAsync(methodName, args -> CompletableFuture.completedFuture(method.apply(args)));
+    }
+
+    @Override
+    public void subscribeAsync(String methodName, Function<byte[], CompletableFuture<byte[]>> method) {
+        final Handler handler = new Handler(method);
+        handlers.put(methodName, handler);
+        methods.put(methodName, args -> serve(handler, args));
+    }
+
+    @Override
+    public void setHandlerExecutor(Executor executor) {
+        handlerExecutor = executor;
+    }
+
+    @Override
+    public void setConcurrencyLimit(String methodName, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Concurrency limit of " + methodName + " must be at least 1, got "
+                    + limit);
+        }
+        handler(methodName).setLimit(limit);
+    }
+
+    @Override
+    public HandlerStats handlerStats(String methodName) {
+        return handler(methodName).stats();
+    }
+
+    @Override
+    public void subscribeStream(String methodName, BiConsumer<byte[], StreamSink> method) {
+        final Handler handler = new Handler(args -> {
+            final ByteBuffer buffer = ByteBuffer.wrap(args);
+            final OutgoingStream stream = outgoing.get(buffer.getLong());
+            if (stream == null) {
+                // cancelled before it started
+                return CompletableFuture.completedFuture(new byte[0]);
+            }
+            final byte[] data = new byte[buffer.remaining()];
+            buffer.get(data);
+            try {
+                method.accept(data, stream);
+                stream.end(OK, new byte[0]);
+            } catch (RuntimeException e) {
+                stream.end(FAILED, String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8));
+            }
+            return CompletableFuture.completedFuture(new byte[0]);
+        });
+        handlers.put(methodName, handler);
+        streamHandlers.put(methodName, handler);
+    }
+
+    @Override
+    public Flow.Publisher<byte[]> callStream(String methodName, final byte[] data) {
+        return subscriber -> new IncomingStream(nextRequestId.incrementAndGet(), subscriber).open(methodName, data);
+    }
+
+    private Handler handler(String methodName) {
+        final Handler handler = handlers.get(methodName);
+        if (handler == null) {
+            throw new IllegalArgumentException("Unknown procedure " + methodName);
+        }
+        return handler;
+    }
+
+    private Procedure internalProcedure(String methodName) {
+        final Procedure procedure = new Procedure(methodName);
+        internal.add(procedure);
+        return procedure;
     }
 
     @Override
     public Thread connect() throws IOException, InterruptedException, ExecutionException {
-        socketryServer = new SocketryClient(new byte[] {20}, 60000, methods);
-        Thread rpcThread = new Thread(socketryServer::listenLoop);
+        transport.connect(methods);
+        synchronized (procedures) {
+            for (Procedure procedure : procedures.values()) {
+                procedure.resolve(transport.procedureId(procedure.getName()));
+            }
+            connected = true;
+        }
+        Thread rpcThread = new Thread(transport::listenLoop);
         rpcThread.start();
+        hello();
+        // the peer's own hello may have come in before we were connected
+        resolveInternal(peerProcedures);
         return rpcThread;
     }
 
+    /**
+     * Swaps procedure names with the peer. A peer that does not answer is
+     * taken to serve none of ours, so it gets plain calls.
+     */
+    private void hello() {
+        try {
+            learn(transport.call(transport.procedureId(HELLO), encodeNames(methods.keySet()))
+                    .get(HELLO_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException | ExecutionException | TimeoutException e) {
+            // not an RPC peer
+        }
+    }
+
+    private byte[] receiveHello(byte[] args) {
+        learn(args);
+        return encodeNames(methods.keySet());
+    }
+
+    /**
+     * Records the procedures the peer serves and resolves the RPC's own
+     * procedures among them. Until connected only the names are kept.
+     */
+    private void learn(byte[] names) {
+        final ByteBuffer buffer = ByteBuffer.wrap(names);
+        final Set<String> served = new HashSet<>();
+        for (int count = buffer.getInt(); count > 0; count--) {
+            final byte[] name = new byte[buffer.getShort()];
+            buffer.get(name);
+            served.add(new String(name, StandardCharsets.UTF_8));
+        }
+        peerProcedures = served;
+        if (connected) {
+            resolveInternal(served);
+        }
+    }
+
+    private void resolveInternal(Set<String> served) {
+        for (Procedure procedure : internal) {
+            if (served.contains(procedure.getName()) && !procedure.isResolved()) {
+                procedure.resolve(transport.procedureId(procedure.getName()));
+            }
+        }
+    }
+
+    private static byte[] encodeNames(Set<String> names) {
+        final List<byte[]> encoded = new ArrayList<>();
+        int size = Integer.BYTES;
+        for (String name : List.copyOf(names)) {
+            final byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            encoded.add(bytes);
+            size += Short.BYTES + bytes.length;
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(size).putInt(encoded.size());
+        for (byte[] name : encoded) {
+            buffer.putShort((short) name.length).put(name);
+        }
+        return buffer.array();
+    }
+
+    @Override
+    public RemoteProcedure procedure(String methodName) {
+        synchronized (procedures) {
+            Procedure procedure = procedures.get(methodName);
+            if (procedure == null) {
+                procedure = new Procedure(methodName);
+                if (connected) {
+                    procedure.resolve(transport.procedureId(methodName));
+                }
+                procedures.put(methodName, procedure);
+            }
+            return procedure;
+        }
+    }
+
     @Override
     public CompletableFuture<byte[]> call(String methodName, final byte[] data) {
-        final byte methodId = socketryServer.getRemoteProcedureId(methodName);
+        return call(procedure(methodName), data);
+    }
+
+    @Override
+    public CompletableFuture<byte[]> call(RemoteProcedure procedure, final byte[] data) {
+        return call(procedure, data, defaultTimeoutMillis);
+    }
+
+    @Override
+    public CompletableFuture<byte[]> call(RemoteProcedure procedure, final byte[] data, long timeoutMillis) {
+        if (batchWindowMicros > 0 && batch.isResolved()) {
+            return gather(new BatchCall(procedure.getName(), data)).orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        }
+        return send(procedure, data, timeoutMillis);
+    }
+
+    private CompletableFuture<byte[]> send(RemoteProcedure procedure, final byte[] data, long timeoutMillis) {
+        final boolean framed = peerProcedures.contains(procedure.getName());
+        final long start = System.nanoTime();
+        try {
+            if (!window.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                return CompletableFuture.failedFuture(new TimeoutException(procedure.getName()
+                        + " found the in-flight window full for " + timeoutMillis + " ms"));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+        // the wait for the window counts against the deadline
+        final long remainingMillis = timeoutMillis - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (remainingMillis <= 0) {
+            releaseWindow();
+            return CompletableFuture.failedFuture(new TimeoutException(procedure.getName()
+                    + " spent its " + timeoutMillis + " ms deadline waiting for the in-flight window"));
+        }
+        final long requestId = nextRequestId.incrementAndGet();
+        final CompletableFuture<byte[]> result = new CompletableFuture<>();
+        result.whenComplete((response, error) -> {
+            awaitingReply.remove(requestId);
+            releaseWindow();
+        });
+        final CompletableFuture<byte[]> remote;
+        try {
+            if (framed) {
+                // registered before sending, as the deferred reply can overtake the marker
+                awaitingReply.put(requestId, result);
+                remote = invoke(procedure.getId(), frame(requestId, data));
+            } else {
+                remote = invoke(procedure.getId(), data);
+            }
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+        remote.whenComplete((response, error) -> {
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else if (!framed || !isDeferred(response)) {
+                result.complete(response);
+            }
+        });
+        result.orTimeout(remainingMillis, TimeUnit.MILLISECONDS).whenComplete((response, error) -> {
+            if (error instanceof TimeoutException || error instanceof CancellationException) {
+                remote.cancel(true);
+                if (framed) {
+                    sendCancel(requestId);
+                }
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public List<CompletableFuture<byte[]>> callBatch(List<BatchCall> calls) {
+        final List<CompletableFuture<byte[]>> results = new ArrayList<>(calls.size());
+        for (int i = 0; i < calls.size(); i++) {
+            results.add(new CompletableFuture<>());
+        }
+        sendBatch(calls, results);
+        return results;
+    }
+
+    @Override
+    public void setAutoBatch(long windowMicros, int maxCalls) {
+        synchronized (pendingCalls) {
+            if (windowMicros > 0 && batchTimer == null) {
+                batchTimer = Executors.newSingleThreadScheduledExecutor(task -> {
+                    final Thread thread = new Thread(task, "rpc-batcher");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            maxBatchCalls = maxCalls;
+            batchWindowMicros = windowMicros;
+        }
+        if (windowMicros <= 0) {
+            flushBatch();
+        }
+    }
+
+    private CompletableFuture<byte[]> gather(BatchCall call) {
+        final CompletableFuture<byte[]> result = new CompletableFuture<>();
+        boolean full;
+        synchronized (pendingCalls) {
+            if (pendingCalls.isEmpty()) {
+                batchTimer.schedule(this::flushBatch, batchWindowMicros, TimeUnit.MICROSECONDS);
+            }
+            pendingCalls.add(call);
+            pendingResults.add(result);
+            full = pendingCalls.size() >= maxBatchCalls;
+        }
+        if (full) {
+            flushBatch();
+        }
+        return result;
+    }
+
+    private void flushBatch() {
+        final List<BatchCall> calls;
+        final List<CompletableFuture<byte[]>> results;
+        synchronized (pendingCalls) {
+            if (pendingCalls.isEmpty()) {
+                return;
+            }
+            calls = new ArrayList<>(pendingCalls);
+            results = new ArrayList<>(pendingResults);
+            pendingCalls.clear();
+            pendingResults.clear();
+        }
+        sendBatch(calls, results);
+    }
+
+    private void sendBatch(List<BatchCall> calls, List<CompletableFuture<byte[]>> results) {
+        if (!batch.isResolved()) {
+            CompletableFuture<byte[]> previous = CompletableFuture.completedFuture(null);
+            for (int i = 0; i < calls.size(); i++) {
+                final BatchCall call = calls.get(i);
+                final CompletableFuture<byte[]> result = results.get(i);
+                // the next call goes out once this one is done, failed or not
+                previous.whenComplete((ignored, failure) -> send(procedure(call.methodName()), call.data(),
+                        defaultTimeoutMillis).whenComplete((response, error) -> {
+                            if (error != null) {
+                                result.completeExceptionally(error);
+                            } else {
+                                result.complete(response);
+                            }
+                        }));
+                previous = result;
+            }
+            return;
+        }
+        sendWhenWindowFree(() -> {
+            final long requestId = nextRequestId.incrementAndGet();
+            final CompletableFuture<byte[]> replied = new CompletableFuture<>();
+            replied.whenComplete((response, error) -> {
+                awaitingReply.remove(requestId);
+                releaseWindow();
+                if (error != null) {
+                    results.forEach(result -> result.completeExceptionally(error));
+                } else {
+                    completeBatch(calls, results, response);
+                }
+            });
+            // registered before sending, as the deferred reply can overtake the marker
+            awaitingReply.put(requestId, replied);
+            final CompletableFuture<byte[]> remote;
+            try {
+                remote = invoke(batch.getId(), frame(requestId, encodeBatch(calls)));
+            } catch (RuntimeException e) {
+                replied.completeExceptionally(e);
+                return;
+            }
+            remote.whenComplete((response, error) -> {
+                if (error != null) {
+                    replied.completeExceptionally(error);
+                } else if (!isDeferred(response)) {
+                    replied.complete(response);
+                }
+            });
+            // a peer that never replies must not keep the slot
+            replied.orTimeout(defaultTimeoutMillis, TimeUnit.MILLISECONDS);
+        });
+    }
+
+    private static void completeBatch(List<BatchCall> calls, List<CompletableFuture<byte[]>> results,
+            byte[] response) {
+        final ByteBuffer reply = ByteBuffer.wrap(response);
+        final int count = reply.getInt();
+        for (int i = 0; i < results.size(); i++) {
+            if (i >= count) {
+                results.get(i).completeExceptionally(new IllegalStateException("Batch reply is missing a result"));
+                continue;
+            }
+            final byte status = reply.get();
+            final byte[] body = new byte[reply.getInt()];
+            reply.get(body);
+            if (status == OK) {
+                results.get(i).complete(body);
+            } else {
+                results.get(i).completeExceptionally(new RuntimeException(calls.get(i).methodName()
+                        + " failed: " + new String(body, StandardCharsets.UTF_8)));
+            }
+        }
+    }
+
+    /**
+     * Sends a batch once a window slot is free, queueing it behind the
+     * batches already waiting instead of blocking the caller.
+     */
+    private void sendWhenWindowFree(Runnable send) {
+        synchronized (waitingBatches) {
+            if (!waitingBatches.isEmpty() || !window.tryAcquire()) {
+                waitingBatches.add(send);
+                return;
+            }
+        }
+        send.run();
+    }
+
+    /**
+     * Returns a window slot, handing it straight to the oldest waiting batch
+     * if there is one. The batch is sent from the handler executor, as the
+     * slot is often returned on the thread that received a reply.
+     */
+    private void releaseWindow() {
+        final Runnable next;
+        synchronized (waitingBatches) {
+            next = waitingBatches.poll();
+            if (next == null) {
+                window.release();
+                return;
+            }
+        }
+        handlerExecutor.execute(next);
+    }
+
+    private static byte[] encodeBatch(List<BatchCall> calls) {
+        final List<byte[]> names = new ArrayList<>(calls.size());
+        int size = Integer.BYTES;
+        for (BatchCall call : calls) {
+            final byte[] name = call.methodName().getBytes(StandardCharsets.UTF_8);
+            names.add(name);
+            size += Short.BYTES + name.length + Integer.BYTES + call.data().length;
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(size).putInt(calls.size());
+        for (int i = 0; i < calls.size(); i++) {
+            buffer.putShort((short) names.get(i).length).put(names.get(i));
+            buffer.putInt(calls.get(i).data().length).put(calls.get(i).data());
+        }
+        return buffer.array();
+    }
+
+    private byte[] runBatch(byte[] args) {
+        final ByteBuffer buffer = ByteBuffer.wrap(args);
+        long requestId = -1;
+        if (args.length >= HEADER && buffer.getInt(0) == MAGIC) {
+            requestId = buffer.position(Integer.BYTES).getLong();
+        }
+        final int count = buffer.getInt();
+        final List<CompletableFuture<byte[]>> results = new ArrayList<>(count);
+        CompletableFuture<byte[]> previous = CompletableFuture.completedFuture(null);
+        for (int i = 0; i < count; i++) {
+            final byte[] name = new byte[buffer.getShort()];
+            buffer.get(name);
+            final byte[] data = new byte[buffer.getInt()];
+            buffer.get(data);
+            final String methodName = new String(name, StandardCharsets.UTF_8);
+            // each call starts once the one before it is done, failed or not
+            previous = previous.handle((response, error) -> null)
+                    .thenCompose(ignored -> runBatched(methodName, data));
+            results.add(previous);
+        }
+        final CompletableFuture<byte[]> done = CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0]))
+                .handle((ignored, error) -> encodeBatchReply(results));
+        if (requestId < 0 || !reply.isResolved()) {
+            return done.join();
+        }
+        final long batchId = requestId;
+        done.whenComplete((response, error) -> sendReply(batchId, response, error));
+        return ByteBuffer.allocate(HEADER).putInt(DEFERRED).putLong(requestId).array();
+    }
+
+    /**
+     * Runs one call of a batch through its procedure's handler, so it gets
+     * the handler executor and concurrency limit of a single call.
+     */
+    private CompletableFuture<byte[]> runBatched(String methodName, byte[] data) {
+        final Function<byte[], byte[]> method = methods.get(methodName);
+        if (method == null) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Unknown procedure " + methodName));
+        }
+        final Handler handler = handlers.get(methodName);
+        if (handler != null) {
+            return handler.run(-1, data);
+        }
+        // the RPC's own procedures are cheap and run in place
         try {
-            return socketryServer.makeRemoteCall(methodId, data, 0);
+            return CompletableFuture.completedFuture(method.apply(data));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private static byte[] encodeBatchReply(List<CompletableFuture<byte[]>> results) {
+        final byte[] statuses = new byte[results.size()];
+        final List<byte[]> replies = new ArrayList<>(results.size());
+        int size = Integer.BYTES;
+        for (int i = 0; i < results.size(); i++) {
+            byte[] body;
+            try {
+                statuses[i] = OK;
+                body = results.get(i).join();
+            } catch (CompletionException | CancellationException e) {
+                Throwable cause = e;
+                if (e instanceof CompletionException && e.getCause() != null) {
+                    cause = e.getCause();
+                }
+                statuses[i] = FAILED;
+                body = String.valueOf(cause.getMessage()).getBytes(StandardCharsets.UTF_8);
+            }
+            if (body == null) {
+                body = new byte[0];
+            }
+            replies.add(body);
+            size += 1 + Integer.BYTES + body.length;
+        }
+        final ByteBuffer out = ByteBuffer.allocate(size).putInt(results.size());
+        for (int i = 0; i < results.size(); i++) {
+            out.put(statuses[i]).putInt(replies.get(i).length).put(replies.get(i));
+        }
+        return out.array();
+    }
+
+    private CompletableFuture<byte[]> invoke(byte methodId, final byte[] data) {
+        try {
+            return transport.call(methodId, data);
         } catch (InterruptedException e) {
-            throw new RuntimeException(e);
+            Thread.currentThread().interrupt();
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    private void sendCancel(long requestId) {
+        if (!cancel.isResolved()) {
+            return;
+        }
+        try {
+            invoke(cancel.getId(), ByteBuffer.allocate(Long.BYTES).putLong(requestId).array());
+        } catch (RuntimeException e) {
+            // the peer may not support cancellation; the call has already ended locally
+        }
+    }
+
+    private static byte[] frame(long requestId, byte[] data) {
+        return ByteBuffer.allocate(HEADER + data.length).putInt(MAGIC).putLong(requestId).put(data).array();
+    }
+
+    private static boolean isDeferred(byte[] response) {
+        return response != null && response.length == HEADER && ByteBuffer.wrap(response).getInt() == DEFERRED;
+    }
+
+    private byte[] serve(Handler handler, byte[] args) {
+        if (args == null || args.length < HEADER || ByteBuffer.wrap(args).getInt() != MAGIC) {
+            return await(handler.run(-1, args));
+        }
+        final long requestId = ByteBuffer.wrap(args).getLong(Integer.BYTES);
+        final CompletableFuture<byte[]> result = handler.run(requestId, Arrays.copyOfRange(args, HEADER, args.length));
+        if (!reply.isResolved()) {
+            return await(result);
+        }
+        result.whenComplete((response, error) -> sendReply(requestId, response, error));
+        return ByteBuffer.allocate(HEADER).putInt(DEFERRED).putLong(requestId).array();
+    }
+
+    private static byte[] await(CompletableFuture<byte[]> result) {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private void sendReply(long requestId, byte[] response, Throwable error) {
+        byte status = OK;
+        byte[] body = response;
+        if (error != null) {
+            if (error instanceof CompletionException && error.getCause() != null) {
+                error = error.getCause();
+            }
+            status = FAILED;
+            body = String.valueOf(error.getMessage()).getBytes(StandardCharsets.UTF_8);
+        }
+        if (body == null) {
+            body = new byte[0];
+        }
+        try {
+            invoke(reply.getId(), ByteBuffer.allocate(Long.BYTES + 1 + body.length)
+                    .putLong(requestId).put(status).put(body).array());
+        } catch (RuntimeException e) {
+            // the caller is gone; it fails the call on its own deadline
+        }
+    }
+
+    private byte[] receiveReply(byte[] args) {
+        final ByteBuffer buffer = ByteBuffer.wrap(args);
+        final CompletableFuture<byte[]> result = awaitingReply.remove(buffer.getLong());
+        if (result == null) {
+            return new byte[0];
+        }
+        final byte status = buffer.get();
+        final byte[] body = new byte[buffer.remaining()];
+        buffer.get(body);
+        if (status == OK) {
+            result.complete(body);
+        } else {
+            result.completeExceptionally(new RuntimeException(new String(body, StandardCharsets.UTF_8)));
+        }
+        return new byte[0];
+    }
+
+    private byte[] cancelRunning(byte[] args) {
+        final long requestId = ByteBuffer.wrap(args).getLong();
+        running.computeIfPresent(requestId, (id, thread) -> {
+            thread.interrupt();
+            return thread;
+        });
+        final CompletableFuture<byte[]> result = served.get(requestId);
+        if (result != null) {
+            result.cancel(true);
+        }
+        final OutgoingStream stream = outgoing.remove(requestId);
+        if (stream != null) {
+            stream.cancel();
+        }
+        return new byte[0];
+    }
+
+    private byte[] openStream(byte[] args) {
+        final ByteBuffer buffer = ByteBuffer.wrap(args);
+        final long streamId = buffer.getLong();
+        final long credit = buffer.getLong();
+        final byte[] name = new byte[buffer.getShort()];
+        buffer.get(name);
+        final String methodName = new String(name, StandardCharsets.UTF_8);
+        final Handler handler = streamHandlers.get(methodName);
+        if (handler == null) {
+            final byte[] message = ("Unknown stream procedure " + methodName).getBytes(StandardCharsets.UTF_8);
+            return ByteBuffer.allocate(1 + message.length).put(FAILED).put(message).array();
+        }
+        outgoing.put(streamId, new OutgoingStream(streamId, credit));
+        final byte[] data = ByteBuffer.allocate(Long.BYTES + buffer.remaining()).putLong(streamId).put(buffer).array();
+        handler.run(streamId, data);
+        return new byte[] {OK};
+    }
+
+    private byte[] receiveCredit(byte[] args) {
+        final ByteBuffer buffer = ByteBuffer.wrap(args);
+        final OutgoingStream stream = outgoing.get(buffer.getLong());
+        if (stream != null) {
+            stream.grant(buffer.getLong());
+        }
+        return new byte[0];
+    }
+
+    private byte[] receiveChunk(byte[] args) {
+        final ByteBuffer buffer = ByteBuffer.wrap(args);
+        final IncomingStream stream = incoming.get(buffer.getLong());
+        if (stream != null) {
+            stream.deliver(buffer.getLong(), buffer.slice());
+        }
+        return new byte[0];
+    }
+
+    private static long addCredit(long credit, long more) {
+        if (credit + more < 0) {
+            return Long.MAX_VALUE;
+        }
+        return credit + more;
+    }
+
+    private static Executor defaultExecutor() {
+        try {
+            return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                final Thread thread = new Thread(task, "rpc-handler");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * A remote procedure handle; only the RPC resolves it.
+     */
+    private static final class Procedure implements RemoteProcedure {
+        private final String name;
+
+        private volatile byte id;
+
+        private volatile boolean resolved;
+
+        Procedure(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public boolean isResolved() {
+            return resolved;
+        }
+
+        @Override
+        public byte getId() {
+            if (!resolved) {
+                throw new IllegalStateException("Remote procedure " + name + " is not resolved, connect first");
+            }
+            return id;
+        }
+
+        void resolve(byte procedureId) {
+            this.id = procedureId;
+            this.resolved = true;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * The handler side of a stream: sends chunks while the caller has credit.
+     * Chunks are numbered under the lock and sent outside it, so credit and
+     * cancellation arriving meanwhile are not held up by the send.
+     */
+    private final class OutgoingStream implements StreamSink {
+        private final long streamId;
+
+        private long credit;
+
+        private long nextSeq;
+
+        private boolean cancelled;
+
+        OutgoingStream(long streamId, long credit) {
+            this.streamId = streamId;
+            this.credit = credit;
+        }
+
+        @Override
+        public void next(byte[] chunk) {
+            final long seq;
+            synchronized (this) {
+                try {
+                    while (credit == 0 && !cancelled) {
+                        wait();
+                    }
+                } catch (InterruptedException e) {
+                    cancelled = true;
+                }
+                if (cancelled) {
+                    throw new CancellationException("Stream " + streamId + " was cancelled");
+                }
+                credit--;
+                seq = nextSeq++;
+            }
+            send(seq, DATA, chunk);
+        }
+
+        synchronized void grant(long more) {
+            credit = addCredit(credit, more);
+            notifyAll();
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            notifyAll();
+        }
+
+        void end(byte status, byte[] body) {
+            outgoing.remove(streamId);
+            final long seq;
+            synchronized (this) {
+                if (cancelled) {
+                    return;
+                }
+                seq = nextSeq++;
+            }
+            send(seq, status, body);
+        }
+
+        /**
+         * Sends one chunk. The caller cannot get past a chunk that was lost,
+         * so a failed send cancels the stream and the next chunk throws.
+         */
+        private void send(long seq, byte type, byte[] body) {
+            final CompletableFuture<byte[]> sent;
+            try {
+                sent = invoke(streamChunk.getId(), ByteBuffer.allocate(2 * Long.BYTES + 1 + body.length)
+                        .putLong(streamId).putLong(seq).put(type).put(body).array());
+            } catch (RuntimeException e) {
+                sendFailed();
+                return;
+            }
+            sent.whenComplete((response, error) -> {
+                if (error != null) {
+                    sendFailed();
+                }
+            });
+        }
+
+        private void sendFailed() {
+            outgoing.remove(streamId);
+            cancel();
+        }
+    }
+
+    /**
+     * The caller side of a stream: puts chunks back in order and turns the
+     * subscriber's demand into credit.
+     */
+    private final class IncomingStream implements Flow.Subscription {
+        private final long streamId;
+
+        private final Flow.Subscriber<? super byte[]> subscriber;
+
+        private final Map<Long, ByteBuffer> early = new HashMap<>();
+
+        private final ArrayDeque<Runnable> signals = new ArrayDeque<>();
+
+        private boolean emitting;
+
+        private long nextSeq;
+
+        private long unsent;
+
+        private boolean opened;
+
+        private boolean done;
+
+        IncomingStream(long streamId, Flow.Subscriber<? super byte[]> subscriber) {
+            this.streamId = streamId;
+            this.subscriber = subscriber;
+        }
+
+        void open(String methodName, byte[] data) {
+            incoming.put(streamId, this);
+            subscriber.onSubscribe(this);
+            if (!streamOpen.isResolved()) {
+                fail(new UnsupportedOperationException("The peer does not serve streams"));
+                return;
+            }
+            final long credit;
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                credit = unsent;
+                unsent = 0;
+            }
+            final byte[] name = methodName.getBytes(StandardCharsets.UTF_8);
+            final CompletableFuture<byte[]> remote;
+            try {
+                remote = invoke(streamOpen.getId(), ByteBuffer.allocate(2 * Long.BYTES + Short.BYTES + name.length
+                        + data.length).putLong(streamId).putLong(credit).putShort((short) name.length).put(name)
+                        .put(data).array());
+            } catch (RuntimeException e) {
+                fail(e);
+                return;
+            }
+            remote.whenComplete((response, error) -> {
+                if (error != null) {
+                    fail(error);
+                } else if (response[0] != OK) {
+                    fail(new RuntimeException(new String(response, 1, response.length - 1, StandardCharsets.UTF_8)));
+                } else {
+                    // credit sent before the peer knows the stream would be lost
+                    final long more;
+                    synchronized (this) {
+                        opened = true;
+                        more = unsent;
+                        unsent = 0;
+                    }
+                    sendCredit(more);
+                }
+            });
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                fail(new IllegalArgumentException("Requested " + n + " chunks"));
+                sendCancel(streamId);
+                return;
+            }
+            final long credit;
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                unsent = addCredit(unsent, n);
+                if (!opened) {
+                    return;
+                }
+                credit = unsent;
+                unsent = 0;
+            }
+            sendCredit(credit);
+        }
+
+        @Override
+        public void cancel() {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                done = true;
+                signals.clear();
+            }
+            incoming.remove(streamId);
+            sendCancel(streamId);
+        }
+
+        void deliver(long seq, ByteBuffer chunk) {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                early.put(seq, chunk);
+                ByteBuffer next;
+                while (!done && (next = early.remove(nextSeq)) != null) {
+                    nextSeq++;
+                    final byte type = next.get();
+                    final byte[] body = new byte[next.remaining()];
+                    next.get(body);
+                    if (type == DATA) {
+                        signals.add(() -> subscriber.onNext(body));
+                    } else if (type == OK) {
+                        finish();
+                        signals.add(subscriber::onComplete);
+                    } else {
+                        finish();
+                        signals.add(() -> subscriber.onError(new RuntimeException(
+                                new String(body, StandardCharsets.UTF_8))));
+                    }
+                }
+            }
+            emit();
+        }
+
+        /**
+         * Grants the peer more chunks. If the credit cannot be sent the
+         * peer would wait for it forever, so the stream fails instead.
+         */
+        private void sendCredit(long credit) {
+            if (credit <= 0) {
+                return;
+            }
+            final CompletableFuture<byte[]> sent;
+            try {
+                sent = invoke(streamCredit.getId(),
+                        ByteBuffer.allocate(2 * Long.BYTES).putLong(streamId).putLong(credit).array());
+            } catch (RuntimeException e) {
+                creditFailed(e);
+                return;
+            }
+            sent.whenComplete((response, error) -> {
+                if (error != null) {
+                    creditFailed(error);
+                }
+            });
+        }
+
+        private void creditFailed(Throwable error) {
+            fail(error);
+            sendCancel(streamId);
+        }
+
+        private void fail(Throwable error) {
+            synchronized (this) {
+                if (done) {
+                    return;
+                }
+                finish();
+                signals.add(() -> subscriber.onError(error));
+            }
+            emit();
+        }
+
+        /**
+         * Hands the queued signals to the subscriber in order, outside the
+         * lock. Only one thread emits at a time; a signal queued meanwhile,
+         * also by the subscriber itself, is picked up by that thread.
+         */
+        private void emit() {
+            synchronized (this) {
+                if (emitting) {
+                    return;
+                }
+                emitting = true;
+            }
+            while (true) {
+                final Runnable signal;
+                synchronized (this) {
+                    signal = signals.poll();
+                    if (signal == null) {
+                        emitting = false;
+                        return;
+                    }
+                }
+                try {
+                    signal.run();
+                } catch (RuntimeException e) {
+                    synchronized (this) {
+                        emitting = false;
+                    }
+                    throw e;
+                }
+            }
+        }
+
+        private void finish() {
+            done = true;
+            early.clear();
+            incoming.remove(streamId);
+        }
+    }
+
+    /**
+     * A subscribed procedure and the calls waiting for one of its slots.
+     */
+    private final class Handler {
+        private final Function<byte[], CompletableFuture<byte[]>> method;
+
+        private final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+
+        private int limit = Integer.MAX_VALUE;
+
+        private int active;
+
+        private long started;
+
+        private long completed;
+
+        private long waitedNanos;
+
+        Handler(Function<byte[], CompletableFuture<byte[]>> method) {
+            this.method = method;
+        }
+
+        /**
+         * Runs one call once a slot is free. A request id of -1 marks a call
+         * without the header, which cannot be cancelled.
+         */
+        CompletableFuture<byte[]> run(long requestId, byte[] args) {
+            final CompletableFuture<byte[]> result = new CompletableFuture<>();
+            final long queuedAt = System.nanoTime();
+            if (requestId >= 0) {
+                served.put(requestId, result);
+                result.whenComplete((response, error) -> served.remove(requestId));
+            }
+            admit(() -> {
+                synchronized (this) {
+                    started++;
+                    waitedNanos += System.nanoTime() - queuedAt;
+                }
+                if (result.isDone()) {
+                    // cancelled while queued
+                    finished();
+                    return;
+                }
+                CompletableFuture<byte[]> pending;
+                if (requestId >= 0) {
+                    running.put(requestId, Thread.currentThread());
+                }
+                try {
+                    pending = method.apply(args);
+                    if (pending == null) {
+                        pending = CompletableFuture.failedFuture(
+                                new IllegalStateException("Handler returned no future"));
+                    }
+                } catch (RuntimeException e) {
+                    pending = CompletableFuture.failedFuture(e);
+                } finally {
+                    if (requestId >= 0) {
+                        running.remove(requestId);
+                    }
+                    // a cancel racing with the end of the handler must not leak into the next call
+                    Thread.interrupted();
+                }
+                final CompletableFuture<byte[]> handled = pending;
+                result.whenComplete((response, error) -> handled.cancel(true));
+                handled.whenComplete((response, error) -> {
+                    finished();
+                    if (error != null) {
+                        result.completeExceptionally(error);
+                    } else {
+                        result.complete(response);
+                    }
+                });
+            });
+            return result;
+        }
+
+        private void admit(Runnable task) {
+            synchronized (this) {
+                if (active >= limit) {
+                    queue.add(task);
+                    return;
+                }
+                active++;
+            }
+            handlerExecutor.execute(task);
+        }
+
+        private void finished() {
+            final Runnable next;
+            synchronized (this) {
+                completed++;
+                next = queue.poll();
+                if (next == null) {
+                    active--;
+                }
+            }
+            if (next != null) {
+                handlerExecutor.execute(next);
+            }
+        }
+
+        void setLimit(int newLimit) {
+            final List<Runnable> ready = new ArrayList<>();
+            synchronized (this) {
+                limit = newLimit;
+                while (active < limit && !queue.isEmpty()) {
+                    active++;
+                    ready.add(queue.poll());
+                }
+            }
+            ready.forEach(handlerExecutor::execute);
+        }
+
+        synchronized HandlerStats stats() {
+            long averageQueueMicros = 0;
+            if (started > 0) {
+                averageQueueMicros = TimeUnit.NANOSECONDS.toMicros(waitedNanos / started);
+            }
+            return new HandlerStats(queue.size(), active, completed, averageQueueMicros);
         }
     }
 }
@@ -1,14 +1,80 @@
 package com.swe.controller.RPCinterface;
 
 import java.io.IOException;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
 
 public interface AbstractRPC {
     public void subscribe(String methodName, Function<byte[], byte[]> method);
 
+    /**
+     * Registers a handler that completes its result later, so handlers
+     * waiting on I/O do not hold a thread. A handler returning null fails
+     * the call.
+     */
+    public void subscribeAsync(String methodName, Function<byte[], CompletableFuture<byte[]>> method);
+
+    /**
+     * Sets the executor subscribed handlers run on. Defaults to a virtual
+     * thread per call where the runtime has them.
+     */
+    public void setHandlerExecutor(Executor executor);
+
+    /**
+     * Limits how many calls of a subscribed procedure run at once; further
+     * calls wait in order. The limit must be at least 1.
+     */
+    public void setConcurrencyLimit(String methodName, int limit);
+
+    public HandlerStats handlerStats(String methodName);
+
+    /**
+     * Registers a handler answering with a stream of chunks, emitted through
+     * the sink as the caller asks for them.
+     */
+    public void subscribeStream(String methodName, BiConsumer<byte[], StreamSink> method);
+
+    /**
+     * Calls a streaming procedure. Every subscriber starts its own call and
+     * gets chunks only as far as it has requested them; cancelling the
+     * subscription cancels the call on the peer.
+     */
+    public Flow.Publisher<byte[]> callStream(String methodName, byte[] data);
+
     public Thread connect() throws IOException, InterruptedException, ExecutionException;
 
     public CompletableFuture<byte[]> call(String methodName, byte[] data);
+
+    /**
+     * Returns the handle of a remote procedure. Handles obtained before
+     * connect are resolved by connect, later ones right away.
+     */
+    public RemoteProcedure procedure(String methodName);
+
+    public CompletableFuture<byte[]> call(RemoteProcedure procedure, byte[] data);
+
+    /**
+     * Calls a remote procedure with its own deadline. The future fails with a
+     * TimeoutException once the deadline passes, and cancelling it or timing
+     * out cancels the call on the peer.
+     */
+    public CompletableFuture<byte[]> call(RemoteProcedure procedure, byte[] data, long timeoutMillis);
+
+    /**
+     * Sends several calls in one round trip. The peer runs them in order and
+     * each future completes with its own result or failure.
+     */
+    public List<CompletableFuture<byte[]>> callBatch(List<BatchCall> calls);
+
+    /**
+     * Gathers the calls made within a window into one batch, sent when the
+     * window closes or maxCalls calls are waiting. A window of 0 turns
+     * automatic batching off.
+     */
+    public void setAutoBatch(long windowMicros, int maxCalls);
 }
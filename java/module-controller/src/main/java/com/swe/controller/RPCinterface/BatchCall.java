@@ -0,0 +1,7 @@
+package com.swe.controller.RPCinterface;
+
+/**
+ * One call of a batch: the remote procedure name and its arguments.
+ */
+public record BatchCall(String methodName, byte[] data) {
+}
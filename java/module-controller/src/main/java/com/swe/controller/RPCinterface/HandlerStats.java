@@ -0,0 +1,8 @@
+package com.swe.controller.RPCinterface;
+
+/**
+ * Load of one subscribed procedure: calls waiting for a concurrency slot,
+ * calls running, calls finished and the average time calls waited.
+ */
+public record HandlerStats(int queued, int running, long completed, long averageQueueMicros) {
+}
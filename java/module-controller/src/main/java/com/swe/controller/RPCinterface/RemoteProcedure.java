@@ -0,0 +1,18 @@
+package com.swe.controller.RPCinterface;
+
+/**
+ * A remote procedure whose id is looked up once, when the RPC connects,
+ * so calls through it never hash the procedure name. Handles come from
+ * {@link AbstractRPC#procedure}, which also resolves them.
+ */
+public interface RemoteProcedure {
+    public String getName();
+
+    public boolean isResolved();
+
+    /**
+     * Returns the id calls are sent with. Throws an IllegalStateException
+     * until the handle is resolved.
+     */
+    public byte getId();
+}
@@ -0,0 +1,30 @@
+package com.swe.controller.RPCinterface;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+/**
+ * The connection an RPC talks to its peer over. Socketry by default.
+ */
+public interface RpcTransport {
+    /**
+     * Connects and serves the given procedures to the peer.
+     */
+    public void connect(HashMap<String, Function<byte[], byte[]>> methods)
+            throws IOException, InterruptedException, ExecutionException;
+
+    /**
+     * Returns the id calls to the named remote procedure are sent with.
+     */
+    public byte procedureId(String methodName);
+
+    public CompletableFuture<byte[]> call(byte procedureId, byte[] data) throws InterruptedException;
+
+    /**
+     * Receives calls and replies until the connection closes.
+     */
+    public void listenLoop();
+}
@@ -0,0 +1,14 @@
+package com.swe.controller.RPCinterface;
+
+/**
+ * Where a streaming handler emits its chunks. The stream ends when the
+ * handler returns, or fails with its exception.
+ */
+public interface StreamSink {
+    /**
+     * Sends one chunk, waiting while the caller has no credit for more.
+     * Throws a CancellationException once the caller cancelled the stream
+     * or an earlier chunk could not be sent.
+     */
+    public void next(byte[] chunk);
+}
@@ -0,0 +1,195 @@
+package com.swe.controller;
+
+import com.swe.controller.RPCinterface.RpcTransport;
+import com.swe.networking.SharedMemoryTransport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * An RPC connection to a process on the same machine through a pair of
+ * shared-memory rings instead of Socketry's local socket. One side creates
+ * the rings and the other opens them once they exist.
+ *
+ * <p>A call goes out under its procedure's name with a call id in front of
+ * its arguments, and the result comes back through the caller's
+ * {@link SharedMemoryTransport#DELIVER} with the same id and a status. The
+ * procedures run on their own threads, so a handler waiting for a call of
+ * its own does not hold up the ring.
+ */
+public class SharedMemoryRpcTransport implements RpcTransport {
+    private static final byte OK = 0;
+
+    private static final byte FAILED = 1;
+
+    private final Path outboundFile;
+
+    private final Path inboundFile;
+
+    private final int capacityBytes;
+
+    private final boolean creates;
+
+    /** Procedure names by id; the id only has to be known on this side. */
+    private final List<String> names = new CopyOnWriteArrayList<>();
+
+    private final Map<Long, CompletableFuture<byte[]>> pending = new ConcurrentHashMap<>();
+
+    private final AtomicLong nextCallId = new AtomicLong();
+
+    private final CountDownLatch closed = new CountDownLatch(1);
+
+    private final ExecutorService handlers = Executors.newCachedThreadPool(task -> {
+        final Thread thread = new Thread(task, "rpc-shm-handler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private volatile Map<String, Function<byte[], byte[]>> methods = Map.of();
+
+    private SharedMemoryTransport rings;
+
+    private SharedMemoryRpcTransport(Path outboundFile, Path inboundFile, int capacityBytes, boolean creates) {
+        this.outboundFile = outboundFile;
+        this.inboundFile = inboundFile;
+        this.capacityBytes = capacityBytes;
+        this.creates = creates;
+    }
+
+    /**
+     * Returns a transport that creates the two rings when it connects.
+     */
+    public static SharedMemoryRpcTransport create(Path outboundFile, Path inboundFile, int capacityBytes) {
+        return new SharedMemoryRpcTransport(outboundFile, inboundFile, capacityBytes, true);
+    }
+
+    /**
+     * Returns a transport that opens the rings the peer created, its
+     * outbound file being the peer's inbound one.
+     */
+    public static SharedMemoryRpcTransport open(Path outboundFile, Path inboundFile, int capacityBytes) {
+        return new SharedMemoryRpcTransport(outboundFile, inboundFile, capacityBytes, false);
+    }
+
+    @Override
+    public void connect(HashMap<String, Function<byte[], byte[]>> served) throws IOException {
+        methods = served;
+        if (creates) {
+            rings = SharedMemoryTransport.create(outboundFile, inboundFile, capacityBytes);
+        } else {
+            rings = SharedMemoryTransport.open(outboundFile, inboundFile, capacityBytes);
+        }
+        rings.setHandler((methodName, frame) -> {
+            final long callId = frame.getLong();
+            final byte[] data = new byte[frame.remaining()];
+            frame.get(data);
+            handlers.execute(() -> serve(methodName, callId, data));
+        });
+        rings.setReceiver(this::receive);
+        rings.start();
+    }
+
+    @Override
+    public byte procedureId(String methodName) {
+        synchronized (names) {
+            if (!names.contains(methodName)) {
+                names.add(methodName);
+            }
+            return (byte) names.indexOf(methodName);
+        }
+    }
+
+    @Override
+    public CompletableFuture<byte[]> call(byte procedureId, byte[] data) {
+        final long callId = nextCallId.incrementAndGet();
+        final CompletableFuture<byte[]> result = new CompletableFuture<>();
+        pending.put(callId, result);
+        result.whenComplete((response, error) -> pending.remove(callId));
+        try {
+            rings.call(names.get(procedureId), ByteBuffer.allocate(Long.BYTES + data.length)
+                    .putLong(callId).put(data).flip());
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+
+    @Override
+    public void listenLoop() {
+        try {
+            closed.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops the reader and fails the calls still waiting for a result.
+     */
+    public void close() {
+        if (rings != null) {
+            rings.close();
+        }
+        handlers.shutdownNow();
+        pending.values().forEach(result -> result.completeExceptionally(
+                new IllegalStateException("Shared-memory transport closed")));
+        closed.countDown();
+    }
+
+    private void serve(String methodName, long callId, byte[] data) {
+        byte status = OK;
+        byte[] body;
+        final Function<byte[], byte[]> method = methods.get(methodName);
+        try {
+            if (method == null) {
+                throw new IllegalArgumentException("Unknown procedure " + methodName);
+            }
+            body = method.apply(data);
+        } catch (RuntimeException e) {
+            status = FAILED;
+            body = String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8);
+        }
+        if (body == null) {
+            body = new byte[0];
+        }
+        try {
+            reply(callId, status, body);
+        } catch (IllegalArgumentException e) {
+            reply(callId, FAILED, ("Result of " + methodName + " is too large for the ring")
+                    .getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void reply(long callId, byte status, byte[] body) {
+        rings.deliver(ByteBuffer.allocate(Long.BYTES + 1 + body.length).putLong(callId).put(status).put(body).flip());
+    }
+
+    private void receive(byte[] reply) {
+        final ByteBuffer buffer = ByteBuffer.wrap(reply);
+        final CompletableFuture<byte[]> result = pending.get(buffer.getLong());
+        if (result == null) {
+            return;
+        }
+        final byte status = buffer.get();
+        final byte[] body = new byte[buffer.remaining()];
+        buffer.get(body);
+        if (status == OK) {
+            result.complete(body);
+        } else {
+            result.completeExceptionally(new RuntimeException(new String(body, StandardCharsets.UTF_8)));
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.swe.controller;
+
+import com.socketry.SocketryClient;
+import com.swe.controller.RPCinterface.RpcTransport;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+/**
+ * The Socketry connection the app's RPC uses.
+ */
+public class SocketryTransport implements RpcTransport {
+    private SocketryClient socketryServer;
+
+    @Override
+    public void connect(HashMap<String, Function<byte[], byte[]>> methods)
+            throws IOException, InterruptedException, ExecutionException {
+        socketryServer = new SocketryClient(new byte[] {20}, 60000, methods);
+    }
+
+    @Override
+    public byte procedureId(String methodName) {
+        return socketryServer.getRemoteProcedureId(methodName);
+    }
+
+    @Override
+    public CompletableFuture<byte[]> call(byte procedureId, byte[] data) throws InterruptedException {
+        return socketryServer.makeRemoteCall(procedureId, data, 0);
+    }
+
+    @Override
+    public void listenLoop() {
+        socketryServer.listenLoop();
+    }
+}
@@ -12,16 +12,19 @@ public class controllerServices {
 
     AbstractRPC rpc;
 
+    ControllerStub stub;
+
     UserProfile profile;
 
     MeetingSession meetingSession;
 
     controllerServices(AbstractRPC rpc) {
         this.rpc = rpc;
+        this.stub = new ControllerStub(rpc);
     }
 
     private void register() throws JsonProcessingException {
-        rpc.call(rpcUtils.REGISTER, DataSerializer.serializeParticipantsList(ParticipantRole.GUEST)).thenAccept(response -> {
+        stub.register(DataSerializer.serializeParticipantsList(ParticipantRole.GUEST)).thenAccept(response -> {
             try {
                 profile = DataSerializer.deserializeParticipantsList(response, UserProfile.class);
                 System.out.println("Registered user with email: " + profile.getEmail());
@@ -41,7 +44,7 @@ public class controllerServices {
             return;
         }
 
-        rpc.call(rpcUtils.CREATE_MEETING, DataSerializer.serializeParticipantsList(MeetingMode)).thenAccept(response -> {
+        stub.createMeeting(DataSerializer.serializeParticipantsList(MeetingMode)).thenAccept(response -> {
             try {
                 meetingSession = DataSerializer.deserializeParticipantsList(response, MeetingSession.class);
                 System.out.println("Created meeting at: " + meetingSession.getCreatedAt());
@@ -61,7 +64,7 @@ public class controllerServices {
             return;
         }
 
-        rpc.call(rpcUtils.JOIN_MEETING, DataSerializer.serializeParticipantsList(meetId)).thenAccept(response -> {
+        stub.joinMeeting(DataSerializer.serializeParticipantsList(meetId)).thenAccept(response -> {
             try {
                 meetingSession = DataSerializer.deserializeParticipantsList(response, MeetingSession.class);
                 System.out.println("Joined a meet created by: " + meetingSession.getCreatedBy());
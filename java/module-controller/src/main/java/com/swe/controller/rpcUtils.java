@@ -2,9 +2,9 @@ package com.swe.controller;
 
 public class rpcUtils {
 
-    public static String REGISTER = "Controller-Register";
+    public static final String REGISTER = "Controller-Register";
 
-    public static String CREATE_MEETING = "Controller-CreateMeet";
+    public static final String CREATE_MEETING = "Controller-CreateMeet";
 
-    public static String JOIN_MEETING = "Controller-JoinMeet";
+    public static final String JOIN_MEETING = "Controller-JoinMeet";
 }
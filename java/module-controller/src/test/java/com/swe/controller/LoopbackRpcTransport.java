@@ -0,0 +1,98 @@
+package com.swe.controller;
+
+import com.swe.controller.RPCinterface.RpcTransport;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * One end of an in-memory connection standing in for Socketry in tests.
+ * Calls are served by the procedures the other end connected with, on a
+ * fixture thread after the set latency; a procedure it does not serve fails
+ * the call. The last arguments sent to each procedure are kept.
+ */
+final class LoopbackRpcTransport implements RpcTransport {
+    private static final ExecutorService CALLS = Executors.newCachedThreadPool(task -> {
+        final Thread thread = new Thread(task, "loopback-rpc");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final List<String> names;
+
+    private final Map<String, byte[]> lastSent = new ConcurrentHashMap<>();
+
+    private LoopbackRpcTransport peer;
+
+    private volatile Map<String, Function<byte[], byte[]>> methods = Map.of();
+
+    private volatile long latencyMicros;
+
+    private LoopbackRpcTransport(List<String> names) {
+        this.names = names;
+    }
+
+    /**
+     * Returns the two ends of a new connection.
+     */
+    static LoopbackRpcTransport[] pair() {
+        final List<String> names = new CopyOnWriteArrayList<>();
+        final LoopbackRpcTransport left = new LoopbackRpcTransport(names);
+        final LoopbackRpcTransport right = new LoopbackRpcTransport(names);
+        left.peer = right;
+        right.peer = left;
+        return new LoopbackRpcTransport[] {left, right};
+    }
+
+    void setLatencyMicros(long micros) {
+        latencyMicros = micros;
+    }
+
+    byte[] lastSent(String methodName) {
+        return lastSent.get(methodName);
+    }
+
+    @Override
+    public void connect(HashMap<String, Function<byte[], byte[]>> served) {
+        methods = served;
+    }
+
+    @Override
+    public byte procedureId(String methodName) {
+        synchronized (names) {
+            if (!names.contains(methodName)) {
+                names.add(methodName);
+            }
+            return (byte) names.indexOf(methodName);
+        }
+    }
+
+    @Override
+    public CompletableFuture<byte[]> call(byte procedureId, byte[] data) {
+        final String methodName = names.get(procedureId);
+        lastSent.put(methodName, data);
+        final Function<byte[], byte[]> method = peer.methods.get(methodName);
+        if (method == null) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Unknown procedure " + methodName));
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            if (latencyMicros > 0) {
+                LockSupport.parkNanos(latencyMicros * 1000);
+            }
+            return method.apply(data);
+        }, CALLS);
+    }
+
+    @Override
+    public void listenLoop() {
+        // calls are served on the fixture's threads
+    }
+}
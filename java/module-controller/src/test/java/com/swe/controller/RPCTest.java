@@ -0,0 +1,329 @@
+package com.swe.controller;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.swe.controller.RPCinterface.BatchCall;
+import com.swe.controller.RPCinterface.HandlerStats;
+import com.swe.controller.RPCinterface.StreamSink;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the RPC over an in-memory connection, against another RPC and
+ * against a peer that only serves plain procedures.
+ */
+class RPCTest {
+    private static final String ECHO = "Test-Echo";
+
+    private static final String BLOCK = "Test-Block";
+
+    private static final String RECORD = "Test-Record";
+
+    private static final String COUNT = "Test-Count";
+
+    private final LoopbackRpcTransport[] ends = LoopbackRpcTransport.pair();
+
+    private final CountDownLatch started = new CountDownLatch(1);
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private final CountDownLatch interrupted = new CountDownLatch(1);
+
+    private final List<Byte> recorded = new CopyOnWriteArrayList<>();
+
+    private final AtomicInteger emitted = new AtomicInteger();
+
+    private final CountDownLatch sinkCancelled = new CountDownLatch(1);
+
+    private final RPC server = new RPC(ends[1], RPC.DEFAULT_MAX_IN_FLIGHT, RPC.DEFAULT_TIMEOUT_MILLIS);
+
+    /**
+     * Collects the chunks of a stream, asking for the given number first.
+     */
+    private static final class Collector implements Flow.Subscriber<byte[]> {
+        private final long initial;
+
+        private final List<Byte> items = new CopyOnWriteArrayList<>();
+
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        private volatile Flow.Subscription subscription;
+
+        Collector(long initial) {
+            this.initial = initial;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription given) {
+            subscription = given;
+            given.request(initial);
+        }
+
+        @Override
+        public void onNext(byte[] item) {
+            items.add(item[0]);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            done.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            done.complete(null);
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    private static byte[] get(CompletableFuture<byte[]> result) throws Exception {
+        return result.get(5, TimeUnit.SECONDS);
+    }
+
+    private static Throwable failure(CompletableFuture<?> result) {
+        return assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS)).getCause();
+    }
+
+    private byte[] block(byte[] args) {
+        started.countDown();
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            interrupted.countDown();
+        }
+        return args;
+    }
+
+    /**
+     * Emits chunks numbered from 0 until the sink throws, counting the ones
+     * it got through.
+     */
+    private void count(byte[] args, StreamSink sink) {
+        try {
+            for (byte i = 0; i < args[0]; i++) {
+                sink.next(new byte[] {i});
+                emitted.incrementAndGet();
+            }
+        } catch (CancellationException e) {
+            sinkCancelled.countDown();
+            throw e;
+        }
+    }
+
+    /**
+     * Records its argument, the first one only after a pause so that a call
+     * running alongside it would overtake it.
+     */
+    private byte[] record(byte[] args) {
+        if (args[0] == 0) {
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        recorded.add(args[0]);
+        return args;
+    }
+
+    /**
+     * Connects an RPC serving the test procedures on one end and a client
+     * RPC with the given window on the other.
+     */
+    private RPC connectedClient(int maxInFlight) throws Exception {
+        server.subscribe(ECHO, args -> args);
+        server.subscribe(BLOCK, this::block);
+        server.subscribe(RECORD, this::record);
+        server.subscribeStream(COUNT, this::count);
+        final RPC client = new RPC(ends[0], maxInFlight, RPC.DEFAULT_TIMEOUT_MILLIS);
+        client.connect();
+        server.connect();
+        return client;
+    }
+
+    @Test
+    void callsToAnRpcPeerCarryTheHeader() throws Exception {
+        final RPC client = connectedClient(RPC.DEFAULT_MAX_IN_FLIGHT);
+        assertArrayEquals(new byte[] {1, 2, 3}, get(client.call(ECHO, new byte[] {1, 2, 3})));
+        assertEquals(3 + Integer.BYTES + Long.BYTES, ends[0].lastSent(ECHO).length);
+    }
+
+    @Test
+    void aPlainPeerGetsTheArgumentsAlone() throws Exception {
+        final HashMap<String, Function<byte[], byte[]>> plain = new HashMap<>();
+        plain.put(ECHO, args -> args);
+        ends[1].connect(plain);
+        final RPC client = new RPC(ends[0], RPC.DEFAULT_MAX_IN_FLIGHT, RPC.DEFAULT_TIMEOUT_MILLIS);
+        client.connect();
+        assertArrayEquals(new byte[] {1, 2, 3}, get(client.call(ECHO, new byte[] {1, 2, 3})));
+        assertArrayEquals(new byte[] {1, 2, 3}, ends[0].lastSent(ECHO));
+        final List<CompletableFuture<byte[]>> batch = client.callBatch(List.of(
+                new BatchCall(ECHO, new byte[] {4}), new BatchCall(ECHO, new byte[] {5})));
+        assertArrayEquals(new byte[] {4}, get(batch.get(0)));
+        assertArrayEquals(new byte[] {5}, get(batch.get(1)));
+        final Collector stream = new Collector(1);
+        client.callStream(ECHO, new byte[0]).subscribe(stream);
+        assertInstanceOf(UnsupportedOperationException.class, failure(stream.done));
+    }
+
+    @Test
+    void aCallPastItsDeadlineFailsAndInterruptsTheHandler() throws Exception {
+        final RPC client = connectedClient(RPC.DEFAULT_MAX_IN_FLIGHT);
+        final CompletableFuture<byte[]> result = client.call(client.procedure(BLOCK), new byte[0], 100);
+        assertInstanceOf(TimeoutException.class, failure(result));
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void cancellingACallInterruptsTheHandler() throws Exception {
+        final RPC client = connectedClient(RPC.DEFAULT_MAX_IN_FLIGHT);
+        final CompletableFuture<byte[]> result = client.call(BLOCK, new byte[0]);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        result.cancel(true);
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void aFullWindowHoldsBackFurtherCalls() throws Exception {
+        final RPC client = connectedClient(2);
+        final CompletableFuture<byte[]> first = client.call(BLOCK, new byte[] {1});
+        final CompletableFuture<byte[]> second = client.call(BLOCK, new byte[] {2});
+        final Throwable full = failure(client.call(client.procedure(ECHO), new byte[] {3}, 100));
+        assertInstanceOf(TimeoutException.class, full);
+        assertTrue(full.getMessage().contains("window full"));
+        release.countDown();
+        assertArrayEquals(new byte[] {1}, get(first));
+        assertArrayEquals(new byte[] {2}, get(second));
+        assertArrayEquals(new byte[] {3}, get(client.call(ECHO, new byte[] {3})));
+    }
+
+    @Test
+    void theCallsOfABatchRunInOrder() throws Exception {
+        final RPC client = connectedClient(RPC.DEFAULT_MAX_IN_FLIGHT);
+        final List<CompletableFuture<byte[]>> results = client.callBatch(List.of(new BatchCall(RECORD,
+                new byte[] {0}), new BatchCall("Test-Missing", new byte[0]), new BatchCall(RECORD, new byte[] {1})));
+        assertArrayEquals(new byte[] {1}, get(results.get(2)));
+        assertTrue(failure(results.get(1)).getMessage().contains("Unknown procedure"));
+        assertArrayEquals(new byte[] {0}, get(results.get(0)));
+        assertEquals(List.of((byte) 0, (byte) 1), recorded);
+    }
+
+    @Test
+    void aBatchWaitingForTheWindowIsSentWhenASlotIsReturned() throws Exception {
+        final RPC client = connectedClient(1);
+        final CompletableFuture<byte[]> blocked = client.call(BLOCK, new byte[] {1});
+        final List<CompletableFuture<byte[]>> results = client.callBatch(List.of(new BatchCall(ECHO,
+                new byte[] {2})));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertFalse(results.get(0).isDone());
+        release.countDown();
+        assertArrayEquals(new byte[] {1}, get(blocked));
+        assertArrayEquals(new byte[] {2}, get(results.get(0)));
+    }
+
+    @Test
+    void handlersRunOnTheGivenExecutor() throws Exception {
+        server.setHandlerExecutor(Executors.newSingleThreadExecutor(task -> {
+            final Thread thread = new Thread(task, "test-handler");
+            thread.setDaemon(true);
+            return thread;
+        }));
+        server.subscribe("Test-Thread", args -> Thread.currentThread().getName().getBytes(StandardCharsets.UTF_8));
+        final RPC client = connectedClient(RPC.DEFAULT_MAX_IN_FLIGHT);
+        assertEquals("test-handler", new String(get(client.call("Test-Thread", new byte[0])), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void aLimitedProcedureQueuesItsCallsAndCountsThem() throws Exception {
+        final RPC client = connectedClient(RPC.DEFAULT_MAX_IN_FLIGHT);
+        assertThrows(IllegalArgumentException.class, () -> server.setConcurrencyLimit(BLOCK, 0));
+        server.setConcurrencyLimit(BLOCK, 1);
+        final CompletableFuture<byte[]> first = client.call(BLOCK, new byte[] {1});
+        final CompletableFuture<byte[]> second = client.call(BLOCK, new byte[] {2});
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        await(() -> server.handlerStats(BLOCK).queued() == 1);
+        HandlerStats stats = server.handlerStats(BLOCK);
+        assertEquals(1, stats.queued());
+        assertEquals(1, stats.running());
+        release.countDown();
+        assertArrayEquals(new byte[] {1}, get(first));
+        assertArrayEquals(new byte[] {2}, get(second));
+        stats = server.handlerStats(BLOCK);
+        assertEquals(0, stats.queued());
+        assertEquals(0, stats.running());
+        assertEquals(2, stats.completed());
+    }
+
+    @Test
+    void anAsyncHandlerReturningNullFailsTheCallAndFreesItsSlot() throws Exception {
+        server.subscribeAsync("Test-Null", args -> args.length == 0 ? null : CompletableFuture.completedFuture(args));
+        final RPC client = connectedClient(RPC.DEFAULT_MAX_IN_FLIGHT);
+        server.setConcurrencyLimit("Test-Null", 1);
+        assertTrue(failure(client.call("Test-Null", new byte[0])).getMessage().contains("no future"));
+        assertArrayEquals(new byte[] {1}, get(client.call("Test-Null", new byte[] {1})));
+        assertEquals(2, server.handlerStats("Test-Null").completed());
+    }
+
+    @Test
+    void aStreamSendsNoMoreChunksThanWereRequested() throws Exception {
+        final RPC client = connectedClient(RPC.DEFAULT_MAX_IN_FLIGHT);
+        final Collector stream = new Collector(2);
+        client.callStream(COUNT, new byte[] {5}).subscribe(stream);
+        await(() -> stream.items.size() == 2);
+        Thread.sleep(100);
+        assertEquals(2, emitted.get());
+        stream.subscription.request(3);
+        stream.done.get(5, TimeUnit.SECONDS);
+        assertEquals(List.of((byte) 0, (byte) 1, (byte) 2, (byte) 3, (byte) 4), stream.items);
+    }
+
+    @Test
+    void cancellingAStreamStopsItsHandler() throws Exception {
+        final RPC client = connectedClient(RPC.DEFAULT_MAX_IN_FLIGHT);
+        final Collector stream = new Collector(1);
+        client.callStream(COUNT, new byte[] {100}).subscribe(stream);
+        await(() -> stream.items.size() == 1);
+        stream.subscription.cancel();
+        assertTrue(sinkCancelled.await(5, TimeUnit.SECONDS));
+        assertEquals(1, emitted.get());
+    }
+
+    @Test
+    void aChunkThatCannotBeSentCancelsTheStream() throws Exception {
+        final RPC client = connectedClient(RPC.DEFAULT_MAX_IN_FLIGHT);
+        client.methods.put(RPC.STREAM_CHUNK, args -> {
+            throw new IllegalStateException("Chunk lost");
+        });
+        client.callStream(COUNT, new byte[] {100}).subscribe(new Collector(1));
+        // without the cancel the handler would wait for credit forever
+        assertTrue(sinkCancelled.await(5, TimeUnit.SECONDS));
+        assertEquals(1, emitted.get());
+    }
+}
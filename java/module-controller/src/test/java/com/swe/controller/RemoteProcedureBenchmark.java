@@ -0,0 +1,83 @@
+package com.swe.controller;
+
+import com.swe.controller.RPCinterface.RemoteProcedure;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Calls per second the way the RPC called before handles, looking the
+ * procedure id up by name through Socketry on every call, and through a
+ * {@link RemoteProcedure} handle resolved once at connect. The resolve pair
+ * isolates the id lookup the handle saves from the round trip. The calls by
+ * name go straight to the transport, without the request header or the
+ * in-flight window, as they did then.
+ *
+ * <p>The RPC connects like the app does, so the Socketry server must be up.
+ * Run with {@code java -cp <test classpath> org.openjdk.jmh.Main RemoteProcedureBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RemoteProcedureBenchmark {
+    private static final String ECHO = "Benchmark-Echo";
+
+    private final byte[] payload = new byte[64];
+
+    private SocketryTransport transport;
+
+    private RPC rpc;
+
+    private RemoteProcedure echo;
+
+    private Thread listener;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        transport = new SocketryTransport();
+        rpc = new RPC(transport, RPC.DEFAULT_MAX_IN_FLIGHT, RPC.DEFAULT_TIMEOUT_MILLIS);
+        rpc.subscribe(ECHO, args -> args);
+        echo = rpc.procedure(ECHO);
+        listener = rpc.connect();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        listener.interrupt();
+    }
+
+    @Benchmark
+    public byte[] callByName() throws InterruptedException {
+        return transport.call(transport.procedureId(ECHO), payload).join();
+    }
+
+    @Benchmark
+    public byte[] callByHandle() {
+        return rpc.call(echo, payload).join();
+    }
+
+    @Benchmark
+    public byte resolveByName() {
+        return transport.procedureId(ECHO);
+    }
+
+    @Benchmark
+    public byte resolveByHandle() {
+        return echo.getId();
+    }
+}
@@ -0,0 +1,129 @@
+package com.swe.controller;
+
+import com.swe.controller.RPCinterface.RemoteProcedure;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares RPC calls over {@link SharedMemoryRpcTransport} with the same
+ * calls over Socketry, the transport the app connects with: the time one
+ * call takes to come back, and calls per second with a window of them in
+ * flight. The shared-memory peers are two RPCs in the benchmark process.
+ *
+ * <p>The socketry runs connect like the app does, so the Socketry server
+ * must be up. Run with
+ * {@code java -cp <test classpath> org.openjdk.jmh.Main RpcTransportBenchmark}.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RpcTransportBenchmark {
+    private static final String ECHO = "Benchmark-Echo";
+
+    private static final int IN_FLIGHT = 32;
+
+    @Param({"sharedMemory", "socketry"})
+    private String transport;
+
+    private final byte[] payload = new byte[256];
+
+    private Path directory;
+
+    private SharedMemoryRpcTransport frontSide;
+
+    private SharedMemoryRpcTransport coreSide;
+
+    private RemoteProcedure echo;
+
+    private RPC rpc;
+
+    private Thread listener;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        if (transport.equals("socketry")) {
+            rpc = new RPC();
+            rpc.subscribe(ECHO, args -> args);
+            listener = rpc.connect();
+            echo = rpc.procedure(ECHO);
+            return;
+        }
+        directory = Files.createTempDirectory("rpc-shm-benchmark");
+        frontSide = SharedMemoryRpcTransport.create(directory.resolve("out"), directory.resolve("in"), 1 << 20);
+        coreSide = SharedMemoryRpcTransport.open(directory.resolve("in"), directory.resolve("out"), 1 << 20);
+        rpc = new RPC(frontSide, RPC.DEFAULT_MAX_IN_FLIGHT, RPC.DEFAULT_TIMEOUT_MILLIS);
+        final RPC core = new RPC(coreSide, RPC.DEFAULT_MAX_IN_FLIGHT, RPC.DEFAULT_TIMEOUT_MILLIS);
+        core.subscribe(ECHO, args -> args);
+        // the front's hello waits in the ring until the core opens it
+        final CompletableFuture<Thread> connected = CompletableFuture.supplyAsync(() -> {
+            try {
+                return rpc.connect();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        while (!Files.exists(directory.resolve("in"))) {
+            Thread.sleep(1);
+        }
+        core.connect();
+        listener = connected.get();
+        echo = rpc.procedure(ECHO);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        listener.interrupt();
+        if (frontSide != null) {
+            frontSide.close();
+            coreSide.close();
+            for (String name : new String[] {"in", "out"}) {
+                Files.deleteIfExists(directory.resolve(name));
+            }
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public byte[] roundTrip() {
+        return rpc.call(echo, payload).join();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(IN_FLIGHT)
+    public int pipelined() {
+        final List<CompletableFuture<byte[]>> results = new ArrayList<>(IN_FLIGHT);
+        for (int i = 0; i < IN_FLIGHT; i++) {
+            results.add(rpc.call(echo, payload));
+        }
+        int bytes = 0;
+        for (CompletableFuture<byte[]> result : results) {
+            bytes += result.join().length;
+        }
+        return bytes;
+    }
+}
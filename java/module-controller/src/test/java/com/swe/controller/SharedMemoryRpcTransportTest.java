@@ -0,0 +1,57 @@
+package com.swe.controller;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks two RPCs talking through shared-memory rings.
+ */
+class SharedMemoryRpcTransportTest {
+    private static final int CAPACITY = 1 << 16;
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void twoRpcsCallEachOtherThroughTheRings() throws Exception {
+        final Path toCore = directory.resolve("to-core");
+        final Path toFront = directory.resolve("to-front");
+        final SharedMemoryRpcTransport frontSide = SharedMemoryRpcTransport.create(toCore, toFront, CAPACITY);
+        final SharedMemoryRpcTransport coreSide = SharedMemoryRpcTransport.open(toFront, toCore, CAPACITY);
+        try {
+            final RPC front = new RPC(frontSide, RPC.DEFAULT_MAX_IN_FLIGHT, RPC.DEFAULT_TIMEOUT_MILLIS);
+            final RPC core = new RPC(coreSide, RPC.DEFAULT_MAX_IN_FLIGHT, RPC.DEFAULT_TIMEOUT_MILLIS);
+            core.subscribe("Test-Echo", args -> args);
+            // the front's hello waits in the ring until the core opens it
+            final CompletableFuture<Void> frontConnected = CompletableFuture.runAsync(() -> {
+                try {
+                    front.connect();
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (!(Files.exists(toCore) && Files.exists(toFront)) && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            core.connect();
+            frontConnected.get(5, TimeUnit.SECONDS);
+            assertArrayEquals(new byte[] {1, 2}, front.call("Test-Echo", new byte[] {1, 2}).get(5, TimeUnit.SECONDS));
+            final ExecutionException missing = assertThrows(ExecutionException.class,
+                    () -> front.call("Test-Missing", new byte[0]).get(5, TimeUnit.SECONDS));
+            assertTrue(missing.getCause().getMessage().contains("Unknown procedure"));
+        } finally {
+            frontSide.close();
+            coreSide.close();
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.swe.networking;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * Interface used between other modules and networking to send data.
  * Every module subscribes to this interface and then sends data
@@ -25,6 +27,79 @@ public interface AbstractNetworking {
      */
     void broadcast(byte[] data, int module, int priority);
 
+    /**
+     * Function to send data to given list of destination without blocking.
+     * The send waits while the module is over its in-flight budget, and
+     * fails if the module already has its budget again waiting. The
+     * arrays are handed over without a copy, so the caller must not modify
+     * them until the future completes.
+     *
+     * @param data     the data to be sent
+     * @param dest     the destination to send the data
+     * @param module   the module to send to
+     * @param priority the priority of the data
+     * @return a future completed once the data has left the process
+     */
+    CompletableFuture<Void> sendDataAsync(byte[] data, ClientNode[] dest, int module, int priority);
+
+    /**
+     * Function to send data to all clients without blocking.
+     * The send waits while the module is over its in-flight budget, and
+     * fails if the module already has its budget again waiting. The
+     * array is handed over without a copy, so the caller must not modify it
+     * until the future completes.
+     *
+     * @param data     the data to be sent
+     * @param module   the module to be sent to
+     * @param priority the priority of the data
+     * @return a future completed once the data has left the process
+     */
+    CompletableFuture<Void> broadcastAsync(byte[] data, int module, int priority);
+
+    /**
+     * Function to register a destination group, so that repeated sends to
+     * the same members carry a group id instead of the member list.
+     *
+     * @param members the members of the group
+     * @return the id of the group
+     */
+    int registerGroup(ClientNode[] members);
+
+    /**
+     * Function to change the members of a destination group.
+     * Only the change is sent on.
+     *
+     * @param group   the id of the group
+     * @param added   the members to add
+     * @param removed the members to remove
+     */
+    void updateGroup(int group, ClientNode[] added, ClientNode[] removed);
+
+    /**
+     * Function to drop a destination group.
+     *
+     * @param group the id of the group
+     */
+    void removeGroup(int group);
+
+    /**
+     * Function to send data to the members of a destination group.
+     *
+     * @param data     the data to be sent
+     * @param group    the id of the group
+     * @param module   the module to send to
+     * @param priority the priority of the data
+     */
+    void sendToGroup(byte[] data, int group, int module, int priority);
+
+    /**
+     * Function to limit the bytes of a module that may be in flight.
+     *
+     * @param module the module
+     * @param bytes  the budget in bytes, or a negative value for no limit
+     */
+    void setInFlightLimit(int module, long bytes);
+
     /**
      * Function to subscribe a function to the network.
      *
@@ -33,6 +108,14 @@ public interface AbstractNetworking {
      */
     void subscribe(int name, MessageListener function);
 
+    /**
+     * Function to subscribe a zero-copy function to the network.
+     *
+     * @param name     the name of the module.
+     * @param function the function to invoke with a view of the packet
+     */
+    void subscribe(int name, BufferListener function);
+
     /**
      * Functiont to remove from subscription.
      *
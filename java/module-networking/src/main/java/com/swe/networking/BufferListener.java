@@ -0,0 +1,24 @@
+package com.swe.networking;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Zero-copy variant of {@link MessageListener}.
+ * The networking module passes a read-only view of the received frame
+ * instead of copying the payload into a new array.
+ *
+ */
+@FunctionalInterface
+public interface BufferListener {
+    /**
+     * Function to call on receiving data.
+     * The frame behind the view is never reused, so a module may keep the
+     * view after returning, for example to hand it to another thread. Every
+     * listener gets its own view, whose position and limit it may move.
+     *
+     * @param data     read-only view of the payload
+     * @param module   the module the data was sent to
+     * @param priority the priority the data was sent with
+     */
+    void receiveData(ByteBuffer data, int module, int priority);
+}
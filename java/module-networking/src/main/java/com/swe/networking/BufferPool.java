@@ -0,0 +1,124 @@
+package com.swe.networking;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A pool of reusable byte buffers grouped into power of two size classes.
+ * Used on the send path so that encoding a frame does not allocate once the
+ * pool has warmed up. Buffers larger than the biggest size class are
+ * allocated on demand and never pooled.
+ */
+public final class BufferPool {
+    /** Smallest size class, as a power of two. */
+    private static final int MIN_SHIFT = 6;
+
+    /** Largest pooled size class, as a power of two. */
+    private static final int MAX_SHIFT = 20;
+
+    /** Default number of idle buffers kept per size class. */
+    private static final int DEFAULT_DEPTH = 64;
+
+    /** Whether the pool hands out direct buffers. */
+    private final boolean direct;
+
+    /** Idle buffers per size class. */
+    private final ByteBuffer[][] idle;
+
+    /** Number of idle buffers per size class. */
+    private final int[] counts;
+
+    /**
+     * Creates a pool with the default depth per size class.
+     *
+     * @param directBuffers whether to allocate direct buffers
+     */
+    public BufferPool(final boolean directBuffers) {
+        this(directBuffers, DEFAULT_DEPTH);
+    }
+
+    /**
+     * Creates a pool.
+     *
+     * @param directBuffers whether to allocate direct buffers
+     * @param depth         the number of idle buffers kept per size class
+     */
+    public BufferPool(final boolean directBuffers, final int depth) {
+        this.direct = directBuffers;
+        final int classes = MAX_SHIFT - MIN_SHIFT + 1;
+        this.idle = new ByteBuffer[classes][depth];
+        this.counts = new int[classes];
+    }
+
+    /**
+     * Function to get a cleared buffer with at least the given capacity.
+     * The buffer limit is set to the requested size.
+     *
+     * @param size the number of bytes needed
+     * @return the buffer
+     */
+    public ByteBuffer acquire(final int size) {
+        final int index = sizeClass(size);
+        if (index < 0) {
+            return allocate(size);
+        }
+        ByteBuffer buffer = null;
+        synchronized (idle[index]) {
+            if (counts[index] > 0) {
+                counts[index]--;
+                buffer = idle[index][counts[index]];
+                idle[index][counts[index]] = null;
+            }
+        }
+        if (buffer == null) {
+            buffer = allocate(1 << (index + MIN_SHIFT));
+        }
+        buffer.clear().limit(size);
+        return buffer;
+    }
+
+    /**
+     * Function to give a buffer back to the pool.
+     *
+     * @param buffer the buffer obtained from {@link #acquire(int)}
+     */
+    public void release(final ByteBuffer buffer) {
+        final int capacity = buffer.capacity();
+        final int index = sizeClass(capacity);
+        if (index < 0 || capacity != 1 << (index + MIN_SHIFT) || buffer.isDirect() != direct) {
+            return;
+        }
+        synchronized (idle[index]) {
+            if (counts[index] < idle[index].length) {
+                idle[index][counts[index]] = buffer;
+                counts[index]++;
+            }
+        }
+    }
+
+    /**
+     * Function to check whether the pool hands out direct buffers.
+     *
+     * @return true for direct buffers
+     */
+    public boolean isDirect() {
+        return direct;
+    }
+
+    private ByteBuffer allocate(final int capacity) {
+        if (direct) {
+            return ByteBuffer.allocateDirect(capacity);
+        }
+        return ByteBuffer.allocate(capacity);
+    }
+
+    private static int sizeClass(final int size) {
+        if (size <= 1 << MIN_SHIFT) {
+            return 0;
+        }
+        final int shift = Integer.SIZE - Integer.numberOfLeadingZeros(size - 1);
+        if (shift > MAX_SHIFT) {
+            return -1;
+        }
+        return shift - MIN_SHIFT;
+    }
+}
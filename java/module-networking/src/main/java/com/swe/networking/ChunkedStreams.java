@@ -0,0 +1,282 @@
+package com.swe.networking;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Streams large payloads over {@link AbstractNetworking} in fixed-size chunks.
+ *
+ * <p>Every chunk is sent as its own message, so chunks interleave with other
+ * traffic in the send scheduler. A chunk carries the stream id, the offset
+ * of its data and a flag marking the last chunk. The receiving side writes
+ * each chunk at its offset into a temporary file and hands the file to the
+ * {@link StreamListener} once every byte has arrived; a chunk that arrives
+ * twice is written once. Every chunk is sent in a fresh array, since the
+ * networking module may still hold it after sendData returns, so the sender
+ * keeps one chunk alive per message in flight regardless of the payload size.
+ * A stream whose file cannot be written is dropped, logged and counted,
+ * without affecting the other streams.
+ */
+public final class ChunkedStreams implements BufferListener {
+    /** Bytes of the chunk header: stream id, offset and flags. */
+    private static final int HEADER = 2 * Long.BYTES + 1;
+
+    /** Flag set on the last chunk of a stream. */
+    private static final byte LAST = 1;
+
+    /** Logger of the streams that could not be written. */
+    private static final Logger LOG = Logger.getLogger(ChunkedStreams.class.getName());
+
+    /** Networking module the chunks are sent through. */
+    private final AbstractNetworking network;
+
+    /** Size of the data in a chunk. */
+    private final int chunkSize;
+
+    /** Listener of the completed streams, or null if only sending. */
+    private final StreamListener listener;
+
+    /** Streams being reassembled, keyed by stream id. */
+    private final HashMap<Long, Assembly> assemblies = new HashMap<>();
+
+    /** Number of streams dropped because their file could not be written. */
+    private long failed;
+
+    /**
+     * Creates a stream helper for a module and subscribes it to receive.
+     *
+     * @param networking     the networking module
+     * @param module         the module the chunks are sent to
+     * @param chunkBytes     the size of the data in a chunk
+     * @param streamListener the listener of completed streams, or null
+     * @throws IllegalArgumentException if chunkBytes is not positive
+     */
+    public ChunkedStreams(final AbstractNetworking networking, final int module, final int chunkBytes,
+            final StreamListener streamListener) {
+        if (chunkBytes < 1) {
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkBytes);
+        }
+        this.network = networking;
+        this.chunkSize = chunkBytes;
+        this.listener = streamListener;
+        if (streamListener != null) {
+            networking.subscribe(module, this);
+        }
+    }
+
+    /**
+     * Function to stream the contents of an input stream.
+     *
+     * @param source   the data to be sent
+     * @param dest     the destination, or null for all clients
+     * @param module   the module to send to
+     * @param priority the priority of the chunks
+     * @return the number of bytes sent
+     * @throws IOException if reading the source fails
+     */
+    public long send(final InputStream source, final ClientNode[] dest, final int module, final int priority)
+            throws IOException {
+        return send(Channels.newChannel(source), dest, module, priority);
+    }
+
+    /**
+     * Function to stream the contents of a channel.
+     *
+     * @param source   the data to be sent
+     * @param dest     the destination, or null for all clients
+     * @param module   the module to send to
+     * @param priority the priority of the chunks
+     * @return the number of bytes sent
+     * @throws IOException if reading the source fails
+     */
+    public long send(final ReadableByteChannel source, final ClientNode[] dest, final int module,
+            final int priority) throws IOException {
+        final long streamId = ThreadLocalRandom.current().nextLong();
+        long offset = 0;
+        boolean last = false;
+        while (!last) {
+            final byte[] chunk = new byte[HEADER + chunkSize];
+            final ByteBuffer buffer = ByteBuffer.wrap(chunk).position(HEADER);
+            while (buffer.hasRemaining()) {
+                if (source.read(buffer) < 0) {
+                    last = true;
+                    break;
+                }
+            }
+            final int length = buffer.position() - HEADER;
+            buffer.putLong(0, streamId);
+            buffer.putLong(Long.BYTES, offset);
+            if (last) {
+                buffer.put(2 * Long.BYTES, LAST);
+            }
+            byte[] data = chunk;
+            if (length < chunkSize) {
+                data = new byte[HEADER + length];
+                System.arraycopy(chunk, 0, data, 0, data.length);
+            }
+            if (dest == null) {
+                network.broadcast(data, module, priority);
+            } else {
+                network.sendData(data, dest, module, priority);
+            }
+            offset += length;
+        }
+        return offset;
+    }
+
+    @Override
+    public void receiveData(final ByteBuffer data, final int module, final int priority) {
+        final long streamId = data.getLong();
+        final long offset = data.getLong();
+        final boolean last = data.get() == LAST;
+        final ByteBuffer body = data.slice();
+        final Assembly assembly;
+        synchronized (this) {
+            try {
+                Assembly current = assemblies.get(streamId);
+                if (current == null) {
+                    current = new Assembly(Files.createTempFile("stream-" + module + "-", ".part"));
+                    assemblies.put(streamId, current);
+                }
+                assembly = current;
+                if (!write(assembly, body, offset, last)) {
+                    return;
+                }
+                assemblies.remove(streamId);
+                assembly.channel.close();
+            } catch (IOException e) {
+                fail(streamId, e);
+                return;
+            }
+        }
+        listener.receiveStream(assembly.file, assembly.size);
+    }
+
+    /**
+     * Function to write a chunk into its stream, ignoring a chunk that
+     * already arrived.
+     *
+     * @param assembly the stream
+     * @param body     the data of the chunk
+     * @param offset   the offset of the data in the stream
+     * @param last     whether the chunk is the last one
+     * @return true if the stream is complete
+     * @throws IOException if writing the file fails
+     */
+    private boolean write(final Assembly assembly, final ByteBuffer body, final long offset, final boolean last)
+            throws IOException {
+        assembly.lastActivity = System.nanoTime();
+        if (!assembly.offsets.add(offset)) {
+            return false;
+        }
+        final int length = body.remaining();
+        while (body.hasRemaining()) {
+            assembly.channel.write(body, offset + body.position());
+        }
+        assembly.received += length;
+        if (last) {
+            assembly.size = offset + length;
+        }
+        return assembly.size >= 0 && assembly.received >= assembly.size;
+    }
+
+    /**
+     * Function to drop a stream whose file could not be written. Its later
+     * chunks start a new assembly, which is discarded once idle.
+     *
+     * @param streamId the stream
+     * @param error    the write error
+     */
+    private void fail(final long streamId, final IOException error) {
+        failed++;
+        LOG.log(Level.WARNING, "Dropped stream " + streamId, error);
+        final Assembly assembly = assemblies.remove(streamId);
+        if (assembly == null) {
+            return;
+        }
+        try {
+            assembly.channel.close();
+            Files.deleteIfExists(assembly.file);
+        } catch (IOException e) {
+            error.addSuppressed(e);
+        }
+    }
+
+    /**
+     * Function to get the number of streams dropped because their file
+     * could not be written.
+     *
+     * @return the failed count
+     */
+    public synchronized long failedCount() {
+        return failed;
+    }
+
+    /**
+     * Function to drop streams that stopped receiving chunks.
+     *
+     * @param idleNanos how long a stream may go without a chunk
+     * @return the number of streams dropped
+     */
+    public synchronized int discardIdle(final long idleNanos) {
+        final long now = System.nanoTime();
+        int discarded = 0;
+        final Iterator<Assembly> iterator = assemblies.values().iterator();
+        while (iterator.hasNext()) {
+            final Assembly assembly = iterator.next();
+            if (now - assembly.lastActivity > idleNanos) {
+                iterator.remove();
+                discarded++;
+                try {
+                    assembly.channel.close();
+                    Files.deleteIfExists(assembly.file);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        }
+        return discarded;
+    }
+
+    /**
+     * A stream being reassembled.
+     */
+    private static final class Assembly {
+        /** The temporary file. */
+        private final Path file;
+
+        /** Channel writing the file. */
+        private final FileChannel channel;
+
+        /** Offsets of the chunks received so far. */
+        private final HashSet<Long> offsets = new HashSet<>();
+
+        /** Bytes received so far. */
+        private long received;
+
+        /** Total size, or -1 until the last chunk arrived. */
+        private long size = -1;
+
+        /** When the last chunk arrived. */
+        private long lastActivity;
+
+        Assembly(final Path path) throws IOException {
+            this.file = path;
+            this.channel = FileChannel.open(path, StandardOpenOption.WRITE);
+        }
+    }
+}
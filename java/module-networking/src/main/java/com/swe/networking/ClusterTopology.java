@@ -0,0 +1,117 @@
+package com.swe.networking;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Groups the clients of a meeting into clusters of bounded size, each with
+ * an elected relay that forwards broadcasts to the rest of its cluster.
+ *
+ * <p>The topology is updated incrementally: a joining client fills the first
+ * cluster with room or starts a new one as its relay, and a leaving client
+ * is removed from its cluster, handing the relay role to the longest-standing
+ * remaining member. Readers get an immutable snapshot of the clusters, with
+ * the relay first in every member array.
+ */
+public final class ClusterTopology {
+    /** Maximum number of clients in a cluster, relay included. */
+    private final int clusterSize;
+
+    /** Clusters in creation order. */
+    private final List<List<ClientNode>> clusters = new ArrayList<>();
+
+    /** Cluster of every client. */
+    private final HashMap<ClientNode, List<ClientNode>> clusterOf = new HashMap<>();
+
+    /** Current snapshot, relay first in every cluster. */
+    private volatile ClientNode[][] snapshot = new ClientNode[0][];
+
+    /**
+     * Creates an empty topology.
+     *
+     * @param size the maximum number of clients in a cluster
+     */
+    public ClusterTopology(final int size) {
+        this.clusterSize = size;
+    }
+
+    /**
+     * Function to add a client.
+     *
+     * @param node the client
+     */
+    public synchronized void join(final ClientNode node) {
+        if (clusterOf.containsKey(node)) {
+            return;
+        }
+        List<ClientNode> target = null;
+        for (List<ClientNode> cluster : clusters) {
+            if (cluster.size() < clusterSize) {
+                target = cluster;
+                break;
+            }
+        }
+        if (target == null) {
+            target = new ArrayList<>();
+            clusters.add(target);
+        }
+        target.add(node);
+        clusterOf.put(node, target);
+        publish();
+    }
+
+    /**
+     * Function to remove a client, electing a new relay if it was one.
+     *
+     * @param node the client
+     */
+    public synchronized void leave(final ClientNode node) {
+        final List<ClientNode> cluster = clusterOf.remove(node);
+        if (cluster == null) {
+            return;
+        }
+        cluster.remove(node);
+        if (cluster.isEmpty()) {
+            clusters.remove(cluster);
+        }
+        publish();
+    }
+
+    /**
+     * Function to get the current clusters.
+     *
+     * @return the members of every cluster, relay first; must not be modified
+     */
+    public ClientNode[][] clusters() {
+        return snapshot;
+    }
+
+    /**
+     * Function to get the relay of a client's cluster.
+     *
+     * @param node the client
+     * @return the relay, or null if the client is unknown
+     */
+    public synchronized ClientNode relayOf(final ClientNode node) {
+        final List<ClientNode> cluster = clusterOf.get(node);
+        if (cluster == null) {
+            return null;
+        }
+        return cluster.get(0);
+    }
+
+    private void publish() {
+        final ClientNode[][] next = new ClientNode[clusters.size()][];
+        for (int i = 0; i < next.length; i++) {
+            next[i] = clusters.get(i).toArray(new ClientNode[0]);
+        }
+        snapshot = next;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return Arrays.deepToString(snapshot);
+    }
+}
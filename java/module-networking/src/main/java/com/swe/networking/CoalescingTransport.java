@@ -0,0 +1,262 @@
+package com.swe.networking;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Transport decorator that packs small sendData and broadcast frames for the
+ * same destinations into a single batch frame.
+ *
+ * <p>Messages are coalesced per priority, so a batch travels at the priority
+ * of all its messages and bulk payloads never ride along with urgent ones. A
+ * batch is sent with the module {@link FrameCodec#BATCH_MODULE}; its data is
+ * a sequence of module, priority, length and payload entries, which
+ * {@link NetworkFront} unpacks before calling the listeners. A batch is
+ * flushed when it would exceed the byte limit, when the destinations of its
+ * priority change, or when the flush deadline of its first message expires.
+ * A batch the downstream transport rejects fails the futures of its
+ * asynchronous messages and is logged and counted.
+ */
+public final class CoalescingTransport implements FrameTransport {
+    /** Bytes of an entry header: module, priority and length. */
+    private static final int ENTRY_HEADER = 3 * Integer.BYTES;
+
+    /** Logger of the batches the downstream transport rejects. */
+    private static final Logger LOG = Logger.getLogger(CoalescingTransport.class.getName());
+
+    /** Transport the batches are written to. */
+    private final FrameTransport downstream;
+
+    /** Pool the batches are built in. */
+    private final BufferPool pool;
+
+    /** Maximum size of a batch frame. */
+    private final int maxBytes;
+
+    /** Time the first message of a batch may wait. */
+    private final long flushDelayMicros;
+
+    /** Timer flushing batches whose deadline expired. */
+    private final ScheduledExecutorService timer;
+
+    /** Open batch of every priority, most urgent first. */
+    private final TreeMap<Integer, Batch> open = new TreeMap<>();
+
+    /** Number of batches the downstream transport rejected. */
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * Creates a coalescing transport.
+     *
+     * @param downstreamTransport the transport to write to
+     * @param bufferPool          the pool to build the batches in
+     * @param maxBatchBytes       the maximum size of a batch frame
+     * @param flushDelay          the flush deadline in microseconds
+     */
+    public CoalescingTransport(final FrameTransport downstreamTransport, final BufferPool bufferPool,
+            final int maxBatchBytes, final long flushDelay) {
+        this.downstream = downstreamTransport;
+        this.pool = bufferPool;
+        this.maxBytes = maxBatchBytes;
+        this.flushDelayMicros = flushDelay;
+        this.timer = Executors.newSingleThreadScheduledExecutor(task -> {
+            final Thread thread = new Thread(task, "networking-coalescer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void call(final String procedure, final ByteBuffer frame) {
+        append(procedure, frame, null);
+    }
+
+    @Override
+    public CompletableFuture<Void> callAsync(final String procedure, final ByteBuffer frame) {
+        final CompletableFuture<Void> written = new CompletableFuture<>();
+        append(procedure, frame, written);
+        return written;
+    }
+
+    private synchronized void append(final String procedure, final ByteBuffer frame,
+            final CompletableFuture<Void> written) {
+        if (!FrameCodec.carriesPayload(procedure)) {
+            flush();
+            forward(procedure, frame, written);
+            return;
+        }
+        final int start = FrameCodec.payloadStart(procedure, frame);
+        final int dataLength = frame.getInt(start);
+        final int headerLength = start - frame.position();
+        final int entrySize = ENTRY_HEADER + dataLength;
+        final int dataStart = start + Integer.BYTES;
+        final int module = frame.getInt(dataStart + dataLength);
+        final int priority = frame.getInt(dataStart + dataLength + Integer.BYTES);
+        Batch batch = open.get(priority);
+        if (headerLength + 3 * Integer.BYTES + entrySize > maxBytes) {
+            if (batch != null) {
+                send(batch);
+            }
+            forward(procedure, frame, written);
+            return;
+        }
+        if (batch != null && (!batch.procedure.equals(procedure) || !batch.sameHeader(frame, headerLength)
+                || batch.entries.remaining() < entrySize)) {
+            send(batch);
+            batch = null;
+        }
+        if (batch == null) {
+            batch = open(procedure, frame, headerLength, priority);
+        }
+        batch.entries.putInt(module);
+        batch.entries.putInt(priority);
+        batch.entries.putInt(dataLength);
+        batch.entries.put(frame.duplicate().position(dataStart).limit(dataStart + dataLength));
+        if (written != null) {
+            batch.waiters.add(written);
+        }
+    }
+
+    /**
+     * Function to send the open batches, if any, most urgent first.
+     */
+    public synchronized void flush() {
+        while (!open.isEmpty()) {
+            send(open.firstEntry().getValue());
+        }
+    }
+
+    /**
+     * Function to get the number of batches the downstream transport rejected.
+     *
+     * @return the failed count
+     */
+    public long failedCount() {
+        return failed.get();
+    }
+
+    private void send(final Batch batch) {
+        open.remove(batch.priority);
+        final int entryBytes = batch.entries.position();
+        final ByteBuffer frame = pool.acquire(batch.header.remaining() + entryBytes + 3 * Integer.BYTES);
+        frame.put(batch.header);
+        frame.putInt(entryBytes);
+        frame.put(batch.entries.flip());
+        frame.putInt(FrameCodec.BATCH_MODULE);
+        frame.putInt(batch.priority);
+        pool.release(batch.header);
+        pool.release(batch.entries);
+        final List<CompletableFuture<Void>> batchWaiters = batch.waiters;
+        CompletableFuture<Void> written = null;
+        if (!batchWaiters.isEmpty()) {
+            written = new CompletableFuture<>();
+            written.whenComplete((result, error) -> {
+                if (error != null) {
+                    failed.incrementAndGet();
+                }
+                for (CompletableFuture<Void> waiter : batchWaiters) {
+                    if (error != null) {
+                        waiter.completeExceptionally(error);
+                    } else {
+                        waiter.complete(null);
+                    }
+                }
+            });
+        }
+        try {
+            forward(batch.procedure, frame.flip(), written);
+        } catch (RuntimeException e) {
+            // the batch holds the messages of many callers, and may be sent from the timer thread
+            failed.incrementAndGet();
+            LOG.log(Level.WARNING, "Dropped a batch the transport rejected", e);
+        } finally {
+            pool.release(frame);
+        }
+    }
+
+    private void forward(final String procedure, final ByteBuffer frame, final CompletableFuture<Void> written) {
+        if (written == null) {
+            downstream.call(procedure, frame);
+            return;
+        }
+        try {
+            downstream.callAsync(procedure, frame).whenComplete((result, error) -> {
+                if (error != null) {
+                    written.completeExceptionally(error);
+                } else {
+                    written.complete(null);
+                }
+            });
+        } catch (RuntimeException e) {
+            written.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Function to flush the open batches and stop the deadline timer.
+     */
+    public void shutdown() {
+        flush();
+        timer.shutdown();
+    }
+
+    private Batch open(final String procedure, final ByteBuffer frame, final int headerLength, final int priority) {
+        final ByteBuffer header = pool.acquire(headerLength);
+        header.put(frame.duplicate().limit(frame.position() + headerLength)).flip();
+        final Batch batch = new Batch(procedure, header, pool.acquire(maxBytes - headerLength - 3 * Integer.BYTES),
+                priority);
+        open.put(priority, batch);
+        timer.schedule(() -> flushIfCurrent(batch), flushDelayMicros, TimeUnit.MICROSECONDS);
+        return batch;
+    }
+
+    private synchronized void flushIfCurrent(final Batch batch) {
+        if (open.get(batch.priority) == batch) {
+            send(batch);
+        }
+    }
+
+    /**
+     * The open batch of one priority.
+     */
+    private static final class Batch {
+        /** Procedure of the batch. */
+        private final String procedure;
+
+        /** Destination section of the batch. */
+        private final ByteBuffer header;
+
+        /** Entries of the batch. */
+        private final ByteBuffer entries;
+
+        /** Priority of every message in the batch. */
+        private final int priority;
+
+        /** Completions of the asynchronous calls in the batch. */
+        private final List<CompletableFuture<Void>> waiters = new ArrayList<>();
+
+        Batch(final String batchProcedure, final ByteBuffer destinations, final ByteBuffer batchEntries,
+                final int batchPriority) {
+            this.procedure = batchProcedure;
+            this.header = destinations;
+            this.entries = batchEntries;
+            this.priority = batchPriority;
+        }
+
+        private boolean sameHeader(final ByteBuffer frame, final int headerLength) {
+            if (header.remaining() != headerLength) {
+                return false;
+            }
+            return header.equals(frame.duplicate().limit(frame.position() + headerLength));
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.swe.networking;
+
+/**
+ * Codecs available for payload compression. The id is written into the
+ * compressed envelope so the receiver knows how to decompress.
+ */
+public enum CompressionCodec {
+    /** java.util.zip Deflate at the level given by the policy. */
+    DEFLATE((byte) 1),
+
+    /** Fast pure-Java LZ77 codec, see {@link LzCodec}. */
+    LZ((byte) 2);
+
+    /** Id written on the wire. */
+    private final byte id;
+
+    CompressionCodec(final byte codecId) {
+        this.id = codecId;
+    }
+
+    /**
+     * Function to get the wire id of the codec.
+     *
+     * @return the id
+     */
+    public byte id() {
+        return id;
+    }
+
+    /**
+     * Function to find a codec by its wire id.
+     *
+     * @param id the id
+     * @return the codec
+     */
+    public static CompressionCodec fromId(final byte id) {
+        for (CompressionCodec codec : values()) {
+            if (codec.id == id) {
+                return codec;
+            }
+        }
+        throw new IllegalArgumentException("Unknown compression codec: " + id);
+    }
+}
@@ -0,0 +1,15 @@
+package com.swe.networking;
+
+/**
+ * How the payloads of a module are compressed.
+ *
+ * @param codec     the codec to use
+ * @param level     the Deflate level, ignored by the LZ codec
+ * @param threshold payloads smaller than this many bytes are sent raw
+ * @param maxRatio  a payload is sent raw unless it shrinks below this
+ *                  fraction of its size
+ * @param backoff   payloads sent raw after one failed to shrink, before the
+ *                  next one is sampled again
+ */
+public record CompressionPolicy(CompressionCodec codec, int level, int threshold, double maxRatio, int backoff) {
+}
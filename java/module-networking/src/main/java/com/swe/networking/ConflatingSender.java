@@ -0,0 +1,177 @@
+package com.swe.networking;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Sends state-style updates where only the newest value per key matters.
+ *
+ * <p>Updates are queued per module, key and set of destinations. An update
+ * that is still queued is replaced in place by a newer one for the same key
+ * and destinations, keeping its place in the queue, so a congested link
+ * delivers the current state instead of a growing backlog. A single thread
+ * drains the queue through the networking module and blocks whenever the
+ * transport pushes back. An update the networking module rejects is logged
+ * and counted, and draining carries on.
+ */
+public final class ConflatingSender {
+    /** Logger of the updates the networking module rejects. */
+    private static final Logger LOG = Logger.getLogger(ConflatingSender.class.getName());
+
+    /** Networking module the updates are sent through. */
+    private final AbstractNetworking network;
+
+    /** Queued updates in send order. */
+    private final LinkedHashMap<UpdateKey, Update> pending = new LinkedHashMap<>();
+
+    /** Thread draining the queue. */
+    private final Thread drainThread;
+
+    /** Number of updates replaced before they were sent. */
+    private long conflated;
+
+    /** Number of updates the networking module rejected. */
+    private long failed;
+
+    /** Whether the sender has been shut down. */
+    private volatile boolean running = true;
+
+    /**
+     * Creates a sender and starts its drain thread.
+     *
+     * @param networking the networking module to send through
+     */
+    public ConflatingSender(final AbstractNetworking networking) {
+        this.network = networking;
+        this.drainThread = new Thread(this::drainLoop, "networking-conflater");
+        drainThread.setDaemon(true);
+        drainThread.start();
+    }
+
+    /**
+     * Function to queue the newest value of a key for all clients.
+     *
+     * @param module   the module to be sent to
+     * @param key      the key within the module, such as a user or a flag
+     * @param data     the current value
+     * @param priority the priority of the data
+     */
+    public void publish(final int module, final int key, final byte[] data, final int priority) {
+        publish(module, key, data, null, priority);
+    }
+
+    /**
+     * Function to queue the newest value of a key for the given destinations.
+     * Only an update for the same destinations, in any order, replaces it.
+     *
+     * @param module   the module to be sent to
+     * @param key      the key within the module, such as a user or a flag
+     * @param data     the current value
+     * @param dest     the destination, or null for all clients
+     * @param priority the priority of the data
+     */
+    public synchronized void publish(final int module, final int key, final byte[] data,
+            final ClientNode[] dest, final int priority) {
+        Set<ClientNode> destinations = null;
+        if (dest != null) {
+            destinations = Set.copyOf(Arrays.asList(dest));
+        }
+        final Update previous = pending.put(new UpdateKey(module, key, destinations),
+                new Update(data, dest, module, priority));
+        if (previous != null) {
+            conflated++;
+        }
+        notifyAll();
+    }
+
+    /**
+     * Function to get the number of updates waiting to be sent.
+     *
+     * @return the number of keys with a queued value
+     */
+    public synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * Function to get the number of updates that were replaced before sending.
+     *
+     * @return the number of conflated updates
+     */
+    public synchronized long conflatedCount() {
+        return conflated;
+    }
+
+    /**
+     * Function to get the number of updates the networking module rejected.
+     *
+     * @return the failed count
+     */
+    public synchronized long failedCount() {
+        return failed;
+    }
+
+    /**
+     * Function to stop the drain thread. Queued updates are dropped.
+     */
+    public void shutdown() {
+        running = false;
+        drainThread.interrupt();
+    }
+
+    private void drainLoop() {
+        while (running) {
+            final Update update;
+            synchronized (this) {
+                while (pending.isEmpty()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                final Iterator<Map.Entry<UpdateKey, Update>> oldest = pending.entrySet().iterator();
+                update = oldest.next().getValue();
+                oldest.remove();
+            }
+            try {
+                if (update.dest() == null) {
+                    network.broadcast(update.data(), update.module(), update.priority());
+                } else {
+                    network.sendData(update.data(), update.dest(), update.module(), update.priority());
+                }
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    failed++;
+                }
+                LOG.log(Level.WARNING, "Dropped an update of module " + update.module(), e);
+            }
+        }
+    }
+
+    /**
+     * What a queued value is conflated by.
+     *
+     * @param module the module
+     * @param key    the key within the module
+     * @param dest   the destinations, or null for all clients
+     */
+    private record UpdateKey(int module, int key, Set<ClientNode> dest) {
+    }
+
+    /**
+     * A queued value.
+     *
+     * @param data     the value
+     * @param dest     the destination, or null for all clients
+     * @param module   the module
+     * @param priority the priority
+     */
+    private record Update(byte[] data, ClientNode[] dest, int module, int priority) {
+    }
+}
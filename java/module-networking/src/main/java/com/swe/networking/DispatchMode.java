@@ -0,0 +1,18 @@
+package com.swe.networking;
+
+/**
+ * How the inbound messages of a module are run.
+ */
+public enum DispatchMode {
+    /**
+     * Every message runs on its own thread, virtual where the runtime has
+     * them, with a bounded number running at once.
+     */
+    PER_MESSAGE,
+
+    /** Messages run one at a time in arrival order on a single thread. */
+    ORDERED,
+
+    /** Messages run on a bounded pool of threads. */
+    POOLED
+}
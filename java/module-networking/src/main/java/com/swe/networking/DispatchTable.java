@@ -0,0 +1,98 @@
+package com.swe.networking;
+
+/**
+ * Copy-on-write table of the listeners of every module, indexed by module id.
+ * The receive thread reads the current snapshot without locking while
+ * subscribe and removeSubscription publish a new snapshot under a lock.
+ */
+public final class DispatchTable {
+    /** Shared empty listener list. */
+    private static final BufferListener[] NONE = new BufferListener[0];
+
+    /** Initial number of module slots. */
+    private static final int INITIAL_SLOTS = 16;
+
+    /** Current snapshot, one listener array per module id. */
+    private volatile BufferListener[][] table = new BufferListener[INITIAL_SLOTS][];
+
+    /**
+     * Function to get the listeners of a module.
+     *
+     * @param module the module id
+     * @return the listeners, which must not be modified
+     */
+    public BufferListener[] get(final int module) {
+        final BufferListener[][] snapshot = table;
+        if (module < 0 || module >= snapshot.length) {
+            return NONE;
+        }
+        final BufferListener[] slot = snapshot[module];
+        if (slot == null) {
+            return NONE;
+        }
+        return slot;
+    }
+
+    /**
+     * Function to add a listener to a module.
+     *
+     * @param module   the module id
+     * @param listener the listener to add
+     */
+    public synchronized void add(final int module, final BufferListener listener) {
+        if (module < 0) {
+            throw new IllegalArgumentException("Module id must not be negative: " + module);
+        }
+        BufferListener[][] next = table;
+        if (module >= next.length) {
+            final BufferListener[][] grown = new BufferListener[Math.max(module + 1, next.length * 2)][];
+            System.arraycopy(next, 0, grown, 0, next.length);
+            next = grown;
+        } else {
+            next = next.clone();
+        }
+        final BufferListener[] current = get(module);
+        final BufferListener[] slot = new BufferListener[current.length + 1];
+        System.arraycopy(current, 0, slot, 0, current.length);
+        slot[current.length] = listener;
+        next[module] = slot;
+        table = next;
+    }
+
+    /**
+     * Function to remove one listener from a module.
+     *
+     * @param module   the module id
+     * @param listener the listener to remove
+     * @return true if the listener was the last one of the module
+     */
+    public synchronized boolean remove(final int module, final BufferListener listener) {
+        final BufferListener[] current = get(module);
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == listener) {
+                final BufferListener[] slot = new BufferListener[current.length - 1];
+                System.arraycopy(current, 0, slot, 0, i);
+                System.arraycopy(current, i + 1, slot, i, slot.length - i);
+                final BufferListener[][] next = table.clone();
+                next[module] = slot.length == 0 ? null : slot;
+                table = next;
+                return slot.length == 0;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Function to remove every listener of a module.
+     *
+     * @param module the module id
+     */
+    public synchronized void clear(final int module) {
+        if (module < 0 || module >= table.length) {
+            return;
+        }
+        final BufferListener[][] next = table.clone();
+        next[module] = null;
+        table = next;
+    }
+}
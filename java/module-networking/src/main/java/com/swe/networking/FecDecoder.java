@@ -0,0 +1,241 @@
+package com.swe.networking;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rebuilds the payloads lost from the groups sent by {@link FecEncoder}.
+ *
+ * <p>Payloads are delivered as soon as they arrive; a lost one is rebuilt
+ * as soon as the parity of its subgroup and all its other members are in.
+ * The last groups of every sender stream are kept, and a group leaving that
+ * window is counted towards the loss rate of its module. A payload arriving
+ * after its group left the window is delivered as is.
+ */
+final class FecDecoder {
+    /** Groups kept per sender stream. */
+    private static final int WINDOW = 8;
+
+    /** Sender streams kept, least recently used dropped first. */
+    private static final int MAX_STREAMS = 1024;
+
+    /** Most packets in a group: the index is one byte. */
+    private static final int MAX_PACKETS = 256;
+
+    /** Weight of the newest group in the loss rate. */
+    private static final double SMOOTHING = 1.0 / 16;
+
+    /** State of every sender stream. */
+    private final LinkedHashMap<Long, Stream> streams = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Long, Stream> eldest) {
+            return size() > MAX_STREAMS;
+        }
+    };
+
+    /** Smoothed loss rate per module. */
+    private final HashMap<Integer, Double> loss = new HashMap<>();
+
+    /**
+     * Function to take in one packet.
+     *
+     * @param envelope the envelope, positioned at the module id
+     * @return the payloads to deliver, in no particular order
+     */
+    synchronized List<ByteBuffer> receive(final ByteBuffer envelope) {
+        final int module = envelope.getInt();
+        final long streamId = envelope.getLong();
+        final int groupId = envelope.getInt();
+        final int index = envelope.get() & 0xFF;
+        final int size = envelope.get() & 0xFF;
+        final int parityCount = envelope.get() & 0xFF;
+        final ByteBuffer body = envelope.slice();
+        final List<ByteBuffer> out = new ArrayList<>(2);
+
+        final Stream stream = streams.computeIfAbsent(streamId, key -> new Stream());
+        Group group = stream.groups.get(groupId);
+        if (group == null) {
+            if (stream.evicted && groupId - stream.lastEvicted <= 0) {
+                if (index < size) {
+                    out.add(body);
+                }
+                return out;
+            }
+            group = new Group(size, parityCount);
+            stream.groups.put(groupId, group);
+            evict(stream, module);
+        }
+        group.received++;
+        if (index < size) {
+            // a data packet holds the planned size, a parity packet the actual one
+            if (group.delivered[index]) {
+                return out;
+            }
+            group.data[index] = body;
+            group.delivered[index] = true;
+            out.add(body);
+        } else {
+            group.actual = size;
+            group.parity[index - size] = body;
+        }
+        recover(group, out);
+        return out;
+    }
+
+    /**
+     * Function to get the smoothed fraction of packets lost for a module.
+     *
+     * @param module the module
+     * @return the loss rate, from 0 to 1
+     */
+    synchronized double lossRate(final int module) {
+        return loss.getOrDefault(module, 0.0);
+    }
+
+    /**
+     * Function to drop the oldest groups of a stream past the window and
+     * count their losses.
+     *
+     * @param stream the stream
+     * @param module the module of the stream
+     */
+    private void evict(final Stream stream, final int module) {
+        final Iterator<Map.Entry<Integer, Group>> it = stream.groups.entrySet().iterator();
+        while (stream.groups.size() > WINDOW) {
+            final Map.Entry<Integer, Group> eldest = it.next();
+            it.remove();
+            final Group group = eldest.getValue();
+            int expected = group.size + group.parityCount;
+            if (group.actual >= 0) {
+                expected = group.actual + group.parityCount;
+            }
+            final double lost = Math.max(0, expected - group.received) / (double) expected;
+            loss.merge(module, lost * SMOOTHING, (old, add) -> old * (1 - SMOOTHING) + add);
+            if (!stream.evicted || eldest.getKey() - stream.lastEvicted > 0) {
+                stream.lastEvicted = eldest.getKey();
+            }
+            stream.evicted = true;
+        }
+    }
+
+    /**
+     * Function to rebuild every payload that is the only one missing from a
+     * subgroup whose parity is in.
+     *
+     * @param group the group
+     * @param out   the list the rebuilt payloads are added to
+     */
+    private static void recover(final Group group, final List<ByteBuffer> out) {
+        if (group.actual < 0) {
+            return;
+        }
+        for (int p = 0; p < group.parityCount; p++) {
+            if (group.parity[p] == null) {
+                continue;
+            }
+            int missing = -1;
+            int missingCount = 0;
+            for (int i = p; i < group.actual; i += group.parityCount) {
+                if (group.data[i] == null) {
+                    missing = i;
+                    missingCount++;
+                }
+            }
+            if (missingCount != 1) {
+                continue;
+            }
+            final ByteBuffer rebuilt = rebuild(group, p);
+            if (rebuilt != null) {
+                group.data[missing] = rebuilt;
+                group.delivered[missing] = true;
+                out.add(rebuilt);
+            }
+        }
+    }
+
+    /**
+     * Function to XOR the parity of a subgroup with its present members.
+     *
+     * @param group    the group
+     * @param subgroup the subgroup
+     * @return the missing payload, or null if the parity is corrupt
+     */
+    private static ByteBuffer rebuild(final Group group, final int subgroup) {
+        final ByteBuffer parity = group.parity[subgroup];
+        final byte[] acc = new byte[parity.remaining()];
+        parity.duplicate().get(acc);
+        for (int i = subgroup; i < group.actual; i += group.parityCount) {
+            final ByteBuffer member = group.data[i];
+            if (member == null) {
+                continue;
+            }
+            final int length = member.remaining();
+            if (Integer.BYTES + length > acc.length) {
+                return null;
+            }
+            acc[0] ^= (byte) (length >>> 24);
+            acc[1] ^= (byte) (length >>> 16);
+            acc[2] ^= (byte) (length >>> 8);
+            acc[3] ^= (byte) length;
+            final int start = member.position();
+            for (int j = 0; j < length; j++) {
+                acc[Integer.BYTES + j] ^= member.get(start + j);
+            }
+        }
+        final int length = ByteBuffer.wrap(acc).getInt();
+        if (length < 0 || Integer.BYTES + length > acc.length) {
+            return null;
+        }
+        return ByteBuffer.wrap(acc, Integer.BYTES, length).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Groups of one sender stream.
+     */
+    private static final class Stream {
+        /** Groups in the window, oldest first. */
+        private final LinkedHashMap<Integer, Group> groups = new LinkedHashMap<>();
+
+        /** Whether a group already left the window. */
+        private boolean evicted;
+
+        /** Id of the last group that left the window. */
+        private int lastEvicted;
+    }
+
+    /**
+     * Packets received for one group.
+     */
+    private static final class Group {
+        /** Planned number of payloads. */
+        private final int size;
+
+        /** Parity packets of the group. */
+        private final int parityCount;
+
+        /** Actual number of payloads, known once a parity packet is in, else -1. */
+        private int actual = -1;
+
+        /** Packets received, parity included. */
+        private int received;
+
+        /** Payloads received or rebuilt, by index. */
+        private final ByteBuffer[] data = new ByteBuffer[MAX_PACKETS];
+
+        /** Whether each payload was delivered. */
+        private final boolean[] delivered = new boolean[MAX_PACKETS];
+
+        /** Parity packets received, by subgroup. */
+        private final ByteBuffer[] parity = new ByteBuffer[MAX_PACKETS];
+
+        Group(final int plannedSize, final int groupParity) {
+            this.size = plannedSize;
+            this.parityCount = groupParity;
+        }
+    }
+}
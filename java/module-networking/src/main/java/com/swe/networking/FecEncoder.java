@@ -0,0 +1,218 @@
+package com.swe.networking;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adds XOR parity packets to the payloads of one module.
+ *
+ * <p>Payloads are sent to {@link FrameCodec#FEC_MODULE} in groups that share
+ * a destination. Each payload is wrapped in an envelope holding the real
+ * module, the stream id of this encoder, the group id, its index and the
+ * group shape. With m parity packets, payload i of a group belongs to
+ * subgroup i mod m, and parity packet p is the XOR of the length-prefixed
+ * payloads of subgroup p, so a receiver can rebuild one lost payload per
+ * subgroup. The number of parity packets follows the loss reported by the
+ * receivers, from the policy minimum to its maximum. A group that is still
+ * open when the flush deadline of the policy expires is closed with the
+ * payloads it has, so the tail of a burst stays protected.
+ */
+final class FecEncoder {
+    /** Bytes of the envelope header: module, stream, group, index, size and parity count. */
+    static final int HEADER = Integer.BYTES + Long.BYTES + Integer.BYTES + 3;
+
+    /** Parity packets per lost payload expected in a group. */
+    private static final int SAFETY = 2;
+
+    /** Timer closing the groups whose flush deadline expired. */
+    private static final ScheduledExecutorService FLUSH_TIMER = Executors.newSingleThreadScheduledExecutor(task -> {
+        final Thread thread = new Thread(task, "networking-fec-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Where the encoded packets go.
+     */
+    interface Sink {
+        /**
+         * Function to send one packet.
+         *
+         * @param envelope the packet
+         * @param dest     the destinations, or null to broadcast
+         * @param priority the priority
+         */
+        void send(byte[] envelope, ClientNode[] dest, int priority);
+    }
+
+    /** The module the payloads are delivered to. */
+    private final int module;
+
+    /** The policy. */
+    private final FecPolicy policy;
+
+    /** Id of this encoder's stream, telling senders apart at the receivers. */
+    private final long stream = ThreadLocalRandom.current().nextLong();
+
+    /** Parity packets per group from the next group on. */
+    private int parityCount;
+
+    /** Id of the open group. */
+    private int group;
+
+    /** Parity packets of the open group. */
+    private int groupParity;
+
+    /** Payloads sent in the open group. */
+    private int count;
+
+    /** Destinations of the open group, or null for broadcast. */
+    private ClientNode[] groupDest;
+
+    /** Priority of the last payload of the open group. */
+    private int groupPriority;
+
+    /** XOR accumulators of the open group, one per subgroup. */
+    private byte[][] parity = new byte[0][];
+
+    /** Lengths of the accumulators. */
+    private int[] parityLength = new int[0];
+
+    FecEncoder(final int target, final FecPolicy fecPolicy) {
+        if (target < 0) {
+            throw new IllegalArgumentException("Module id must not be negative: " + target);
+        }
+        this.module = target;
+        this.policy = fecPolicy;
+        this.parityCount = fecPolicy.minParity();
+    }
+
+    /**
+     * Function to adapt the redundancy to the loss seen by the receivers.
+     * The change applies from the next group on.
+     *
+     * @param lossRate the fraction of packets lost, from 0 to 1
+     */
+    synchronized void reportLoss(final double lossRate) {
+        final int wanted = (int) Math.ceil(lossRate * policy.groupSize() * SAFETY);
+        parityCount = Math.max(policy.minParity(), Math.min(policy.maxParity(), wanted));
+    }
+
+    /**
+     * Function to get the parity packets sent per group.
+     *
+     * @return the parity count
+     */
+    synchronized int parityCount() {
+        return parityCount;
+    }
+
+    /**
+     * Function to send one payload, closing the open group first if it goes
+     * elsewhere and afterwards if it is full.
+     *
+     * @param data     the payload
+     * @param dest     the destinations, or null to broadcast
+     * @param priority the priority
+     * @param sink     where the packets go
+     */
+    synchronized void send(final byte[] data, final ClientNode[] dest, final int priority,
+            final Sink sink) {
+        if (count > 0 && !Arrays.equals(dest, groupDest)) {
+            close(sink);
+        }
+        if (count == 0) {
+            groupDest = dest;
+            groupParity = parityCount;
+            if (parity.length < groupParity) {
+                parity = Arrays.copyOf(parity, groupParity);
+                parityLength = Arrays.copyOf(parityLength, groupParity);
+            }
+            final int opened = group;
+            FLUSH_TIMER.schedule(() -> closeIfOpen(opened, sink), policy.flushMicros(), TimeUnit.MICROSECONDS);
+        }
+        groupPriority = priority;
+        final ByteBuffer envelope = header(count, policy.groupSize(), data.length);
+        envelope.put(data);
+        sink.send(envelope.array(), dest, priority);
+        if (groupParity > 0) {
+            accumulate(count % groupParity, data);
+        }
+        count++;
+        if (count == policy.groupSize()) {
+            close(sink);
+        }
+    }
+
+    /**
+     * Function to send the parity packets of the open group.
+     *
+     * @param sink where the packets go
+     */
+    synchronized void close(final Sink sink) {
+        if (count == 0) {
+            return;
+        }
+        for (int p = 0; p < groupParity; p++) {
+            final ByteBuffer envelope = header(count + p, count, parityLength[p]);
+            envelope.put(parity[p], 0, parityLength[p]);
+            sink.send(envelope.array(), groupDest, groupPriority);
+            Arrays.fill(parity[p], 0, parityLength[p], (byte) 0);
+            parityLength[p] = 0;
+        }
+        group++;
+        count = 0;
+    }
+
+    /**
+     * Function to close a group whose flush deadline expired, unless it was
+     * closed already.
+     *
+     * @param opened the id of the group
+     * @param sink   where the packets go
+     */
+    private synchronized void closeIfOpen(final int opened, final Sink sink) {
+        if (group == opened) {
+            close(sink);
+        }
+    }
+
+    private ByteBuffer header(final int index, final int size, final int bodyLength) {
+        final ByteBuffer envelope = ByteBuffer.allocate(HEADER + bodyLength);
+        envelope.putInt(module);
+        envelope.putLong(stream);
+        envelope.putInt(group);
+        envelope.put((byte) index);
+        envelope.put((byte) size);
+        envelope.put((byte) groupParity);
+        return envelope;
+    }
+
+    /**
+     * Function to XOR the length-prefixed payload into a subgroup's parity.
+     *
+     * @param subgroup the subgroup
+     * @param data     the payload
+     */
+    private void accumulate(final int subgroup, final byte[] data) {
+        final int length = Integer.BYTES + data.length;
+        if (parity[subgroup] == null) {
+            parity[subgroup] = new byte[length];
+        } else if (parity[subgroup].length < length) {
+            parity[subgroup] = Arrays.copyOf(parity[subgroup], length);
+        }
+        final byte[] acc = parity[subgroup];
+        acc[0] ^= (byte) (data.length >>> 24);
+        acc[1] ^= (byte) (data.length >>> 16);
+        acc[2] ^= (byte) (data.length >>> 8);
+        acc[3] ^= (byte) data.length;
+        for (int i = 0; i < data.length; i++) {
+            acc[Integer.BYTES + i] ^= data[i];
+        }
+        parityLength[subgroup] = Math.max(parityLength[subgroup], length);
+    }
+}
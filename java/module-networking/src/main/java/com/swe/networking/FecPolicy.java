@@ -0,0 +1,51 @@
+package com.swe.networking;
+
+/**
+ * How much forward error correction a module sends.
+ *
+ * @param groupSize   the number of payloads protected together, from 1 to 127
+ * @param minParity   the fewest parity packets sent per group
+ * @param maxParity   the most parity packets sent per group, reached when the
+ *                    reported loss is high; at most the group size
+ * @param flushMicros how long a group may stay open before its parity is sent
+ *                    for the payloads it has so far
+ */
+public record FecPolicy(int groupSize, int minParity, int maxParity, long flushMicros) {
+    /** Largest group the one-byte indices of the envelope can describe with its parity. */
+    public static final int MAX_GROUP_SIZE = 127;
+
+    /** Flush deadline of the policies that do not give one. */
+    public static final long DEFAULT_FLUSH_MICROS = 20_000;
+
+    /**
+     * Creates a policy, checking that the group fits the envelope.
+     *
+     * @param groupSize   the number of payloads protected together
+     * @param minParity   the fewest parity packets sent per group
+     * @param maxParity   the most parity packets sent per group
+     * @param flushMicros the flush deadline of a group
+     */
+    public FecPolicy {
+        if (groupSize < 1 || groupSize > MAX_GROUP_SIZE) {
+            throw new IllegalArgumentException("Group size must be from 1 to " + MAX_GROUP_SIZE + ": " + groupSize);
+        }
+        if (minParity < 0 || maxParity < minParity || maxParity > groupSize) {
+            throw new IllegalArgumentException("Parity must satisfy 0 <= min <= max <= group size: " + minParity
+                    + ", " + maxParity);
+        }
+        if (flushMicros <= 0) {
+            throw new IllegalArgumentException("Flush deadline must be positive: " + flushMicros);
+        }
+    }
+
+    /**
+     * Creates a policy with the default flush deadline.
+     *
+     * @param groupSize the number of payloads protected together
+     * @param minParity the fewest parity packets sent per group
+     * @param maxParity the most parity packets sent per group
+     */
+    public FecPolicy(final int groupSize, final int minParity, final int maxParity) {
+        this(groupSize, minParity, maxParity, DEFAULT_FLUSH_MICROS);
+    }
+}
@@ -0,0 +1,230 @@
+package com.swe.networking;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Encodes the frames exchanged with the RPC peer.
+ *
+ * <p>A sendData frame is laid out as the destination count, each destination
+ * as a one byte host length, the UTF-8 host and the port, then the data
+ * length, the data, the module and the priority. A broadcast frame is the
+ * same without the destination section, and a group frame has the group id
+ * in its place. A group update frame holds the group id and the destination
+ * sections of the members added and removed.
+ */
+public final class FrameCodec {
+    /** Reserved module id of a frame that carries several coalesced messages. */
+    public static final int BATCH_MODULE = -1;
+
+    /** Reserved module id of a frame that carries a compressed payload. */
+    public static final int COMPRESSED_MODULE = -2;
+
+    /** Reserved module id of a frame a cluster relay forwards to its members. */
+    public static final int RELAY_MODULE = -3;
+
+    /** Reserved module id of a frame that carries a payload or parity protected by FEC. */
+    public static final int FEC_MODULE = -4;
+
+    /** Cache of the UTF-8 encoding of every host name seen so far. */
+    private static final ConcurrentHashMap<String, byte[]> HOST_NAMES = new ConcurrentHashMap<>();
+
+    private FrameCodec() {
+    }
+
+    /**
+     * Function to get the UTF-8 bytes of a host name.
+     *
+     * @param hostName the host name
+     * @return the cached encoding, which must not be modified
+     */
+    public static byte[] hostBytes(final String hostName) {
+        final byte[] cached = HOST_NAMES.get(hostName);
+        if (cached != null) {
+            return cached;
+        }
+        return HOST_NAMES.computeIfAbsent(hostName, name -> name.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Function to compute the encoded size of a list of destinations.
+     *
+     * @param dest the destinations
+     * @return the number of bytes, including the destination count
+     */
+    public static int destinationSize(final ClientNode[] dest) {
+        int size = Integer.BYTES;
+        for (ClientNode record : dest) {
+            size += 1 + hostBytes(record.hostName()).length + Integer.BYTES;
+        }
+        return size;
+    }
+
+    /**
+     * Function to write a list of destinations.
+     *
+     * @param buffer the buffer to write into
+     * @param dest   the destinations
+     */
+    public static void putDestinations(final ByteBuffer buffer, final ClientNode[] dest) {
+        buffer.putInt(dest.length);
+        for (ClientNode record : dest) {
+            putNode(buffer, record);
+        }
+    }
+
+    /**
+     * Function to write a single node as host length, host and port.
+     *
+     * @param buffer the buffer to write into
+     * @param node   the node
+     */
+    public static void putNode(final ByteBuffer buffer, final ClientNode node) {
+        final byte[] hostName = hostBytes(node.hostName());
+        buffer.put((byte) hostName.length);
+        buffer.put(hostName);
+        buffer.putInt(node.port());
+    }
+
+    /**
+     * Function to read a single node written by {@link #putNode}.
+     *
+     * @param buffer the buffer to read from
+     * @return the node
+     */
+    public static ClientNode getNode(final ByteBuffer buffer) {
+        final int length = buffer.get() & 0xFF;
+        final byte[] hostName = new byte[length];
+        buffer.get(hostName);
+        return new ClientNode(new String(hostName, StandardCharsets.UTF_8), buffer.getInt());
+    }
+
+    /**
+     * Function to tell whether the frames of a procedure carry a payload.
+     *
+     * @param procedure the procedure
+     * @return true for sendData, direct, broadcast and group frames
+     */
+    public static boolean carriesPayload(final String procedure) {
+        return FrameTransport.SEND_DATA.equals(procedure) || FrameTransport.BROADCAST.equals(procedure)
+                || FrameTransport.SEND_GROUP.equals(procedure) || FrameTransport.SEND_DIRECT.equals(procedure);
+    }
+
+    /**
+     * Function to find where the data length of a frame starts.
+     *
+     * @param procedure the procedure the frame was sent with
+     * @param frame     the frame, positioned at its first byte
+     * @return the absolute index of the data length
+     */
+    public static int payloadStart(final String procedure, final ByteBuffer frame) {
+        int index = frame.position();
+        if (FrameTransport.SEND_GROUP.equals(procedure)) {
+            return index + Integer.BYTES;
+        }
+        if (!FrameTransport.SEND_DATA.equals(procedure) && !FrameTransport.SEND_DIRECT.equals(procedure)) {
+            return index;
+        }
+        final int count = frame.getInt(index);
+        index += Integer.BYTES;
+        for (int i = 0; i < count; i++) {
+            index += 1 + (frame.get(index) & 0xFF) + Integer.BYTES;
+        }
+        return index;
+    }
+
+    /**
+     * Function to encode a sendData frame into a pooled buffer.
+     *
+     * @param pool     the pool to take the buffer from
+     * @param data     the data to be sent
+     * @param dest     the destinations
+     * @param module   the module
+     * @param priority the priority
+     * @return the flipped frame, to be released to the pool after use
+     */
+    public static ByteBuffer encodeSendData(final BufferPool pool, final byte[] data, final ClientNode[] dest,
+            final int module, final int priority) {
+        // dest section + data length + data + module + priority
+        final int bufferSize = destinationSize(dest) + data.length + 3 * Integer.BYTES;
+        final ByteBuffer buffer = pool.acquire(bufferSize);
+        putDestinations(buffer, dest);
+        putPayload(buffer, data, module, priority);
+        return buffer.flip();
+    }
+
+    /**
+     * Function to encode a broadcast frame into a pooled buffer.
+     *
+     * @param pool     the pool to take the buffer from
+     * @param data     the data to be sent
+     * @param module   the module
+     * @param priority the priority
+     * @return the flipped frame, to be released to the pool after use
+     */
+    public static ByteBuffer encodeBroadcast(final BufferPool pool, final byte[] data, final int module,
+            final int priority) {
+        final ByteBuffer buffer = pool.acquire(data.length + 3 * Integer.BYTES);
+        putPayload(buffer, data, module, priority);
+        return buffer.flip();
+    }
+
+    /**
+     * Function to encode a group frame into a pooled buffer.
+     *
+     * @param pool     the pool to take the buffer from
+     * @param data     the data to be sent
+     * @param group    the destination group
+     * @param module   the module
+     * @param priority the priority
+     * @return the flipped frame, to be released to the pool after use
+     */
+    public static ByteBuffer encodeSendGroup(final BufferPool pool, final byte[] data, final int group,
+            final int module, final int priority) {
+        final ByteBuffer buffer = pool.acquire(data.length + 4 * Integer.BYTES);
+        buffer.putInt(group);
+        putPayload(buffer, data, module, priority);
+        return buffer.flip();
+    }
+
+    /**
+     * Function to encode a group update frame into a pooled buffer.
+     *
+     * @param pool    the pool to take the buffer from
+     * @param group   the destination group
+     * @param added   the members added
+     * @param removed the members removed
+     * @return the flipped frame, to be released to the pool after use
+     */
+    public static ByteBuffer encodeGroupUpdate(final BufferPool pool, final int group, final ClientNode[] added,
+            final ClientNode[] removed) {
+        final ByteBuffer buffer = pool.acquire(Integer.BYTES + destinationSize(added) + destinationSize(removed));
+        buffer.putInt(group);
+        putDestinations(buffer, added);
+        putDestinations(buffer, removed);
+        return buffer.flip();
+    }
+
+    /**
+     * Function to read a destination section written by {@link #putDestinations}.
+     *
+     * @param buffer the buffer to read from
+     * @return the destinations
+     */
+    public static ClientNode[] getDestinations(final ByteBuffer buffer) {
+        final ClientNode[] dest = new ClientNode[buffer.getInt()];
+        for (int i = 0; i < dest.length; i++) {
+            dest[i] = getNode(buffer);
+        }
+        return dest;
+    }
+
+    private static void putPayload(final ByteBuffer buffer, final byte[] data, final int module,
+            final int priority) {
+        buffer.putInt(data.length);
+        buffer.put(data);
+        buffer.putInt(module);
+        buffer.putInt(priority);
+    }
+}
@@ -0,0 +1,67 @@
+package com.swe.networking;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Interface between the networking front and the RPC peer that moves frames.
+ * The front encodes every request into a frame and hands it to the transport
+ * together with the name of the remote procedure to invoke.
+ *
+ * <p>The frame is only valid for the duration of the call. The front returns
+ * it to its buffer pool as soon as the call returns, so an implementation that
+ * keeps the bytes around must copy them first.
+ */
+@FunctionalInterface
+public interface FrameTransport {
+    /** Remote procedure used for sendData frames. */
+    String SEND_DATA = "Networking-SendData";
+
+    /** Remote procedure used for broadcast frames. */
+    String BROADCAST = "Networking-Broadcast";
+
+    /** Remote procedure used to register a module. */
+    String SUBSCRIBE = "Networking-Subscribe";
+
+    /** Remote procedure used to remove a module. */
+    String REMOVE_SUBSCRIPTION = "Networking-RemoveSubscription";
+
+    /** Remote procedure used to add a user to the network. */
+    String ADD_USER = "Networking-AddUser";
+
+    /** Remote procedure used to change the members of a destination group. */
+    String GROUP_UPDATE = "Networking-GroupUpdate";
+
+    /** Remote procedure used for frames sent to a destination group. */
+    String SEND_GROUP = "Networking-SendGroup";
+
+    /**
+     * Remote procedure used for sendData frames that go straight to the
+     * destinations instead of through the main server, such as the broadcasts
+     * a cluster relay forwards. Transports without direct connections handle
+     * it like {@link #SEND_DATA}.
+     */
+    String SEND_DIRECT = "Networking-SendDirect";
+
+    /**
+     * Function to pass a frame to the remote procedure.
+     *
+     * @param procedure the remote procedure to invoke
+     * @param frame     the encoded frame, positioned at its first byte
+     */
+    void call(String procedure, ByteBuffer frame);
+
+    /**
+     * Function to pass a frame to the remote procedure and learn when it has
+     * left the process. Transports that queue frames complete the future
+     * once the frame is written, the default completes it on return.
+     *
+     * @param procedure the remote procedure to invoke
+     * @param frame     the encoded frame, positioned at its first byte
+     * @return a future completed when the frame has been written
+     */
+    default CompletableFuture<Void> callAsync(final String procedure, final ByteBuffer frame) {
+        call(procedure, frame);
+        return CompletableFuture.completedFuture(null);
+    }
+}
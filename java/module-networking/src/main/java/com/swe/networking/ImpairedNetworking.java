@@ -0,0 +1,301 @@
+package com.swe.networking;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Decorator around a networking module that emulates lossy, slow links.
+ *
+ * <p>Every destination has a {@link LinkProfile} adding latency, jitter,
+ * loss, reordering and a bandwidth cap to the messages sent to it; broadcast
+ * uses the default profile. A reordered message is held back by twice the
+ * latency plus jitter, and at least a millisecond. The random choices of every link come from a
+ * generator seeded with the emulator seed and the link, so a run with the
+ * same seed and the same sends makes the same choices. Messages are copied
+ * and handed to the wrapped module from a single timer thread, so sendData
+ * and broadcast return before the message is delivered, and an error of the
+ * wrapped module only reaches the futures of the asynchronous sends.
+ */
+public final class ImpairedNetworking implements AbstractNetworking {
+    /** Microseconds per second. */
+    private static final long MICROS = 1_000_000L;
+
+    /** Delay added to a reordered message, as a multiple of latency plus jitter. */
+    private static final int REORDER_FACTOR = 2;
+
+    /** Least delay added to a reordered message, so links without latency reorder too. */
+    static final long MIN_REORDER_MICROS = 1_000;
+
+    /** Delay planned for a message the emulated loss drops. */
+    static final long DROPPED = -1;
+
+    /** Link of the broadcast messages. */
+    private static final ClientNode BROADCAST = new ClientNode("*", 0);
+
+    /** The wrapped networking module. */
+    private final AbstractNetworking network;
+
+    /** Seed all link generators derive from. */
+    private final long seed;
+
+    /** Profile of links without their own. */
+    private volatile LinkProfile defaultProfile;
+
+    /** Profiles and state of the links, keyed by destination. */
+    private final Map<ClientNode, Link> links = new ConcurrentHashMap<>();
+
+    /** Timer thread releasing delayed messages. */
+    private final ScheduledExecutorService timer;
+
+    /** Number of messages dropped by the emulated loss. */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /** Members of the destination groups, so group sends get per-link impairment. */
+    private final Map<Integer, ClientNode[]> groups = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an emulator.
+     *
+     * @param networking the networking module to wrap
+     * @param profile    the profile of links without their own
+     * @param randomSeed the seed of the random choices
+     */
+    public ImpairedNetworking(final AbstractNetworking networking, final LinkProfile profile,
+            final long randomSeed) {
+        this.network = networking;
+        this.defaultProfile = profile;
+        this.seed = randomSeed;
+        this.timer = Executors.newSingleThreadScheduledExecutor(task -> {
+            final Thread thread = new Thread(task, "networking-impairment");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Function to set the profile of the link to one destination.
+     *
+     * @param node    the destination
+     * @param profile the profile
+     */
+    public void setProfile(final ClientNode node, final LinkProfile profile) {
+        link(node).profile = profile;
+    }
+
+    /**
+     * Function to set the profile of links without their own, including broadcast.
+     *
+     * @param profile the profile
+     */
+    public void setDefaultProfile(final LinkProfile profile) {
+        defaultProfile = profile;
+    }
+
+    /**
+     * Function to get the number of messages dropped by the emulated loss.
+     *
+     * @return the dropped count
+     */
+    public long droppedCount() {
+        return dropped.get();
+    }
+
+    @Override
+    public void sendData(final byte[] data, final ClientNode[] dest, final int module, final int priority) {
+        sendDataAsync(data, dest, module, priority);
+    }
+
+    @Override
+    public void broadcast(final byte[] data, final int module, final int priority) {
+        broadcastAsync(data, module, priority);
+    }
+
+    @Override
+    public CompletableFuture<Void> sendDataAsync(final byte[] data, final ClientNode[] dest, final int module,
+            final int priority) {
+        final byte[] copy = data.clone();
+        final CompletableFuture<?>[] sends = new CompletableFuture<?>[dest.length];
+        for (int i = 0; i < dest.length; i++) {
+            final ClientNode[] single = {dest[i]};
+            sends[i] = impair(link(dest[i]), copy.length,
+                () -> network.sendDataAsync(copy, single, module, priority));
+        }
+        return CompletableFuture.allOf(sends);
+    }
+
+    @Override
+    public CompletableFuture<Void> broadcastAsync(final byte[] data, final int module, final int priority) {
+        final byte[] copy = data.clone();
+        return impair(link(BROADCAST), copy.length, () -> network.broadcastAsync(copy, module, priority));
+    }
+
+    @Override
+    public int registerGroup(final ClientNode[] members) {
+        final int group = network.registerGroup(members);
+        groups.put(group, members.clone());
+        return group;
+    }
+
+    @Override
+    public void updateGroup(final int group, final ClientNode[] added, final ClientNode[] removed) {
+        network.updateGroup(group, added, removed);
+        groups.computeIfPresent(group, (key, members) -> NetworkFront.applyDelta(members, added, removed));
+    }
+
+    @Override
+    public void removeGroup(final int group) {
+        network.removeGroup(group);
+        groups.remove(group);
+    }
+
+    /**
+     * Function to send to the members of a group one by one, each through
+     * its own link.
+     *
+     * @param data     the data to be sent
+     * @param group    the id of the group
+     * @param module   the module to send to
+     * @param priority the priority of the data
+     */
+    @Override
+    public void sendToGroup(final byte[] data, final int group, final int module, final int priority) {
+        final ClientNode[] members = groups.get(group);
+        if (members == null) {
+            throw new IllegalArgumentException("Unknown destination group " + group);
+        }
+        sendDataAsync(data, members, module, priority);
+    }
+
+    @Override
+    public void setInFlightLimit(final int module, final long bytes) {
+        network.setInFlightLimit(module, bytes);
+    }
+
+    @Override
+    public void subscribe(final int name, final MessageListener function) {
+        network.subscribe(name, function);
+    }
+
+    @Override
+    public void subscribe(final int name, final BufferListener function) {
+        network.subscribe(name, function);
+    }
+
+    @Override
+    public void removeSubscription(final int name) {
+        network.removeSubscription(name);
+    }
+
+    /**
+     * Function to stop the timer. Delayed messages are dropped.
+     */
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    private Link link(final ClientNode node) {
+        return links.computeIfAbsent(node, key -> new Link(new Random(seed ^ key.hashCode())));
+    }
+
+    /**
+     * Function to drop or delay one message on a link.
+     *
+     * @param link  the link
+     * @param bytes the size of the message
+     * @param send  sends the message through the wrapped module
+     * @return a future completed once the message was sent or dropped
+     */
+    private CompletableFuture<Void> impair(final Link link, final int bytes,
+            final Supplier<CompletableFuture<Void>> send) {
+        final long delayMicros = plan(link, bytes, TimeUnit.NANOSECONDS.toMicros(System.nanoTime()));
+        if (delayMicros == DROPPED) {
+            return CompletableFuture.completedFuture(null);
+        }
+        final CompletableFuture<Void> sent = new CompletableFuture<>();
+        timer.schedule(() -> {
+            final CompletableFuture<Void> written;
+            try {
+                written = send.get();
+            } catch (RuntimeException e) {
+                sent.completeExceptionally(e);
+                return;
+            }
+            written.whenComplete((result, error) -> {
+                if (error != null) {
+                    sent.completeExceptionally(error);
+                } else {
+                    sent.complete(null);
+                }
+            });
+        }, delayMicros, TimeUnit.MICROSECONDS);
+        return sent;
+    }
+
+    /**
+     * Function to plan the next message to a destination: drop it, or choose
+     * its delay. The choices advance the link's generator and bandwidth state
+     * just as a send does.
+     *
+     * @param node      the destination
+     * @param bytes     the size of the message
+     * @param nowMicros the current time in microseconds
+     * @return the delay in microseconds, or {@link #DROPPED}
+     */
+    long delayMicros(final ClientNode node, final int bytes, final long nowMicros) {
+        return plan(link(node), bytes, nowMicros);
+    }
+
+    private long plan(final Link link, final int bytes, final long now) {
+        synchronized (link) {
+            LinkProfile profile = link.profile;
+            if (profile == null) {
+                profile = defaultProfile;
+            }
+            if (link.random.nextDouble() < profile.lossRate()) {
+                dropped.incrementAndGet();
+                return DROPPED;
+            }
+            long departure = now;
+            if (profile.bytesPerSecond() > 0) {
+                departure = Math.max(now, link.freeAtMicros);
+                link.freeAtMicros = departure + bytes * MICROS / profile.bytesPerSecond();
+                departure = link.freeAtMicros;
+            }
+            long jitter = 0;
+            if (profile.jitterMicros() > 0) {
+                jitter = (long) (link.random.nextDouble() * profile.jitterMicros());
+            }
+            long delay = departure - now + profile.latencyMicros() + jitter;
+            if (link.random.nextDouble() < profile.reorderRate()) {
+                delay += Math.max(MIN_REORDER_MICROS,
+                        REORDER_FACTOR * (profile.latencyMicros() + profile.jitterMicros()));
+            }
+            return delay;
+        }
+    }
+
+    /**
+     * State of one emulated link.
+     */
+    private static final class Link {
+        /** Generator of the random choices of the link. */
+        private final Random random;
+
+        /** Profile of the link, or null for the default. */
+        private volatile LinkProfile profile;
+
+        /** When the bandwidth cap lets the next message start, in microseconds. */
+        private long freeAtMicros;
+
+        Link(final Random linkRandom) {
+            this.random = linkRandom;
+        }
+    }
+}
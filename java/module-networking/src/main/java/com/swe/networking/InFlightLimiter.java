@@ -0,0 +1,197 @@
+package com.swe.networking;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the bytes each module has handed to the transport but not yet seen
+ * written, and holds back further sends of a module while it is over its
+ * budget. Modules without a budget are never held back.
+ *
+ * <p>The sends held back are bounded too: a module may queue up to its
+ * budget again on top of what is in flight, and a send beyond that is
+ * rejected with a {@link RejectedExecutionException}, which fails its future,
+ * so a stalled module pushes back on its producer instead of buffering
+ * without limit. One send is always queued, however large.
+ *
+ * <p>Sends released by a completion run on a thread of the limiter rather
+ * than on the completing thread, which is usually a transport thread that
+ * must not block on its own queue. The thread runs released sends one at a
+ * time in the order they were released, may block on the transport, and
+ * exits after a second without work.
+ */
+final class InFlightLimiter {
+    /** Seconds the release thread stays alive without work. */
+    private static final long KEEP_ALIVE_SECONDS = 1;
+
+    /** Runs the released sends, in release order. */
+    private final ExecutorService releaser = new ThreadPoolExecutor(0, 1, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), task -> {
+                final Thread thread = new Thread(task, "networking-in-flight");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /** Budget and waiting sends of every limited module. */
+    private final HashMap<Integer, Budget> budgets = new HashMap<>();
+
+    /** Bytes in flight for modules without a budget. */
+    private final HashMap<Integer, Long> unlimited = new HashMap<>();
+
+    /**
+     * Function to set the in-flight budget of a module.
+     *
+     * @param module the module
+     * @param bytes  the budget in bytes, or a negative value to remove it
+     */
+    void setLimit(final int module, final long bytes) {
+        final ArrayDeque<Runnable> ready = new ArrayDeque<>();
+        synchronized (this) {
+            Budget budget = budgets.get(module);
+            if (bytes < 0) {
+                if (budget != null) {
+                    budgets.remove(module);
+                    // the released sends are in flight now and give their bytes back later
+                    long bytesOut = budget.inFlight;
+                    for (Waiting next : budget.waiting) {
+                        bytesOut += next.bytes();
+                    }
+                    unlimited.put(module, bytesOut);
+                    ready.addAll(budget.waiting);
+                    budget.waiting.clear();
+                    budget.waitingBytes = 0;
+                }
+            } else {
+                if (budget == null) {
+                    budget = new Budget();
+                    budget.inFlight = unlimited.getOrDefault(module, 0L);
+                    unlimited.remove(module);
+                    budgets.put(module, budget);
+                }
+                budget.limit = bytes;
+                budget.admit(ready);
+            }
+        }
+        runLater(ready);
+    }
+
+    /**
+     * Function to get the bytes of a module that are in flight.
+     *
+     * @param module the module
+     * @return the bytes handed to the transport but not yet written
+     */
+    synchronized long inFlight(final int module) {
+        final Budget budget = budgets.get(module);
+        if (budget == null) {
+            return unlimited.getOrDefault(module, 0L);
+        }
+        return budget.inFlight;
+    }
+
+    /**
+     * Function to run a send once the module has room for its bytes.
+     * A send is always admitted when nothing of the module is in flight, so
+     * a payload larger than the budget still goes out on its own.
+     *
+     * @param module the module
+     * @param bytes  the size of the send
+     * @param send   the send, which must call {@link #release} when written
+     * @throws RejectedExecutionException if the module has a full queue of
+     *                                    sends waiting for room
+     */
+    void submit(final int module, final long bytes, final Runnable send) {
+        synchronized (this) {
+            final Budget budget = budgets.get(module);
+            if (budget == null) {
+                unlimited.merge(module, bytes, Long::sum);
+            } else if (!budget.waiting.isEmpty() || !budget.fits(bytes)) {
+                if (!budget.waiting.isEmpty() && budget.waitingBytes + bytes > budget.limit) {
+                    throw new RejectedExecutionException("Module " + module + " already has "
+                            + budget.waitingBytes + " bytes waiting for its in-flight budget of "
+                            + budget.limit + " bytes");
+                }
+                budget.waiting.add(new Waiting(bytes, send));
+                budget.waitingBytes += bytes;
+                return;
+            } else {
+                budget.inFlight += bytes;
+            }
+        }
+        send.run();
+    }
+
+    /**
+     * Function to give back the bytes of a written send.
+     *
+     * @param module the module
+     * @param bytes  the size of the send
+     */
+    void release(final int module, final long bytes) {
+        final ArrayDeque<Runnable> ready = new ArrayDeque<>();
+        synchronized (this) {
+            final Budget budget = budgets.get(module);
+            if (budget == null) {
+                unlimited.merge(module, -bytes, Long::sum);
+                return;
+            }
+            budget.inFlight -= bytes;
+            budget.admit(ready);
+        }
+        runLater(ready);
+    }
+
+    private void runLater(final ArrayDeque<Runnable> ready) {
+        if (!ready.isEmpty()) {
+            releaser.execute(() -> ready.forEach(Runnable::run));
+        }
+    }
+
+    /**
+     * A send held back until its module has room.
+     *
+     * @param bytes the size of the send
+     * @param send  the send
+     */
+    private record Waiting(long bytes, Runnable send) implements Runnable {
+        @Override
+        public void run() {
+            send.run();
+        }
+    }
+
+    /**
+     * The budget of one module.
+     */
+    private static final class Budget {
+        /** Sends waiting for room, oldest first. */
+        private final ArrayDeque<Waiting> waiting = new ArrayDeque<>();
+
+        /** Budget in bytes. */
+        private long limit;
+
+        /** Bytes in flight. */
+        private long inFlight;
+
+        /** Bytes of the sends waiting for room. */
+        private long waitingBytes;
+
+        boolean fits(final long bytes) {
+            return inFlight == 0 || inFlight + bytes <= limit;
+        }
+
+        void admit(final ArrayDeque<Runnable> ready) {
+            while (!waiting.isEmpty() && fits(waiting.peek().bytes())) {
+                final Waiting next = waiting.poll();
+                waitingBytes -= next.bytes();
+                inFlight += next.bytes();
+                ready.add(next);
+            }
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.swe.networking;
+
+/**
+ * Conditions of an emulated network link.
+ *
+ * @param latencyMicros  the one-way delay in microseconds
+ * @param jitterMicros   the largest random delay added on top of the latency
+ * @param lossRate       the fraction of messages dropped, from 0 to 1
+ * @param reorderRate    the fraction of messages held back so later ones
+ *                       overtake them, from 0 to 1
+ * @param bytesPerSecond the bandwidth cap, or 0 for no cap
+ */
+public record LinkProfile(long latencyMicros, long jitterMicros, double lossRate, double reorderRate,
+        long bytesPerSecond) {
+    /** A link without any impairment. */
+    public static final LinkProfile PERFECT = new LinkProfile(0, 0, 0, 0, 0);
+}
@@ -0,0 +1,242 @@
+package com.swe.networking;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory network connecting many simulated clients inside one JVM.
+ *
+ * <p>Every client is a regular {@link NetworkFront} whose transport routes
+ * frames through this hub instead of the RPC peer, so the whole send and
+ * receive path, including batching and compression, is exercised without a
+ * socket. Clients registered with addUser under the same main server form a
+ * meeting; broadcast reaches the other members of the sender's meeting, or
+ * every other client if the sender never joined one. Frames are delivered on
+ * the sending thread, and a seeded fraction of them can be dropped.
+ */
+public final class LoopbackNetwork {
+    /** Front of every connected client. */
+    private final Map<ClientNode, NetworkFront> fronts = new ConcurrentHashMap<>();
+
+    /** Main server of every client that joined a meeting. */
+    private final Map<ClientNode, ClientNode> servers = new ConcurrentHashMap<>();
+
+    /** Members of every meeting, keyed by main server. */
+    private final Map<ClientNode, Set<ClientNode>> meetings = new ConcurrentHashMap<>();
+
+    /** Number of messages handed to a client. */
+    private final AtomicLong delivered = new AtomicLong();
+
+    /** Number of messages dropped by the emulated loss. */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /** Generator of the emulated loss. */
+    private Random random = new Random(0);
+
+    /** Fraction of the messages to a client that are dropped. */
+    private volatile double lossRate;
+
+    /**
+     * Function to drop a fraction of the messages to every client, to
+     * exercise loss recovery. The choices are reproducible for a seed.
+     *
+     * @param rate the fraction dropped, from 0 to 1
+     * @param seed the seed of the random choices
+     */
+    public synchronized void setLossRate(final double rate, final long seed) {
+        random = new Random(seed);
+        lossRate = rate;
+    }
+
+    /**
+     * Function to get the number of messages dropped by the emulated loss.
+     *
+     * @return the dropped count
+     */
+    public long droppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * Function to connect a simulated client.
+     *
+     * @param node the address of the client
+     * @return the front the client uses as its networking module
+     */
+    public NetworkFront connect(final ClientNode node) {
+        final BufferPool pool = new BufferPool(false);
+        final NetworkFront front = new NetworkFront(new LoopbackTransport(node), pool);
+        fronts.put(node, front);
+        return front;
+    }
+
+    /**
+     * Function to disconnect a simulated client.
+     *
+     * @param node the address of the client
+     */
+    public void disconnect(final ClientNode node) {
+        fronts.remove(node);
+        leave(node, servers.remove(node));
+    }
+
+    /**
+     * Function to remove a client from a meeting.
+     *
+     * @param node   the client
+     * @param server the main server of the meeting, or null
+     */
+    private void leave(final ClientNode node, final ClientNode server) {
+        if (server == null) {
+            return;
+        }
+        final Set<ClientNode> members = meetings.get(server);
+        if (members != null) {
+            members.remove(node);
+        }
+    }
+
+    /**
+     * Function to get the number of messages handed to clients so far.
+     *
+     * @return the delivered count
+     */
+    public long deliveredCount() {
+        return delivered.get();
+    }
+
+    /**
+     * Function to hand a message to one client.
+     *
+     * @param node    the client
+     * @param inbound the inbound frame: module, priority and payload
+     */
+    private void deliver(final ClientNode node, final byte[] inbound) {
+        final NetworkFront front = fronts.get(node);
+        if (front != null && lossRate > 0 && lost()) {
+            dropped.incrementAndGet();
+            return;
+        }
+        if (front != null) {
+            delivered.incrementAndGet();
+            front.networkFrontCallSubscriber(inbound);
+        }
+    }
+
+    private synchronized boolean lost() {
+        return random.nextDouble() < lossRate;
+    }
+
+    /**
+     * Function to build the inbound frame of a sendData or broadcast frame.
+     *
+     * @param frame the outbound frame, positioned at the data length
+     * @return the inbound frame, shared by every recipient
+     */
+    private static byte[] inbound(final ByteBuffer frame) {
+        final int dataLength = frame.getInt();
+        final int dataStart = frame.position();
+        final ByteBuffer in = ByteBuffer.allocate(2 * Integer.BYTES + dataLength);
+        in.putInt(frame.getInt(dataStart + dataLength));
+        in.putInt(frame.getInt(dataStart + dataLength + Integer.BYTES));
+        in.put(frame.duplicate().limit(dataStart + dataLength));
+        return in.array();
+    }
+
+    /**
+     * Transport of one simulated client.
+     */
+    private final class LoopbackTransport implements FrameTransport {
+        /** The client sending through this transport. */
+        private final ClientNode self;
+
+        /** Members of the destination groups of the client. */
+        private final Map<Integer, ClientNode[]> groups = new ConcurrentHashMap<>();
+
+        LoopbackTransport(final ClientNode node) {
+            this.self = node;
+        }
+
+        @Override
+        public void call(final String procedure, final ByteBuffer args) {
+            final ByteBuffer frame = args.duplicate();
+            switch (procedure) {
+                case FrameTransport.SEND_DATA:
+                case FrameTransport.SEND_DIRECT:
+                    sendData(frame);
+                    break;
+                case FrameTransport.BROADCAST:
+                    broadcast(frame);
+                    break;
+                case FrameTransport.ADD_USER:
+                    addUser(frame);
+                    break;
+                case FrameTransport.GROUP_UPDATE:
+                    updateGroup(frame);
+                    break;
+                case FrameTransport.SEND_GROUP:
+                    sendGroup(frame);
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private void sendData(final ByteBuffer frame) {
+            final ClientNode[] dest = FrameCodec.getDestinations(frame);
+            final byte[] inbound = inbound(frame);
+            for (ClientNode node : dest) {
+                deliver(node, inbound);
+            }
+        }
+
+        private void broadcast(final ByteBuffer frame) {
+            final byte[] inbound = inbound(frame);
+            final ClientNode server = servers.get(self);
+            Iterable<ClientNode> members = fronts.keySet();
+            if (server != null) {
+                members = meetings.getOrDefault(server, Set.of());
+            }
+            for (ClientNode node : members) {
+                if (!node.equals(self)) {
+                    deliver(node, inbound);
+                }
+            }
+        }
+
+        private void updateGroup(final ByteBuffer frame) {
+            final int group = frame.getInt();
+            final ClientNode[] added = FrameCodec.getDestinations(frame);
+            final ClientNode[] removed = FrameCodec.getDestinations(frame);
+            final ClientNode[] members = NetworkFront.applyDelta(groups.getOrDefault(group, new ClientNode[0]),
+                    added, removed);
+            if (members.length == 0) {
+                groups.remove(group);
+            } else {
+                groups.put(group, members);
+            }
+        }
+
+        private void sendGroup(final ByteBuffer frame) {
+            final ClientNode[] members = groups.get(frame.getInt());
+            if (members == null) {
+                return;
+            }
+            final byte[] inbound = inbound(frame);
+            for (ClientNode node : members) {
+                deliver(node, inbound);
+            }
+        }
+
+        private void addUser(final ByteBuffer frame) {
+            final ClientNode device = FrameCodec.getNode(frame);
+            final ClientNode server = FrameCodec.getNode(frame);
+            leave(device, servers.put(device, server));
+            meetings.computeIfAbsent(server, key -> ConcurrentHashMap.newKeySet()).add(device);
+        }
+    }
+}
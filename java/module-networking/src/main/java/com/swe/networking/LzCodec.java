@@ -0,0 +1,193 @@
+package com.swe.networking;
+
+import java.util.Arrays;
+
+/**
+ * A small LZ77 codec in the style of the LZ4 block format.
+ *
+ * <p>The output is a sequence of tokens. Each token holds the literal count
+ * in its high nibble and the match length minus four in its low nibble; a
+ * nibble of 15 is extended by bytes of 255 and a final smaller byte. The
+ * literals follow the token, then a two byte little-endian match offset and
+ * the match length extension. The last token carries literals only.
+ */
+public final class LzCodec {
+    /** Shortest match worth encoding. */
+    private static final int MIN_MATCH = 4;
+
+    /** Longest distance a match may reach back. */
+    private static final int MAX_OFFSET = 0xFFFF;
+
+    /** Size of the match finder hash table, as a power of two. */
+    private static final int HASH_BITS = 12;
+
+    /** Multiplier of the match finder hash. */
+    private static final int HASH_PRIME = -1640531535;
+
+    /** Largest value that fits in a token nibble. */
+    private static final int NIBBLE = 15;
+
+    /** Largest value of a length extension byte. */
+    private static final int BYTE_MAX = 255;
+
+    /** Shift of the literal count in the token. */
+    private static final int LITERAL_SHIFT = 4;
+
+    /** Mask of one byte. */
+    private static final int BYTE_MASK = 0xFF;
+
+    private LzCodec() {
+    }
+
+    /**
+     * Function to compress a payload.
+     *
+     * @param src the payload
+     * @return the compressed bytes
+     */
+    public static byte[] compress(final byte[] src) {
+        final int length = src.length;
+        final byte[] out = new byte[length + length / BYTE_MAX + NIBBLE + 1];
+        final int[] table = new int[1 << HASH_BITS];
+        int anchor = 0;
+        int ip = 0;
+        int op = 0;
+        while (ip + MIN_MATCH <= length) {
+            final int sequence = readInt(src, ip);
+            final int hash = (sequence * HASH_PRIME) >>> (Integer.SIZE - HASH_BITS);
+            final int ref = table[hash] - 1;
+            table[hash] = ip + 1;
+            if (ref < 0 || ip - ref > MAX_OFFSET || readInt(src, ref) != sequence) {
+                ip++;
+                continue;
+            }
+            int matchLength = MIN_MATCH;
+            while (ip + matchLength < length && src[ref + matchLength] == src[ip + matchLength]) {
+                matchLength++;
+            }
+            op = writeSequence(out, op, src, anchor, ip - anchor, ip - ref, matchLength);
+            ip += matchLength;
+            anchor = ip;
+        }
+        op = writeSequence(out, op, src, anchor, length - anchor, 0, 0);
+        return Arrays.copyOf(out, op);
+    }
+
+    /**
+     * Function to decompress a payload. Every literal run and match is
+     * checked against the input and the output, so corrupt or truncated
+     * input fails instead of reading or writing out of bounds.
+     *
+     * @param src            the compressed bytes
+     * @param offset         the index of the first compressed byte
+     * @param length         the number of compressed bytes
+     * @param originalLength the size of the payload
+     * @return the payload
+     * @throws IllegalArgumentException if the input is corrupt, truncated or
+     *                                  does not decompress to originalLength
+     */
+    public static byte[] decompress(final byte[] src, final int offset, final int length, final int originalLength) {
+        if (originalLength < 0) {
+            throw new IllegalArgumentException("Negative original length: " + originalLength);
+        }
+        if (offset < 0 || length < 0 || length > src.length - offset) {
+            throw new IllegalArgumentException("Compressed range " + offset + "+" + length + " outside "
+                    + src.length + " bytes");
+        }
+        final byte[] out = new byte[originalLength];
+        final int end = offset + length;
+        int ip = offset;
+        int op = 0;
+        while (ip < end) {
+            final int token = src[ip++] & BYTE_MASK;
+            int literals = token >>> LITERAL_SHIFT;
+            if (literals == NIBBLE) {
+                int extra;
+                do {
+                    if (ip >= end || literals > originalLength) {
+                        throw new IllegalArgumentException("Corrupt LZ payload: literal count at byte " + ip);
+                    }
+                    extra = src[ip++] & BYTE_MASK;
+                    literals += extra;
+                } while (extra == BYTE_MAX);
+            }
+            if (literals > end - ip || literals > originalLength - op) {
+                throw new IllegalArgumentException("Corrupt LZ payload: " + literals + " literals at byte " + ip);
+            }
+            System.arraycopy(src, ip, out, op, literals);
+            ip += literals;
+            op += literals;
+            if (ip >= end) {
+                break;
+            }
+            if (end - ip < 2) {
+                throw new IllegalArgumentException("Truncated LZ payload: match offset at byte " + ip);
+            }
+            final int distance = (src[ip] & BYTE_MASK) | (src[ip + 1] & BYTE_MASK) << Byte.SIZE;
+            ip += 2;
+            int matchLength = token & NIBBLE;
+            if (matchLength == NIBBLE) {
+                int extra;
+                do {
+                    if (ip >= end || matchLength > originalLength) {
+                        throw new IllegalArgumentException("Corrupt LZ payload: match length at byte " + ip);
+                    }
+                    extra = src[ip++] & BYTE_MASK;
+                    matchLength += extra;
+                } while (extra == BYTE_MAX);
+            }
+            matchLength += MIN_MATCH;
+            if (distance == 0 || distance > op || matchLength > originalLength - op) {
+                throw new IllegalArgumentException("Corrupt LZ payload: match of " + matchLength + " bytes "
+                        + distance + " back at output byte " + op);
+            }
+            for (int i = 0; i < matchLength; i++) {
+                out[op] = out[op - distance];
+                op++;
+            }
+        }
+        if (op != originalLength) {
+            throw new IllegalArgumentException("Truncated LZ payload: " + op + " of " + originalLength + " bytes");
+        }
+        return out;
+    }
+
+    private static int writeSequence(final byte[] out, final int start, final byte[] src, final int anchor,
+            final int literals, final int distance, final int matchLength) {
+        int op = start;
+        final int tokenIndex = op++;
+        final int literalNibble = Math.min(literals, NIBBLE);
+        op = writeLength(out, op, literals - NIBBLE, literalNibble == NIBBLE);
+        System.arraycopy(src, anchor, out, op, literals);
+        op += literals;
+        if (matchLength == 0) {
+            out[tokenIndex] = (byte) (literalNibble << LITERAL_SHIFT);
+            return op;
+        }
+        out[op++] = (byte) distance;
+        out[op++] = (byte) (distance >>> Byte.SIZE);
+        final int matchNibble = Math.min(matchLength - MIN_MATCH, NIBBLE);
+        op = writeLength(out, op, matchLength - MIN_MATCH - NIBBLE, matchNibble == NIBBLE);
+        out[tokenIndex] = (byte) (literalNibble << LITERAL_SHIFT | matchNibble);
+        return op;
+    }
+
+    private static int writeLength(final byte[] out, final int start, final int remaining, final boolean extended) {
+        if (!extended) {
+            return start;
+        }
+        int op = start;
+        int rest = remaining;
+        while (rest >= BYTE_MAX) {
+            out[op++] = (byte) BYTE_MAX;
+            rest -= BYTE_MAX;
+        }
+        out[op++] = (byte) rest;
+        return op;
+    }
+
+    private static int readInt(final byte[] src, final int index) {
+        return (src[index] & BYTE_MASK) << (3 * Byte.SIZE) | (src[index + 1] & BYTE_MASK) << (2 * Byte.SIZE)
+                | (src[index + 2] & BYTE_MASK) << Byte.SIZE | src[index + 3] & BYTE_MASK;
+    }
+}
@@ -0,0 +1,239 @@
+package com.swe.networking;
+
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Runs the listeners of one module on the module's own executor, so a slow
+ * subscriber only delays its own messages. Messages wait in a bounded queue
+ * and the overflow policy decides what happens when it is full.
+ *
+ * <p>A retired dispatcher finishes the messages it has queued. A message
+ * submitted after it retired, by a receive thread that still held it, is run
+ * on the submitting thread rather than lost.
+ */
+public final class ModuleDispatcher {
+    /** The module served. */
+    private final int module;
+
+    /** Listeners of the module. */
+    private final DispatchTable listeners;
+
+    /** Executor running the drain tasks. */
+    private final ExecutorService executor;
+
+    /** Maximum number of drain tasks running at once. */
+    private final int maxWorkers;
+
+    /** Maximum number of queued messages. */
+    private final int capacity;
+
+    /** What to do when the queue is full. */
+    private final OverflowPolicy policy;
+
+    /** Queued messages, oldest first. */
+    private final ArrayDeque<Delivery> queue = new ArrayDeque<>();
+
+    /** Number of drain tasks running. */
+    private int workers;
+
+    /** Number of messages dropped by the overflow policy. */
+    private long dropped;
+
+    /** Number of messages started. */
+    private long started;
+
+    /** Total time started messages waited in the queue. */
+    private long totalLag;
+
+    /** Longest time a started message waited in the queue. */
+    private long maxLag;
+
+    /**
+     * Creates a dispatcher.
+     *
+     * @param moduleId      the module served
+     * @param table         the listeners of the module
+     * @param mode          how the messages are run
+     * @param threads       the pool size for {@link DispatchMode#POOLED}, or the most
+     *                      messages running at once for {@link DispatchMode#PER_MESSAGE}
+     * @param queueCapacity the maximum number of queued messages
+     * @param overflow      what to do when the queue is full
+     */
+    public ModuleDispatcher(final int moduleId, final DispatchTable table, final DispatchMode mode,
+            final int threads, final int queueCapacity, final OverflowPolicy overflow) {
+        if (threads < 1 && mode != DispatchMode.ORDERED) {
+            throw new IllegalArgumentException("Dispatch needs at least one thread: " + threads);
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("Dispatch queue needs room for a message: " + queueCapacity);
+        }
+        this.module = moduleId;
+        this.listeners = table;
+        this.capacity = queueCapacity;
+        this.policy = overflow;
+        final ThreadFactory factory = task -> {
+            final Thread thread = new Thread(task, "networking-dispatch-" + moduleId);
+            thread.setDaemon(true);
+            return thread;
+        };
+        switch (mode) {
+            case ORDERED:
+                this.maxWorkers = 1;
+                this.executor = Executors.newSingleThreadExecutor(factory);
+                break;
+            case POOLED:
+                this.maxWorkers = threads;
+                this.executor = Executors.newFixedThreadPool(threads, factory);
+                break;
+            default:
+                this.maxWorkers = threads;
+                this.executor = perMessageExecutor(factory);
+                break;
+        }
+    }
+
+    /**
+     * Function to queue a message for the listeners.
+     *
+     * @param payload  the payload
+     * @param priority the priority
+     */
+    public void submit(final ByteBuffer payload, final int priority) {
+        synchronized (this) {
+            while (queue.size() >= capacity) {
+                if (policy == OverflowPolicy.SHED) {
+                    dropped++;
+                    return;
+                }
+                if (policy == OverflowPolicy.DROP_OLDEST) {
+                    queue.poll();
+                    dropped++;
+                } else {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        dropped++;
+                        return;
+                    }
+                }
+            }
+            queue.add(new Delivery(payload, priority, System.nanoTime()));
+            if (workers >= maxWorkers) {
+                return;
+            }
+            workers++;
+        }
+        try {
+            executor.execute(this::drain);
+        } catch (RejectedExecutionException e) {
+            // retired while the receive thread still held it
+            drain();
+        }
+    }
+
+    /**
+     * Function to get the number of queued messages.
+     *
+     * @return the queue depth
+     */
+    public synchronized int queueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * Function to get the number of messages dropped by the overflow policy.
+     *
+     * @return the dropped count
+     */
+    public synchronized long droppedCount() {
+        return dropped;
+    }
+
+    /**
+     * Function to get the mean time messages waited before their listeners ran.
+     *
+     * @return the mean lag in nanoseconds, or 0 if nothing ran yet
+     */
+    public synchronized long averageLagNanos() {
+        if (started == 0) {
+            return 0;
+        }
+        return totalLag / started;
+    }
+
+    /**
+     * Function to get the longest time a message waited before its listeners ran.
+     *
+     * @return the maximum lag in nanoseconds
+     */
+    public synchronized long maxLagNanos() {
+        return maxLag;
+    }
+
+    /**
+     * Function to retire the dispatcher. Queued messages still run, and the
+     * threads exit once the queue is empty.
+     */
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private void drain() {
+        while (true) {
+            final Delivery next;
+            synchronized (this) {
+                next = queue.poll();
+                if (next == null) {
+                    workers--;
+                    return;
+                }
+                final long lag = System.nanoTime() - next.receivedAt();
+                started++;
+                totalLag += lag;
+                maxLag = Math.max(maxLag, lag);
+                notifyAll();
+            }
+            for (BufferListener function : listeners.get(module)) {
+                try {
+                    function.receiveData(next.payload().duplicate(), module, next.priority());
+                } catch (RuntimeException e) {
+                    final Thread current = Thread.currentThread();
+                    current.getUncaughtExceptionHandler().uncaughtException(current, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Function to create a thread-per-message executor, using virtual threads
+     * when the runtime provides them.
+     *
+     * @param factory the factory for platform threads
+     * @return the executor
+     */
+    private static ExecutorService perMessageExecutor(final ThreadFactory factory) {
+        try {
+            final Method virtual = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtual.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(factory);
+        }
+    }
+
+    /**
+     * A queued message.
+     *
+     * @param payload    the payload
+     * @param priority   the priority
+     * @param receivedAt when the message was queued
+     */
+    private record Delivery(ByteBuffer payload, int priority, long receivedAt) {
+    }
+}
@@ -0,0 +1,207 @@
+package com.swe.networking;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Publishes the inbound stream of a module to reactive subscribers.
+ *
+ * <p>Every subscriber gets its own bounded buffer and only receives as many
+ * payloads as it has requested. When a buffer is full the overflow policy
+ * applies: {@link OverflowPolicy#DROP_OLDEST} with a buffer of one conflates
+ * to the latest payload. {@link OverflowPolicy#BLOCK} holds up the thread
+ * that delivers the payload, so it is only accepted for modules with their
+ * own dispatcher. The payloads are read-only views of the received frames,
+ * which the networking module never reuses.
+ */
+public final class ModulePublisher implements Flow.Publisher<ByteBuffer>, BufferListener {
+    /** Maximum number of payloads buffered per subscriber. */
+    private final int bufferSize;
+
+    /** What to do when a subscriber's buffer is full. */
+    private final OverflowPolicy policy;
+
+    /** Current subscriptions. */
+    private final CopyOnWriteArrayList<ModuleSubscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    /**
+     * Creates a publisher.
+     *
+     * @param capacity the maximum number of payloads buffered per subscriber
+     * @param overflow what to do when a subscriber's buffer is full
+     */
+    public ModulePublisher(final int capacity, final OverflowPolicy overflow) {
+        this.bufferSize = capacity;
+        this.policy = overflow;
+    }
+
+    @Override
+    public void subscribe(final Flow.Subscriber<? super ByteBuffer> subscriber) {
+        final ModuleSubscription subscription = new ModuleSubscription(subscriber);
+        subscriptions.add(subscription);
+        subscriber.onSubscribe(subscription);
+    }
+
+    @Override
+    public void receiveData(final ByteBuffer data, final int module, final int priority) {
+        for (ModuleSubscription subscription : subscriptions) {
+            subscription.offer(data.asReadOnlyBuffer());
+        }
+    }
+
+    /**
+     * Function to stop publishing. Every subscriber is completed once it has
+     * taken the payloads already buffered for it.
+     */
+    public void close() {
+        for (ModuleSubscription subscription : subscriptions) {
+            subscriptions.remove(subscription);
+            subscription.complete();
+        }
+    }
+
+    /**
+     * Function to get the number of payloads dropped for all subscribers.
+     *
+     * @return the dropped count
+     */
+    public long droppedCount() {
+        long dropped = 0;
+        for (ModuleSubscription subscription : subscriptions) {
+            dropped += subscription.dropped();
+        }
+        return dropped;
+    }
+
+    /**
+     * Subscription of one subscriber with its own buffer and demand.
+     */
+    private final class ModuleSubscription implements Flow.Subscription {
+        /** The subscriber. */
+        private final Flow.Subscriber<? super ByteBuffer> subscriber;
+
+        /** Buffered payloads, oldest first. */
+        private final ArrayDeque<ByteBuffer> buffer = new ArrayDeque<>();
+
+        /** Guards against concurrent or reentrant draining. */
+        private final AtomicInteger wip = new AtomicInteger();
+
+        /** Outstanding demand. */
+        private long demand;
+
+        /** Number of payloads dropped by the overflow policy. */
+        private long droppedCount;
+
+        /** Whether the subscriber cancelled. */
+        private volatile boolean cancelled;
+
+        /** Whether the publisher was closed. */
+        private volatile boolean closed;
+
+        ModuleSubscription(final Flow.Subscriber<? super ByteBuffer> target) {
+            this.subscriber = target;
+        }
+
+        @Override
+        public void request(final long n) {
+            if (n <= 0) {
+                cancel();
+                subscriber.onError(new IllegalArgumentException("Demand must be positive: " + n));
+                return;
+            }
+            synchronized (this) {
+                demand += n;
+                if (demand < 0) {
+                    demand = Long.MAX_VALUE;
+                }
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            subscriptions.remove(this);
+            synchronized (this) {
+                buffer.clear();
+                notifyAll();
+            }
+        }
+
+        void complete() {
+            closed = true;
+            synchronized (this) {
+                notifyAll();
+            }
+            drain();
+        }
+
+        synchronized long dropped() {
+            return droppedCount;
+        }
+
+        void offer(final ByteBuffer payload) {
+            synchronized (this) {
+                while (buffer.size() >= bufferSize && !cancelled && !closed) {
+                    if (policy == OverflowPolicy.SHED) {
+                        droppedCount++;
+                        return;
+                    }
+                    if (policy == OverflowPolicy.DROP_OLDEST) {
+                        buffer.poll();
+                        droppedCount++;
+                    } else {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            droppedCount++;
+                            return;
+                        }
+                    }
+                }
+                if (cancelled || closed) {
+                    return;
+                }
+                buffer.add(payload);
+            }
+            drain();
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            while (true) {
+                while (!cancelled) {
+                    final ByteBuffer next;
+                    synchronized (this) {
+                        if (demand == 0 || buffer.isEmpty()) {
+                            break;
+                        }
+                        next = buffer.poll();
+                        demand--;
+                        notifyAll();
+                    }
+                    subscriber.onNext(next);
+                }
+                if (closed && !cancelled && isEmpty()) {
+                    cancelled = true;
+                    subscriber.onComplete();
+                }
+                missed = wip.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+
+        private synchronized boolean isEmpty() {
+            return buffer.isEmpty();
+        }
+    }
+}
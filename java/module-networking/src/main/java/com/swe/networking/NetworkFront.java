@@ -1,111 +1,836 @@
 package com.swe.networking;
 
 import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
+/**
+ * The networking front used by the other modules.
+ * Encodes every request into a pooled frame and writes it to the transport.
+ */
 public class NetworkFront implements AbstractController, AbstractNetworking {
+    /** Number of locks the destination groups are striped over. */
+    private static final int GROUP_LOCKS = 16;
 
     /** Variable to store the function mappings. */
-    private HashMap<Integer, MessageListener> listeners;
+    private final DispatchTable listeners = new DispatchTable();
+
+    /** Dispatchers of the modules that run off the receive thread. */
+    private volatile ModuleDispatcher[] dispatchers = new ModuleDispatcher[0];
 
     /** Variable to track the number of functions. */
     private int functionCount = 1;
 
+    /** Transport the encoded frames are written to. */
+    private final FrameTransport transport;
+
+    /** Pool the frames are encoded into. */
+    private final BufferPool pool;
+
+    /** Compression of the modules that have a policy. */
+    private final PayloadCompressor compressor = new PayloadCompressor();
+
+    /** In-flight budgets of the asynchronous sends. */
+    private final InFlightLimiter inFlight = new InFlightLimiter();
+
+    /** Forward error correction of the modules that have a policy. */
+    private volatile FecEncoder[] fecEncoders = new FecEncoder[0];
+
+    /** Rebuilds the payloads lost from the protected modules. */
+    private final FecDecoder fecDecoder = new FecDecoder();
+
+    /** Rate limits of the shaped modules and destinations. */
+    private final TrafficShaper shaper = new TrafficShaper();
+
+    /** Members of the destination groups registered by this front. */
+    private final Map<Integer, ClientNode[]> groups = new ConcurrentHashMap<>();
+
+    /** Id of the next destination group. */
+    private final AtomicInteger nextGroup = new AtomicInteger();
+
+    /** Locks keeping the changes of a group in one order here and on the transport, by group id. */
+    private final Object[] groupLocks = new Object[GROUP_LOCKS];
+
+    /** Clusters broadcast goes through, or null to broadcast directly. */
+    private volatile ClusterTopology topology;
+
+    /**
+     * Creates a front that discards every frame, for modules that run
+     * without a networking peer.
+     */
+    public NetworkFront() {
+        this((procedure, frame) -> {
+        }, new BufferPool(false));
+    }
+
+    /**
+     * Creates a front writing to the given transport.
+     *
+     * @param frameTransport the transport to write the frames to
+     * @param bufferPool     the pool to encode the frames into
+     */
+    public NetworkFront(final FrameTransport frameTransport, final BufferPool bufferPool) {
+        this.transport = frameTransport;
+        this.pool = bufferPool;
+        for (int i = 0; i < GROUP_LOCKS; i++) {
+            groupLocks[i] = new Object();
+        }
+    }
+
+    @Override
+    public void sendData(final byte[] data, final ClientNode[] dest, final int module, final int priority) {
+        shaper.acquire(module, dest, data.length);
+        final FecEncoder fec = fecEncoder(module);
+        if (fec != null) {
+            fec.send(data, dest, priority, this::writeFec);
+            return;
+        }
+        write(FrameTransport.SEND_DATA, encodeSendData(data, dest, module, priority));
+    }
+
+    @Override
+    public void broadcast(final byte[] data, final int module, final int priority) {
+        shaper.acquire(module, null, data.length);
+        final FecEncoder fec = fecEncoder(module);
+        if (fec != null) {
+            fec.send(data, null, priority, this::writeFec);
+            return;
+        }
+        final ClientNode[][] clusters = relayClusters();
+        if (clusters == null) {
+            write(FrameTransport.BROADCAST, encodeBroadcast(data, module, priority));
+            return;
+        }
+        final byte[] packed = compressor.pack(module, data);
+        for (ClientNode[] cluster : clusters) {
+            final ClientNode[] relay = {cluster[0]};
+            write(FrameTransport.SEND_DATA, FrameCodec.encodeSendData(pool,
+                    relayEnvelope(cluster, data, packed, module), relay, FrameCodec.RELAY_MODULE, priority));
+        }
+    }
+
     @Override
-    public void sendData(byte[] data, ClientNode[] dest, int module, int priority) {
-        int dataLength = data.length;
-        int destSize = 0;
-        for (ClientNode record : dest) {
-            byte[] hostName = record.hostName().getBytes(StandardCharsets.UTF_8);
-            destSize += 1 + hostName.length + Integer.BYTES; // 1 byte length + host + port
-        }
-        // 1 - data length 1 - dest count 1 - module 1 - priority
-        final int bufferSize = dataLength + destSize + 4 * Integer.BYTES;
-        ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
-        buffer.putInt(dest.length);
-        for (ClientNode record : dest) {
-            byte[] hostName = record.hostName().getBytes(StandardCharsets.UTF_8);
-            buffer.put((byte) hostName.length);
-            buffer.put(hostName);
-            buffer.putInt(record.port());
-        }
-        buffer.putInt(dataLength);
-        buffer.put(data);
-        buffer.putInt(module);
-        buffer.putInt(priority);
-        byte[] args = buffer.array();
-
-        // TODO: Call RPC broadcast
+    public int registerGroup(final ClientNode[] members) {
+        final int group = nextGroup.getAndIncrement();
+        synchronized (groupLock(group)) {
+            groups.put(group, members.clone());
+            write(FrameTransport.GROUP_UPDATE,
+                    FrameCodec.encodeGroupUpdate(pool, group, members, new ClientNode[0]));
+        }
+        return group;
+    }
+
+    /**
+     * Function to change the members of a group. The delta is written to the
+     * transport under the same lock as the local change, so concurrent
+     * updates of a group reach the transport in the order they were applied.
+     *
+     * @param group   the id of the group
+     * @param added   the members to add
+     * @param removed the members to remove
+     */
+    @Override
+    public void updateGroup(final int group, final ClientNode[] added, final ClientNode[] removed) {
+        synchronized (groupLock(group)) {
+            final ClientNode[] members = groups.get(group);
+            if (members == null) {
+                throw new IllegalArgumentException("Unknown destination group " + group);
+            }
+            groups.put(group, applyDelta(members, added, removed));
+            write(FrameTransport.GROUP_UPDATE, FrameCodec.encodeGroupUpdate(pool, group, added, removed));
+        }
     }
 
     @Override
-    public void broadcast(byte[] data, int module, int priority) {
-        int dataLength = data.length;
-        final int bufferSize = dataLength + 3 * Integer.BYTES;
-        ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
-        buffer.putInt(dataLength);
-        buffer.put(data);
-        buffer.putInt(module);
-        buffer.putInt(priority);
-        byte[] args = buffer.array();
+    public void removeGroup(final int group) {
+        synchronized (groupLock(group)) {
+            final ClientNode[] members = groups.remove(group);
+            if (members != null) {
+                write(FrameTransport.GROUP_UPDATE,
+                        FrameCodec.encodeGroupUpdate(pool, group, new ClientNode[0], members));
+            }
+        }
+    }
 
-        // TODO: Call RPC broadcast
+    private Object groupLock(final int group) {
+        return groupLocks[Math.floorMod(group, GROUP_LOCKS)];
     }
 
     @Override
-    public void subscribe(int name, MessageListener function) {
-        listeners.put(name, function);
-        final int bufferSize = Integer.BYTES;
-        ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
-        buffer.putInt(name);
-        byte[] args = buffer.array();
+    public void sendToGroup(final byte[] data, final int group, final int module, final int priority) {
+        final ClientNode[] members = groups.get(group);
+        if (members == null) {
+            throw new IllegalArgumentException("Unknown destination group " + group);
+        }
+        shaper.acquire(module, members, data.length);
+        final FecEncoder fec = fecEncoder(module);
+        if (fec != null) {
+            fec.send(data, members, priority, this::writeFec);
+            return;
+        }
+        final byte[] packed = compressor.pack(module, data);
+        if (packed != null) {
+            write(FrameTransport.SEND_GROUP,
+                    FrameCodec.encodeSendGroup(pool, packed, group, FrameCodec.COMPRESSED_MODULE, priority));
+            return;
+        }
+        write(FrameTransport.SEND_GROUP, FrameCodec.encodeSendGroup(pool, data, group, module, priority));
+    }
+
+    /**
+     * Function to apply a membership change to a group.
+     *
+     * @param members the current members
+     * @param added   the members to add
+     * @param removed the members to remove
+     * @return the new members, in the order they joined
+     */
+    static ClientNode[] applyDelta(final ClientNode[] members, final ClientNode[] added,
+            final ClientNode[] removed) {
+        final LinkedHashSet<ClientNode> next = new LinkedHashSet<>(Arrays.asList(members));
+        next.addAll(Arrays.asList(added));
+        next.removeAll(Arrays.asList(removed));
+        return next.toArray(new ClientNode[0]);
+    }
+
+    /**
+     * Function to get the members of a destination group.
+     *
+     * @param group the id of the group
+     * @return the members, or an empty list if the group is unknown
+     */
+    public List<ClientNode> groupMembers(final int group) {
+        final ClientNode[] members = groups.get(group);
+        if (members == null) {
+            return List.of();
+        }
+        return List.of(members);
+    }
+
+    /**
+     * Function to limit the outgoing rate of a module. Once its burst is used
+     * up, synchronous senders of the module wait on their own thread and
+     * asynchronous sends go out later on the shaper timer. The rate can be
+     * changed at any time.
+     *
+     * @param module         the module
+     * @param bytesPerSecond the rate, or 0 to stop limiting the module
+     * @param burstBytes     the bytes that can go out at once after a pause
+     */
+    public void setModuleRate(final int module, final long bytesPerSecond, final long burstBytes) {
+        if (module < 0) {
+            throw new IllegalArgumentException("Module id must not be negative: " + module);
+        }
+        shaper.setModuleRate(module, bytesPerSecond, burstBytes);
+    }
+
+    /**
+     * Function to limit the rate of the sendData traffic to one destination.
+     *
+     * @param node           the destination
+     * @param bytesPerSecond the rate, or 0 to stop limiting the destination
+     * @param burstBytes     the bytes that can go out at once after a pause
+     */
+    public void setDestinationRate(final ClientNode node, final long bytesPerSecond, final long burstBytes) {
+        shaper.setDestinationRate(node, bytesPerSecond, burstBytes);
+    }
+
+    /**
+     * Function to get the rate a module is allotted, so it can size its
+     * output, for example the bitrate of a video encoder.
+     *
+     * @param module the module
+     * @return the rate in bytes per second, or 0 if the module is not limited
+     */
+    public long moduleRate(final int module) {
+        return shaper.moduleRate(module);
+    }
+
+    /**
+     * Function to get the rate the traffic to a destination is allotted.
+     *
+     * @param node the destination
+     * @return the rate in bytes per second, or 0 if the destination is not limited
+     */
+    public long destinationRate(final ClientNode node) {
+        return shaper.destinationRate(node);
+    }
+
+    /**
+     * Function to protect the payloads of a module with XOR parity packets,
+     * so receivers rebuild lost payloads without a retransmit. Protected
+     * payloads are not compressed.
+     *
+     * @param module the module
+     * @param policy the policy, or null to send the module unprotected
+     */
+    public synchronized void setFec(final int module, final FecPolicy policy) {
+        if (module < 0) {
+            throw new IllegalArgumentException("Module id must not be negative: " + module);
+        }
+        final FecEncoder[] next = Arrays.copyOf(fecEncoders, Math.max(fecEncoders.length, module + 1));
+        if (next[module] != null) {
+            next[module].close(this::writeFec);
+        }
+        next[module] = null;
+        if (policy != null) {
+            next[module] = new FecEncoder(module, policy);
+        }
+        fecEncoders = next;
+    }
+
+    /**
+     * Function to adapt the parity of a protected module to the loss its
+     * receivers see, as given by their {@link #fecLossRate}.
+     *
+     * @param module   the module
+     * @param lossRate the fraction of packets lost, from 0 to 1
+     */
+    public void reportFecLoss(final int module, final double lossRate) {
+        final FecEncoder fec = fecEncoder(module);
+        if (fec != null) {
+            fec.reportLoss(lossRate);
+        }
+    }
+
+    /**
+     * Function to get the parity packets a protected module sends per group.
+     *
+     * @param module the module
+     * @return the parity count, or 0 if the module is unprotected
+     */
+    public int fecParity(final int module) {
+        final FecEncoder fec = fecEncoder(module);
+        if (fec == null) {
+            return 0;
+        }
+        return fec.parityCount();
+    }
+
+    /**
+     * Function to get the smoothed fraction of packets lost before FEC for a
+     * module received by this front.
+     *
+     * @param module the module
+     * @return the loss rate, from 0 to 1
+     */
+    public double fecLossRate(final int module) {
+        return fecDecoder.lossRate(module);
+    }
+
+    private FecEncoder fecEncoder(final int module) {
+        final FecEncoder[] current = fecEncoders;
+        if (module < 0 || module >= current.length) {
+            return null;
+        }
+        return current[module];
+    }
+
+    /**
+     * Function to send one packet of a protected module.
+     *
+     * @param envelope the packet
+     * @param dest     the destinations, or null to broadcast
+     * @param priority the priority
+     */
+    private void writeFec(final byte[] envelope, final ClientNode[] dest, final int priority) {
+        if (dest == null) {
+            broadcast(envelope, FrameCodec.FEC_MODULE, priority);
+        } else {
+            sendData(envelope, dest, FrameCodec.FEC_MODULE, priority);
+        }
+    }
+
+    /**
+     * Function to broadcast through cluster relays instead of one send per
+     * client. Clients registered with addUser, other than the main server
+     * itself, join the topology; every broadcast then goes to the relay of
+     * each cluster, which forwards it to the rest of its cluster.
+     *
+     * @param clusters the topology, or null to broadcast directly again
+     */
+    public void setRelayTopology(final ClusterTopology clusters) {
+        topology = clusters;
+    }
+
+    /**
+     * Function to remove a client from the relay topology.
+     *
+     * @param deviceAddress the client
+     */
+    public void removeUser(final ClientNode deviceAddress) {
+        final ClusterTopology current = topology;
+        if (current != null) {
+            current.leave(deviceAddress);
+        }
+    }
+
+    /**
+     * Function to get the clusters a broadcast goes through.
+     *
+     * @return the clusters, or null to broadcast directly
+     */
+    private ClientNode[][] relayClusters() {
+        final ClusterTopology current = topology;
+        if (current == null) {
+            return null;
+        }
+        final ClientNode[][] clusters = current.clusters();
+        if (clusters.length == 0) {
+            return null;
+        }
+        return clusters;
+    }
+
+    /**
+     * Function to wrap a broadcast payload for the relay of a cluster.
+     * The envelope holds the module, the members the relay forwards to and
+     * the payload, compressed once for all clusters if the module asks for it.
+     *
+     * @param cluster the cluster, relay first
+     * @param data    the payload
+     * @param packed  the compressed envelope of the payload, or null to send it raw
+     * @param module  the module
+     * @return the envelope
+     */
+    private static byte[] relayEnvelope(final ClientNode[] cluster, final byte[] data, final byte[] packed,
+            final int module) {
+        int target = module;
+        byte[] payload = packed;
+        if (payload == null) {
+            payload = data;
+        } else {
+            target = FrameCodec.COMPRESSED_MODULE;
+        }
+        final ClientNode[] members = Arrays.copyOfRange(cluster, 1, cluster.length);
+        final ByteBuffer envelope = ByteBuffer.allocate(Integer.BYTES + FrameCodec.destinationSize(members)
+                + payload.length);
+        envelope.putInt(target);
+        FrameCodec.putDestinations(envelope, members);
+        envelope.put(payload);
+        return envelope.array();
+    }
+
+    /**
+     * Function to compress the payloads of a module before sending.
+     *
+     * @param module the module
+     * @param policy the policy, or null to send the module raw
+     */
+    public void setCompression(final int module, final CompressionPolicy policy) {
+        compressor.setPolicy(module, policy);
+    }
+
+    /**
+     * Function to encode a sendData frame, compressed if the module asks for it.
+     *
+     * @param data     the data to be sent
+     * @param dest     the destinations
+     * @param module   the module
+     * @param priority the priority
+     * @return the pooled frame
+     */
+    private ByteBuffer encodeSendData(final byte[] data, final ClientNode[] dest, final int module,
+            final int priority) {
+        final byte[] packed = compressor.pack(module, data);
+        if (packed != null) {
+            return FrameCodec.encodeSendData(pool, packed, dest, FrameCodec.COMPRESSED_MODULE, priority);
+        }
+        return FrameCodec.encodeSendData(pool, data, dest, module, priority);
+    }
+
+    /**
+     * Function to encode a broadcast frame, compressed if the module asks for it.
+     *
+     * @param data     the data to be sent
+     * @param module   the module
+     * @param priority the priority
+     * @return the pooled frame
+     */
+    private ByteBuffer encodeBroadcast(final byte[] data, final int module, final int priority) {
+        final byte[] packed = compressor.pack(module, data);
+        if (packed != null) {
+            return FrameCodec.encodeBroadcast(pool, packed, FrameCodec.COMPRESSED_MODULE, priority);
+        }
+        return FrameCodec.encodeBroadcast(pool, data, module, priority);
+    }
+
+    @Override
+    public CompletableFuture<Void> sendDataAsync(final byte[] data, final ClientNode[] dest, final int module,
+            final int priority) {
+        if (fecEncoder(module) != null) {
+            return sendNow(() -> sendData(data, dest, module, priority));
+        }
+        final CompletableFuture<Void> sent = new CompletableFuture<>();
+        shaper.schedule(module, dest, data.length, () -> submitOrFail(sent,
+                () -> inFlight.submit(module, data.length, () -> writeAsync(FrameTransport.SEND_DATA,
+                        () -> encodeSendData(data, dest, module, priority), module, data.length, sent))));
+        return sent;
+    }
+
+    @Override
+    public CompletableFuture<Void> broadcastAsync(final byte[] data, final int module, final int priority) {
+        if (fecEncoder(module) != null) {
+            return sendNow(() -> broadcast(data, module, priority));
+        }
+        final CompletableFuture<Void> sent = new CompletableFuture<>();
+        shaper.schedule(module, null, data.length, () -> submitOrFail(sent,
+                () -> submitBroadcast(data, module, priority, sent)));
+        return sent;
+    }
+
+    /**
+     * Function to hand a shaped broadcast to the in-flight limiter, through
+     * the relays if the clients are split into clusters.
+     *
+     * @param data     the payload
+     * @param module   the module
+     * @param priority the priority
+     * @param sent     completed once every frame of the broadcast is written
+     */
+    private void submitBroadcast(final byte[] data, final int module, final int priority,
+            final CompletableFuture<Void> sent) {
+        final ClientNode[][] clusters = relayClusters();
+        if (clusters == null) {
+            inFlight.submit(module, data.length, () -> writeAsync(FrameTransport.BROADCAST,
+                    () -> encodeBroadcast(data, module, priority), module, data.length, sent));
+            return;
+        }
+        final CompletableFuture<?>[] sends = new CompletableFuture<?>[clusters.length];
+        final byte[] packed = compressor.pack(module, data);
+        for (int i = 0; i < clusters.length; i++) {
+            final ClientNode[] relay = {clusters[i][0]};
+            final byte[] envelope = relayEnvelope(clusters[i], data, packed, module);
+            final CompletableFuture<Void> relayed = new CompletableFuture<>();
+            submitOrFail(relayed, () -> inFlight.submit(module, envelope.length,
+                    () -> writeAsync(FrameTransport.SEND_DATA,
+                            () -> FrameCodec.encodeSendData(pool, envelope, relay, FrameCodec.RELAY_MODULE, priority),
+                            module, envelope.length, relayed)));
+            sends[i] = relayed;
+        }
+        CompletableFuture.allOf(sends).whenComplete((ignored, error) -> {
+            if (error != null) {
+                sent.completeExceptionally(error);
+            } else {
+                sent.complete(null);
+            }
+        });
+    }
+
+    /**
+     * Function to run the submission of an asynchronous send, failing its
+     * future if the submission throws, since it may run on the shaper timer
+     * where nobody would see the exception.
+     *
+     * @param sent   the future of the send
+     * @param submit the submission
+     */
+    private static void submitOrFail(final CompletableFuture<Void> sent, final Runnable submit) {
+        try {
+            submit.run();
+        } catch (RuntimeException e) {
+            sent.completeExceptionally(e);
+        }
+    }
 
-        // TODO: Call RPC Add function
+    /**
+     * Function to send on the caller thread, for the protected modules whose
+     * groups must keep their order.
+     *
+     * @param send the send
+     * @return a completed future, failed if the send threw
+     */
+    private static CompletableFuture<Void> sendNow(final Runnable send) {
+        try {
+            send.run();
+            return CompletableFuture.completedFuture(null);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
     }
 
     @Override
-    public void removeSubscription(int name) {
-        final int bufferSize = Integer.BYTES;
-        ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+    public void setInFlightLimit(final int module, final long bytes) {
+        inFlight.setLimit(module, bytes);
+    }
+
+    /**
+     * Function to get the bytes of a module handed to the transport but not
+     * yet written.
+     *
+     * @param module the module
+     * @return the bytes in flight
+     */
+    public long inFlightBytes(final int module) {
+        return inFlight.inFlight(module);
+    }
+
+    /**
+     * Function to encode and write a frame once its module has room.
+     *
+     * @param procedure the remote procedure
+     * @param encoder   encodes the frame into a pooled buffer
+     * @param module    the module the budget is charged to
+     * @param bytes     the bytes charged to the budget
+     * @param sent      the future to complete once the frame is written
+     */
+    private void writeAsync(final String procedure, final Supplier<ByteBuffer> encoder, final int module,
+            final int bytes, final CompletableFuture<Void> sent) {
+        CompletableFuture<Void> written;
+        ByteBuffer frame = null;
+        try {
+            frame = encoder.get();
+            written = transport.callAsync(procedure, frame);
+        } catch (RuntimeException e) {
+            written = CompletableFuture.failedFuture(e);
+        } finally {
+            if (frame != null) {
+                pool.release(frame);
+            }
+        }
+        written.whenComplete((result, error) -> {
+            inFlight.release(module, bytes);
+            if (error != null) {
+                sent.completeExceptionally(error);
+            } else {
+                sent.complete(null);
+            }
+        });
+    }
+
+    /**
+     * Function to hand a pooled frame to the transport and recycle it.
+     *
+     * @param procedure the remote procedure
+     * @param frame     the flipped frame
+     */
+    private void write(final String procedure, final ByteBuffer frame) {
+        try {
+            transport.call(procedure, frame);
+        } finally {
+            pool.release(frame);
+        }
+    }
+
+    @Override
+    public void subscribe(final int name, final MessageListener function) {
+        subscribe(name, (data, module, priority) -> {
+            final byte[] copy = new byte[data.remaining()];
+            data.get(copy);
+            function.receiveData(copy);
+        });
+    }
+
+    @Override
+    public void subscribe(final int name, final BufferListener function) {
+        listeners.add(name, function);
+        final ByteBuffer buffer = pool.acquire(Integer.BYTES);
         buffer.putInt(name);
-        byte[] args = buffer.array();
+        write(FrameTransport.SUBSCRIBE, buffer.flip());
+    }
 
-        // TODO: Call RPC remove
+    @Override
+    public void removeSubscription(final int name) {
+        listeners.clear(name);
+        final ByteBuffer buffer = pool.acquire(Integer.BYTES);
+        buffer.putInt(name);
+        write(FrameTransport.REMOVE_SUBSCRIPTION, buffer.flip());
     }
 
     @Override
-    public void addUser(ClientNode deviceAddress, ClientNode mainServerAddress) {
-        final int bufferSize = 2 + deviceAddress.hostName().length() + mainServerAddress.hostName().length()
-                + 2 * Integer.BYTES;
-        ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
-        byte[] hostName = deviceAddress.hostName().getBytes(StandardCharsets.UTF_8);
-        buffer.put((byte) hostName.length);
-        buffer.put(hostName);
-        buffer.putInt(deviceAddress.port());
-        hostName = mainServerAddress.hostName().getBytes(StandardCharsets.UTF_8);
-        buffer.put((byte) hostName.length);
-        buffer.put(hostName);
-        buffer.putInt(mainServerAddress.port());
-        byte[] args = buffer.array();
+    public void addUser(final ClientNode deviceAddress, final ClientNode mainServerAddress) {
+        final int bufferSize = 2 + FrameCodec.hostBytes(deviceAddress.hostName()).length
+                + FrameCodec.hostBytes(mainServerAddress.hostName()).length + 2 * Integer.BYTES;
+        final ByteBuffer buffer = pool.acquire(bufferSize);
+        FrameCodec.putNode(buffer, deviceAddress);
+        FrameCodec.putNode(buffer, mainServerAddress);
+        write(FrameTransport.ADD_USER, buffer.flip());
+        final ClusterTopology current = topology;
+        if (current != null && !deviceAddress.equals(mainServerAddress)) {
+            current.join(deviceAddress);
+        }
+    }
 
-        // TODO: Call RPC addUser
+    /**
+     * Function to run the listeners of a module on its own executor instead
+     * of the receive thread.
+     *
+     * @param module   the module
+     * @param mode     how the messages are run
+     * @param threads  the pool size for {@link DispatchMode#POOLED}, or the most
+     *                 messages running at once for {@link DispatchMode#PER_MESSAGE}
+     * @param capacity the maximum number of queued messages
+     * @param policy   what to do when the queue is full
+     * @return the dispatcher, which exposes the lag metrics of the module
+     */
+    public synchronized ModuleDispatcher configureDispatch(final int module, final DispatchMode mode,
+            final int threads, final int capacity, final OverflowPolicy policy) {
+        if (module < 0) {
+            throw new IllegalArgumentException("Module id must not be negative: " + module);
+        }
+        final ModuleDispatcher dispatcher = new ModuleDispatcher(module, listeners, mode, threads, capacity, policy);
+        final ModuleDispatcher[] next = Arrays.copyOf(dispatchers, Math.max(dispatchers.length, module + 1));
+        final ModuleDispatcher previous = next[module];
+        next[module] = dispatcher;
+        dispatchers = next;
+        // retired only once the receive thread can see its replacement
+        if (previous != null) {
+            previous.shutdown();
+        }
+        return dispatcher;
+    }
+
+    /**
+     * Function to expose the inbound stream of a module as a publisher that
+     * honours the demand of its subscribers. {@link OverflowPolicy#BLOCK}
+     * needs a dispatcher for the module, since waiting on the receive thread
+     * would stall every other module.
+     *
+     * @param module   the module
+     * @param capacity the maximum number of payloads buffered per subscriber
+     * @param policy   what to do when a subscriber's buffer is full
+     * @return the publisher
+     */
+    public ModulePublisher publisher(final int module, final int capacity, final OverflowPolicy policy) {
+        if (policy == OverflowPolicy.BLOCK && dispatcher(module) == null) {
+            throw new IllegalArgumentException("BLOCK needs a dispatcher for module " + module);
+        }
+        final ModulePublisher publisher = new ModulePublisher(capacity, policy);
+        subscribe(module, publisher);
+        return publisher;
+    }
+
+    /**
+     * Function to remove one publisher of a module and complete its
+     * subscribers. The other listeners of the module keep receiving.
+     *
+     * @param module    the module
+     * @param publisher the publisher returned by {@link #publisher}
+     */
+    public void removePublisher(final int module, final ModulePublisher publisher) {
+        if (listeners.remove(module, publisher)) {
+            final ByteBuffer buffer = pool.acquire(Integer.BYTES);
+            buffer.putInt(module);
+            write(FrameTransport.REMOVE_SUBSCRIPTION, buffer.flip());
+        }
+        publisher.close();
+    }
+
+    /**
+     * Function to get the dispatcher of a module.
+     *
+     * @param module the module
+     * @return the dispatcher, or null if the module runs on the receive thread
+     */
+    public ModuleDispatcher dispatcher(final int module) {
+        final ModuleDispatcher[] current = dispatchers;
+        if (module < 0 || module >= current.length) {
+            return null;
+        }
+        return current[module];
     }
 
     /**
      * Function to call the subscriber in frontend.
+     * The frame holds the module, the priority and then the payload. The
+     * array is handed over to the front and must not be reused by the caller.
      *
      * @param data the data to send
      */
-    public void networkFrontCallSubscriber(byte[] data) {
-        int dataSize = data.length - 1;
-        ByteBuffer buffer = ByteBuffer.wrap(data);
-        int module = buffer.getInt();
-        byte[] newData = new byte[dataSize];
-        MessageListener function = listeners.get(module);
-        if (function != null) {
-            function.receiveData(newData);
+    public void networkFrontCallSubscriber(final byte[] data) {
+        final ByteBuffer buffer = ByteBuffer.wrap(data).asReadOnlyBuffer();
+        final int module = buffer.getInt();
+        final int priority = buffer.getInt();
+        deliver(buffer.slice(), module, priority);
+    }
+
+    /**
+     * Function to open the envelopes of the reserved modules and deliver the
+     * payload to its module.
+     *
+     * @param payload  the payload
+     * @param module   the module
+     * @param priority the priority
+     */
+    private void deliver(final ByteBuffer payload, final int module, final int priority) {
+        if (module == FrameCodec.BATCH_MODULE) {
+            unpackBatch(payload);
+        } else if (module == FrameCodec.COMPRESSED_MODULE) {
+            final int target = payload.getInt();
+            deliver(PayloadCompressor.unpack(payload).asReadOnlyBuffer(), target, priority);
+        } else if (module == FrameCodec.FEC_MODULE) {
+            final int target = payload.getInt(payload.position());
+            for (ByteBuffer data : fecDecoder.receive(payload)) {
+                deliver(data, target, priority);
+            }
+        } else if (module == FrameCodec.RELAY_MODULE) {
+            relay(payload, priority);
+        } else {
+            dispatch(payload, module, priority);
         }
+    }
 
+    /**
+     * Function to forward a relayed broadcast to the rest of the cluster over
+     * direct connections and deliver it locally. The payload is forwarded as
+     * it arrived, so a compressed broadcast is not compressed again.
+     *
+     * @param envelope the envelope, positioned after the module id
+     * @param priority the priority
+     */
+    private void relay(final ByteBuffer envelope, final int priority) {
+        final int target = envelope.getInt();
+        final int count = envelope.getInt();
+        final ClientNode[] members = new ClientNode[count];
+        for (int i = 0; i < count; i++) {
+            members[i] = FrameCodec.getNode(envelope);
+        }
+        final ByteBuffer payload = envelope.slice();
+        if (count > 0) {
+            final byte[] data = new byte[payload.remaining()];
+            payload.duplicate().get(data);
+            write(FrameTransport.SEND_DIRECT, FrameCodec.encodeSendData(pool, data, members, target, priority));
+        }
+        deliver(payload, target, priority);
+    }
+
+    /**
+     * Function to deliver every message of a coalesced batch.
+     *
+     * @param buffer the batch entries
+     */
+    private void unpackBatch(final ByteBuffer buffer) {
+        while (buffer.hasRemaining()) {
+            final int module = buffer.getInt();
+            final int priority = buffer.getInt();
+            final int length = buffer.getInt();
+            final int end = buffer.position() + length;
+            deliver(buffer.slice().limit(length), module, priority);
+            buffer.position(end);
+        }
+    }
+
+    /**
+     * Function to call the listeners of a module.
+     *
+     * @param payload  the payload
+     * @param module   the module
+     * @param priority the priority
+     */
+    private void dispatch(final ByteBuffer payload, final int module, final int priority) {
+        final ModuleDispatcher[] current = dispatchers;
+        if (module >= 0 && module < current.length && current[module] != null) {
+            current[module].submit(payload, priority);
+            return;
+        }
+        for (BufferListener function : listeners.get(module)) {
+            function.receiveData(payload.duplicate(), module, priority);
+        }
     }
 }
@@ -0,0 +1,15 @@
+package com.swe.networking;
+
+/**
+ * What a module's inbound queue does with a message when it is full.
+ */
+public enum OverflowPolicy {
+    /** Drop the oldest queued message to make room. */
+    DROP_OLDEST,
+
+    /** Block the receive thread until there is room. */
+    BLOCK,
+
+    /** Drop the new message. */
+    SHED
+}
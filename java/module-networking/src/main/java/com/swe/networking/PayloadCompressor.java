@@ -0,0 +1,165 @@
+package com.swe.networking;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compresses the payloads of the modules that have a compression policy.
+ *
+ * <p>A compressed payload is sent to {@link FrameCodec#COMPRESSED_MODULE}
+ * wrapped in an envelope holding the real module, the codec id and the
+ * original length. A payload that does not shrink enough makes the module
+ * send the next payloads raw for a while before it samples again, so data
+ * that is already compressed, such as video, costs almost nothing.
+ */
+final class PayloadCompressor {
+    /** Bytes of the envelope header: module, codec and original length. */
+    static final int HEADER = Integer.BYTES + 1 + Integer.BYTES;
+
+    /** Largest original length an envelope may announce. */
+    static final int MAX_ORIGINAL_BYTES = 64 * 1024 * 1024;
+
+    /** Size of the scratch buffer used by Deflate. */
+    private static final int CHUNK = 8192;
+
+    /** Policy and sampling state per module id. */
+    private volatile ModuleState[] modules = new ModuleState[0];
+
+    /**
+     * Function to set or clear the compression policy of a module.
+     *
+     * @param module the module
+     * @param policy the policy, or null to send the module raw
+     */
+    synchronized void setPolicy(final int module, final CompressionPolicy policy) {
+        final ModuleState[] next = Arrays.copyOf(modules, Math.max(modules.length, module + 1));
+        next[module] = null;
+        if (policy != null) {
+            next[module] = new ModuleState(policy);
+        }
+        modules = next;
+    }
+
+    /**
+     * Function to compress a payload if its module asks for it.
+     *
+     * @param module the module
+     * @param data   the payload
+     * @return the envelope to send to the compressed module, or null to send
+     *         the payload raw
+     */
+    byte[] pack(final int module, final byte[] data) {
+        final ModuleState[] current = modules;
+        if (module < 0 || module >= current.length || current[module] == null) {
+            return null;
+        }
+        final ModuleState state = current[module];
+        final CompressionPolicy policy = state.policy;
+        if (data.length < policy.threshold() || !state.shouldSample()) {
+            return null;
+        }
+        final byte[] compressed = compress(policy, data);
+        if (compressed.length > data.length * policy.maxRatio()) {
+            state.backOff();
+            return null;
+        }
+        final ByteBuffer envelope = ByteBuffer.allocate(HEADER + compressed.length);
+        envelope.putInt(module);
+        envelope.put(policy.codec().id());
+        envelope.putInt(data.length);
+        envelope.put(compressed);
+        return envelope.array();
+    }
+
+    /**
+     * Function to open an envelope.
+     *
+     * @param envelope the envelope, positioned after the module id
+     * @return the original payload
+     * @throws IllegalArgumentException if the payload is truncated or corrupt
+     */
+    static ByteBuffer unpack(final ByteBuffer envelope) {
+        if (envelope.remaining() < HEADER - Integer.BYTES) {
+            throw new IllegalArgumentException("Truncated compressed envelope: " + envelope.remaining() + " bytes");
+        }
+        final CompressionCodec codec = CompressionCodec.fromId(envelope.get());
+        final int originalLength = envelope.getInt();
+        if (originalLength < 0 || originalLength > MAX_ORIGINAL_BYTES) {
+            throw new IllegalArgumentException("Compressed payload announces " + originalLength + " bytes");
+        }
+        final byte[] compressed = new byte[envelope.remaining()];
+        envelope.get(compressed);
+        if (codec == CompressionCodec.LZ) {
+            return ByteBuffer.wrap(LzCodec.decompress(compressed, 0, compressed.length, originalLength));
+        }
+        final Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            final byte[] out = new byte[originalLength];
+            int written = 0;
+            while (written < originalLength) {
+                final int inflated = inflater.inflate(out, written, originalLength - written);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Truncated compressed payload: " + written + " of "
+                            + originalLength + " bytes");
+                }
+                written += inflated;
+            }
+            return ByteBuffer.wrap(out);
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Corrupt compressed payload", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static byte[] compress(final CompressionPolicy policy, final byte[] data) {
+        if (policy.codec() == CompressionCodec.LZ) {
+            return LzCodec.compress(data);
+        }
+        final Deflater deflater = new Deflater(policy.level());
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 1);
+            final byte[] chunk = new byte[CHUNK];
+            while (!deflater.finished()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Policy and sampling state of one module.
+     */
+    private static final class ModuleState {
+        /** The policy. */
+        private final CompressionPolicy policy;
+
+        /** Payloads still to send raw before sampling again. */
+        private int skip;
+
+        ModuleState(final CompressionPolicy modulePolicy) {
+            this.policy = modulePolicy;
+        }
+
+        synchronized boolean shouldSample() {
+            if (skip > 0) {
+                skip--;
+                return false;
+            }
+            return true;
+        }
+
+        synchronized void backOff() {
+            skip = policy.backoff();
+        }
+    }
+}
@@ -0,0 +1,475 @@
+package com.swe.networking;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Transport decorator that queues frames per priority level and drains them
+ * with deficit round robin, so urgent traffic gets ahead of bulk transfers
+ * when the downstream transport is slow.
+ *
+ * <p>Priority 0 is the most urgent level. Priorities outside the configured
+ * levels are clamped. Frames without a priority (subscribe, addUser, group
+ * updates) are barriers: they go out after every frame queued before them
+ * and before every frame queued after them, so a group change neither
+ * overtakes the data sent to the group earlier nor falls behind the data
+ * sent later. Every level has a bounded queue; callers block while the queue
+ * of their level is full. A frame the downstream transport rejects is
+ * dropped and counted, and the scheduler carries on with the next one. Once
+ * the scheduler is shut down, new frames are rejected, the queued ones are
+ * dropped and their futures failed, and blocked callers are woken up.
+ */
+public final class PrioritySendScheduler implements FrameTransport {
+    /** Bytes added to the deficit of a level per unit of weight per round. */
+    private static final int QUANTUM = 1500;
+
+    /** Logger of the frames the downstream transport rejects. */
+    private static final Logger LOG = Logger.getLogger(PrioritySendScheduler.class.getName());
+
+    /** Transport the frames are drained to. */
+    private final FrameTransport downstream;
+
+    /** Pool the queued copies are kept in. */
+    private final BufferPool pool;
+
+    /** Queue per priority level. */
+    private final Lane[] lanes;
+
+    /** Queue of the frames without a priority. */
+    private final Lane control;
+
+    /** Sequence number of the next queued frame. */
+    private long nextSeq;
+
+    /** Number of frames the downstream transport rejected. */
+    private final AtomicLong failed = new AtomicLong();
+
+    /** Guards the lanes. */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /** Signalled when a frame is queued. */
+    private final Condition notEmpty = lock.newCondition();
+
+    /** Signalled when a frame is dequeued. */
+    private final Condition notFull = lock.newCondition();
+
+    /** Thread draining the lanes. */
+    private final Thread drainThread;
+
+    /** Whether the scheduler has been shut down. */
+    private volatile boolean running = true;
+
+    /**
+     * Creates a scheduler and starts its drain thread.
+     *
+     * @param downstreamTransport the transport to drain to
+     * @param bufferPool          the pool to copy the queued frames into
+     * @param weights             the weight of every level, most urgent first, each at least 1
+     * @param capacity            the number of frames each level can hold, at least 1
+     */
+    public PrioritySendScheduler(final FrameTransport downstreamTransport, final BufferPool bufferPool,
+            final int[] weights, final int capacity) {
+        if (weights.length == 0) {
+            throw new IllegalArgumentException("At least one priority level is needed");
+        }
+        for (int weight : weights) {
+            if (weight < 1) {
+                // a lane without weight never builds a deficit and spins the drain thread
+                throw new IllegalArgumentException("Lane weight must be at least 1: " + weight);
+            }
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Lane capacity must be at least 1: " + capacity);
+        }
+        this.downstream = downstreamTransport;
+        this.pool = bufferPool;
+        this.lanes = new Lane[weights.length];
+        for (int i = 0; i < weights.length; i++) {
+            lanes[i] = new Lane(weights[i], capacity);
+        }
+        this.control = new Lane(0, capacity);
+        this.drainThread = new Thread(this::drainLoop, "networking-send-scheduler");
+        drainThread.setDaemon(true);
+        drainThread.start();
+    }
+
+    @Override
+    public void call(final String procedure, final ByteBuffer frame) {
+        enqueue(procedure, frame, null);
+    }
+
+    @Override
+    public CompletableFuture<Void> callAsync(final String procedure, final ByteBuffer frame) {
+        final CompletableFuture<Void> written = new CompletableFuture<>();
+        enqueue(procedure, frame, written);
+        return written;
+    }
+
+    private void enqueue(final String procedure, final ByteBuffer frame, final CompletableFuture<Void> written) {
+        final Lane lane = lane(procedure, frame);
+        final ByteBuffer copy = pool.acquire(frame.remaining());
+        copy.put(frame.duplicate()).flip();
+        lock.lock();
+        try {
+            while (running && lane.size == lane.frames.length) {
+                notFull.awaitUninterruptibly();
+            }
+            if (!running) {
+                pool.release(copy);
+                throw new IllegalStateException("The send scheduler is shut down");
+            }
+            lane.offer(procedure, copy, written, System.nanoTime(), nextSeq++);
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Function to get the number of frames queued at a level.
+     *
+     * @param level the priority level
+     * @return the queue depth
+     */
+    public int queueDepth(final int level) {
+        lock.lock();
+        try {
+            return lanes[level].size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Function to get the mean time frames of a level spent queued.
+     *
+     * @param level the priority level
+     * @return the mean wait in nanoseconds, or 0 if nothing was sent yet
+     */
+    public long averageWaitNanos(final int level) {
+        lock.lock();
+        try {
+            final Lane lane = lanes[level];
+            if (lane.sent == 0) {
+                return 0;
+            }
+            return lane.totalWait / lane.sent;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Function to get the longest time a frame of a level spent queued.
+     *
+     * @param level the priority level
+     * @return the maximum wait in nanoseconds
+     */
+    public long maxWaitNanos(final int level) {
+        lock.lock();
+        try {
+            return lanes[level].maxWait;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Function to get the number of frames the downstream transport rejected.
+     * Frames sent with callAsync also fail their future.
+     *
+     * @return the failed count
+     */
+    public long failedCount() {
+        return failed.get();
+    }
+
+    /**
+     * Function to stop the drain thread. Frames still queued are dropped and
+     * the futures of the callAsync frames among them fail; callers waiting
+     * for room and later callers get an {@link IllegalStateException}.
+     */
+    public void shutdown() {
+        final List<CompletableFuture<Void>> pending = new ArrayList<>();
+        lock.lock();
+        try {
+            running = false;
+            discard(control, pending);
+            for (Lane lane : lanes) {
+                discard(lane, pending);
+            }
+            notFull.signalAll();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        drainThread.interrupt();
+        // outside the lock, as the callbacks may send again
+        final IllegalStateException stopped = new IllegalStateException("The send scheduler is shut down");
+        for (CompletableFuture<Void> written : pending) {
+            written.completeExceptionally(stopped);
+        }
+    }
+
+    /**
+     * Function to empty a lane on shutdown, returning its copies to the pool.
+     *
+     * @param lane    the lane
+     * @param pending collects the futures of the dropped callAsync frames
+     */
+    private void discard(final Lane lane, final List<CompletableFuture<Void>> pending) {
+        while (lane.size > 0) {
+            final CompletableFuture<Void> written = lane.written[lane.head];
+            pool.release(lane.poll());
+            if (written != null) {
+                pending.add(written);
+            }
+        }
+    }
+
+    private Lane lane(final String procedure, final ByteBuffer frame) {
+        if (!FrameCodec.carriesPayload(procedure)) {
+            return control;
+        }
+        final int priority = frame.getInt(frame.limit() - Integer.BYTES);
+        return lanes[Math.max(0, Math.min(lanes.length - 1, priority))];
+    }
+
+    private void drainLoop() {
+        while (running) {
+            for (Lane lane : lanes) {
+                if (!drain(lane)) {
+                    return;
+                }
+            }
+            if (!drainControl() || !awaitWork()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Function to send the frames of one lane that fit in its deficit.
+     *
+     * @param lane the lane to serve
+     * @return false if the scheduler was shut down
+     */
+    private boolean drain(final Lane lane) {
+        lock.lock();
+        try {
+            if (lane.size == 0 || blocked(lane)) {
+                lane.deficit = 0;
+                return running;
+            }
+            lane.deficit += (long) lane.weight * QUANTUM;
+        } finally {
+            lock.unlock();
+        }
+        while (running) {
+            final String procedure;
+            final ByteBuffer frame;
+            final CompletableFuture<Void> written;
+            lock.lock();
+            try {
+                if (lane.size == 0 || blocked(lane) || lane.peek().remaining() > lane.deficit) {
+                    return true;
+                }
+                procedure = lane.procedures[lane.head];
+                written = lane.written[lane.head];
+                final long waited = System.nanoTime() - lane.enqueued[lane.head];
+                frame = lane.poll();
+                lane.deficit -= frame.remaining();
+                lane.sent++;
+                lane.totalWait += waited;
+                lane.maxWait = Math.max(lane.maxWait, waited);
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            forward(procedure, frame, written);
+        }
+        return false;
+    }
+
+    /**
+     * Function to tell whether the oldest frame of a lane waits for a
+     * control frame queued before it.
+     *
+     * @param lane the lane, not empty
+     * @return true if the frame must wait
+     */
+    private boolean blocked(final Lane lane) {
+        return control.size > 0 && lane.seqs[lane.head] > control.seqs[control.head];
+    }
+
+    /**
+     * Function to send the control frames every earlier frame has gone ahead of.
+     *
+     * @return false if the scheduler was shut down
+     */
+    private boolean drainControl() {
+        while (running) {
+            final String procedure;
+            final ByteBuffer frame;
+            final CompletableFuture<Void> written;
+            lock.lock();
+            try {
+                if (control.size == 0) {
+                    return true;
+                }
+                for (Lane lane : lanes) {
+                    if (lane.size > 0 && lane.seqs[lane.head] < control.seqs[control.head]) {
+                        return true;
+                    }
+                }
+                procedure = control.procedures[control.head];
+                written = control.written[control.head];
+                frame = control.poll();
+                control.sent++;
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            forward(procedure, frame, written);
+        }
+        return false;
+    }
+
+    private void forward(final String procedure, final ByteBuffer frame, final CompletableFuture<Void> written) {
+        try {
+            if (written == null) {
+                downstream.call(procedure, frame);
+                return;
+            }
+            downstream.callAsync(procedure, frame).whenComplete((result, error) -> {
+                if (error != null) {
+                    failed.incrementAndGet();
+                    written.completeExceptionally(error);
+                } else {
+                    written.complete(null);
+                }
+            });
+        } catch (RuntimeException e) {
+            // one bad frame must not stop the only drain thread, or every producer blocks for good
+            failed.incrementAndGet();
+            if (written == null) {
+                LOG.log(Level.WARNING, "Dropped a " + procedure + " frame the transport rejected", e);
+            } else {
+                written.completeExceptionally(e);
+            }
+        } finally {
+            pool.release(frame);
+        }
+    }
+
+    private boolean awaitWork() {
+        lock.lock();
+        try {
+            while (running && isEmpty()) {
+                notEmpty.await(1, TimeUnit.SECONDS);
+            }
+            return running;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private boolean isEmpty() {
+        if (control.size > 0) {
+            return false;
+        }
+        for (Lane lane : lanes) {
+            if (lane.size > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Ring buffer of the frames queued at one priority level.
+     */
+    private static final class Lane {
+        /** Weight of the level. */
+        private final int weight;
+
+        /** Queued frames. */
+        private final ByteBuffer[] frames;
+
+        /** Procedure of every queued frame. */
+        private final String[] procedures;
+
+        /** Completion of every queued frame, or null for plain calls. */
+        private final CompletableFuture<Void>[] written;
+
+        /** Enqueue time of every queued frame. */
+        private final long[] enqueued;
+
+        /** Sequence number of every queued frame, across all lanes. */
+        private final long[] seqs;
+
+        /** Index of the oldest frame. */
+        private int head;
+
+        /** Number of queued frames. */
+        private int size;
+
+        /** Bytes the level may still send this round. */
+        private long deficit;
+
+        /** Number of frames sent. */
+        private long sent;
+
+        /** Total time the sent frames spent queued. */
+        private long totalWait;
+
+        /** Longest time a sent frame spent queued. */
+        private long maxWait;
+
+        @SuppressWarnings("unchecked")
+        Lane(final int laneWeight, final int capacity) {
+            this.weight = laneWeight;
+            this.frames = new ByteBuffer[capacity];
+            this.procedures = new String[capacity];
+            this.written = (CompletableFuture<Void>[]) new CompletableFuture<?>[capacity];
+            this.enqueued = new long[capacity];
+            this.seqs = new long[capacity];
+        }
+
+        void offer(final String procedure, final ByteBuffer frame, final CompletableFuture<Void> done,
+                final long now, final long seq) {
+            final int tail = (head + size) % frames.length;
+            frames[tail] = frame;
+            procedures[tail] = procedure;
+            written[tail] = done;
+            enqueued[tail] = now;
+            seqs[tail] = seq;
+            size++;
+        }
+
+        ByteBuffer peek() {
+            return frames[head];
+        }
+
+        ByteBuffer poll() {
+            final ByteBuffer frame = frames[head];
+            frames[head] = null;
+            procedures[head] = null;
+            written[head] = null;
+            head = (head + 1) % frames.length;
+            size--;
+            return frame;
+        }
+    }
+}
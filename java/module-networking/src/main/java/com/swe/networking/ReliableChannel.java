@@ -0,0 +1,618 @@
+package com.swe.networking;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Exactly-once, in-order delivery of one module's messages over
+ * {@link AbstractNetworking}, for the modules that opt in.
+ *
+ * <p>Every peer has its own sequence space, so a loss towards one peer never
+ * holds back another, and modules that do not use a channel pay nothing. A
+ * data packet carries its sender and sequence number. The receiver buffers
+ * out-of-order packets inside its window and acknowledges with the next
+ * expected number plus a bitmap of the 64 packets after it. The sender
+ * retransmits a packet at once when later packets were acknowledged around
+ * it, and otherwise when its timer fires, the timers running on a shared
+ * {@link TimingWheel}. The retransmit timeout follows the measured round
+ * trip time, leaving out retransmitted packets.
+ *
+ * <p>Every channel has a session epoch that grows across restarts, taken
+ * from the clock. A data packet carries the epoch and the oldest sequence
+ * number its sender still waits for, so a receiver that sees a newer epoch
+ * starts over at that number instead of dropping the restarted peer's
+ * packets as duplicates, and packets of an older epoch are ignored. An
+ * acknowledgement echoes the epoch it acknowledges, so one meant for a
+ * previous session of this channel is ignored too.
+ */
+public final class ReliableChannel implements BufferListener {
+    /** Packet type of a data packet. */
+    private static final byte DATA = 0;
+
+    /** Packet type of an acknowledgement. */
+    private static final byte ACK = 1;
+
+    /** Packets acknowledged by the bitmap beyond the next expected one. */
+    private static final int SACK_BITS = Long.SIZE;
+
+    /** Tick of the retransmit timers in microseconds. */
+    private static final long TICK_MICROS = 1000;
+
+    /** Slots of the timing wheel. */
+    private static final int WHEEL_SIZE = 512;
+
+    /** Retransmit timeout before the first round trip is measured, in microseconds. */
+    private static final long INITIAL_RTO_MICROS = 200_000;
+
+    /** Shortest retransmit timeout in microseconds. */
+    private static final long MIN_RTO_MICROS = 2 * TICK_MICROS;
+
+    /** Longest retransmit timeout in microseconds. */
+    private static final long MAX_RTO_MICROS = 5_000_000;
+
+    /** Longest an in-order packet waits for its acknowledgement, in microseconds. */
+    private static final long ACK_DELAY_MICROS = TICK_MICROS;
+
+    /** Weight of a new sample in the smoothed round trip time. */
+    private static final double RTT_GAIN = 1.0 / 8;
+
+    /** Weight of a new sample in the round trip time variation. */
+    private static final double RTTVAR_GAIN = 1.0 / 4;
+
+    /** Multiple of the variation added to the smoothed round trip time. */
+    private static final int RTTVAR_FACTOR = 4;
+
+    /** Random low bits of the session epoch, below the clock in milliseconds. */
+    private static final int EPOCH_RANDOM_BITS = 20;
+
+    /** Last epoch handed out in this process, so channels created in the same millisecond still grow. */
+    private static final AtomicLong LAST_EPOCH = new AtomicLong();
+
+    /** Networking module the packets are sent through. */
+    private final AbstractNetworking network;
+
+    /** Address of this client, carried by every packet. */
+    private final ClientNode self;
+
+    /** Session epoch of this channel. */
+    private final long epoch;
+
+    /** Index of the oldest unacknowledged sequence number in a data packet. */
+    private final int baseIndex;
+
+    /** The module the packets are sent to. */
+    private final int module;
+
+    /** Packets a peer may have unacknowledged. */
+    private final int window;
+
+    /** Listener of the delivered messages. */
+    private final ReliableListener listener;
+
+    /** Timers of the retransmits and delayed acknowledgements. */
+    private final TimingWheel wheel;
+
+    /** Send and receive state per peer. */
+    private final Map<ClientNode, Peer> peers = new ConcurrentHashMap<>();
+
+    /** Number of packets sent again. */
+    private final AtomicLong retransmits = new AtomicLong();
+
+    /**
+     * Creates a channel for a module and subscribes it to receive.
+     *
+     * @param networking       the networking module
+     * @param selfAddress      the address of this client, as the peers know it
+     * @param channelModule    the module the packets are sent to
+     * @param windowPackets    the packets a peer may have unacknowledged
+     * @param reliableListener the listener of the delivered messages
+     */
+    public ReliableChannel(final AbstractNetworking networking, final ClientNode selfAddress,
+            final int channelModule, final int windowPackets, final ReliableListener reliableListener) {
+        this.network = networking;
+        this.self = selfAddress;
+        final long clock = (System.currentTimeMillis() << EPOCH_RANDOM_BITS)
+                | ThreadLocalRandom.current().nextInt(1 << EPOCH_RANDOM_BITS);
+        this.epoch = LAST_EPOCH.accumulateAndGet(clock, (last, next) -> Math.max(last + 1, next));
+        this.baseIndex = 1 + 1 + FrameCodec.hostBytes(selfAddress.hostName()).length + Integer.BYTES + Long.BYTES;
+        this.module = channelModule;
+        this.window = windowPackets;
+        this.listener = reliableListener;
+        this.wheel = new TimingWheel(TICK_MICROS, WHEEL_SIZE, "reliable-" + channelModule);
+        networking.subscribe(channelModule, this);
+    }
+
+    /**
+     * Function to send a message to a peer. Blocks while the window towards
+     * the peer is full.
+     *
+     * @param data     the message
+     * @param peer     the peer
+     * @param priority the priority
+     * @throws InterruptedException if interrupted while waiting for the window
+     */
+    public void send(final byte[] data, final ClientNode peer, final int priority) throws InterruptedException {
+        final Sender sender = peer(peer).sender;
+        final byte[] packet;
+        synchronized (sender) {
+            while (sender.next - sender.base >= window) {
+                sender.wait();
+            }
+            final int seq = sender.next++;
+            final ByteBuffer buffer = header(DATA, Long.BYTES + 2 * Integer.BYTES + data.length);
+            buffer.putLong(epoch);
+            buffer.putInt(sender.base);
+            buffer.putInt(seq);
+            buffer.put(data);
+            packet = buffer.array();
+            final Pending pending = new Pending(seq, packet, priority, sender.rtoMicros);
+            sender.pending[Math.floorMod(seq, window)] = pending;
+            pending.timer = wheel.schedule(() -> expire(peer, sender, pending), pending.rtoMicros);
+        }
+        network.sendData(packet, new ClientNode[] {peer}, module, priority);
+    }
+
+    /**
+     * Function to send a message to several peers, each in its own sequence.
+     *
+     * @param data     the message
+     * @param dest     the peers
+     * @param priority the priority
+     * @throws InterruptedException if interrupted while waiting for a window
+     */
+    public void send(final byte[] data, final ClientNode[] dest, final int priority) throws InterruptedException {
+        for (ClientNode peer : dest) {
+            send(data, peer, priority);
+        }
+    }
+
+    /**
+     * Function to get the packets towards a peer not yet acknowledged.
+     *
+     * @param peer the peer
+     * @return the unacknowledged count
+     */
+    public int unacknowledged(final ClientNode peer) {
+        final Sender sender = peer(peer).sender;
+        synchronized (sender) {
+            return sender.next - sender.base;
+        }
+    }
+
+    /**
+     * Function to get the smoothed round trip time to a peer.
+     *
+     * @param peer the peer
+     * @return the round trip time in microseconds, or 0 before the first sample
+     */
+    public long roundTripMicros(final ClientNode peer) {
+        final Sender sender = peer(peer).sender;
+        synchronized (sender) {
+            return (long) sender.srttMicros;
+        }
+    }
+
+    /**
+     * Function to get the number of packets sent again so far.
+     *
+     * @return the retransmit count
+     */
+    public long retransmitCount() {
+        return retransmits.get();
+    }
+
+    /**
+     * Function to forget a peer that left, dropping its unacknowledged packets.
+     *
+     * @param peer the peer
+     */
+    public void removePeer(final ClientNode peer) {
+        final Peer removed = peers.remove(peer);
+        if (removed == null) {
+            return;
+        }
+        synchronized (removed.sender) {
+            for (Pending pending : removed.sender.pending) {
+                if (pending != null) {
+                    pending.timer.cancel();
+                }
+            }
+            removed.sender.base = removed.sender.next;
+            removed.sender.notifyAll();
+        }
+    }
+
+    /**
+     * Function to stop the timers. Unacknowledged packets are no longer sent again.
+     */
+    public void shutdown() {
+        wheel.stop();
+    }
+
+    @Override
+    public void receiveData(final ByteBuffer data, final int dataModule, final int priority) {
+        final byte type = data.get();
+        final ClientNode peer = FrameCodec.getNode(data);
+        final long packetEpoch = data.getLong();
+        if (type == DATA) {
+            receivePacket(peer, packetEpoch, data, priority);
+        } else if (packetEpoch == epoch) {
+            receiveAck(peer, data.getInt(), data.getLong());
+        }
+    }
+
+    private Peer peer(final ClientNode node) {
+        return peers.computeIfAbsent(node, key -> new Peer(window));
+    }
+
+    private ByteBuffer header(final byte type, final int bodyLength) {
+        final int nodeLength = 1 + FrameCodec.hostBytes(self.hostName()).length + Integer.BYTES;
+        final ByteBuffer buffer = ByteBuffer.allocate(1 + nodeLength + bodyLength);
+        buffer.put(type);
+        FrameCodec.putNode(buffer, self);
+        return buffer;
+    }
+
+    /**
+     * Function to deliver a data packet, or buffer it until the packets
+     * before it arrive, and acknowledge it.
+     *
+     * @param peer        the sender
+     * @param packetEpoch the session epoch of the sender
+     * @param data        the packet, positioned at the oldest unacknowledged number
+     * @param priority    the priority it was sent with
+     */
+    private void receivePacket(final ClientNode peer, final long packetEpoch, final ByteBuffer data,
+            final int priority) {
+        final Receiver receiver = peer(peer).receiver;
+        final int base = data.getInt();
+        final int seq = data.getInt();
+        boolean ackNow = true;
+        synchronized (receiver) {
+            if (packetEpoch < receiver.epoch) {
+                return;
+            }
+            if (packetEpoch > receiver.epoch) {
+                receiver.reset(packetEpoch, base);
+            } else if (base - receiver.expected > 0) {
+                // acknowledged to a previous session of this channel, which delivered them
+                receiver.skipTo(base);
+            }
+            receiver.priority = priority;
+            final int offset = seq - receiver.expected;
+            if (offset == 0) {
+                receiver.expected++;
+                listener.receiveData(data.slice(), peer);
+                while (receiver.buffered[Math.floorMod(receiver.expected, window)] != null) {
+                    final ByteBuffer next = receiver.buffered[Math.floorMod(receiver.expected, window)];
+                    receiver.buffered[Math.floorMod(receiver.expected, window)] = null;
+                    receiver.bufferedCount--;
+                    receiver.expected++;
+                    listener.receiveData(next, peer);
+                }
+                receiver.unacked++;
+                // acknowledge every second in-order packet, and a lone one after a short delay
+                ackNow = receiver.unacked >= 2 || receiver.bufferedCount > 0;
+                if (!ackNow && receiver.ackTimer == null) {
+                    receiver.ackTimer = wheel.schedule(() -> delayedAck(peer, receiver), ACK_DELAY_MICROS);
+                }
+            } else if (offset > 0 && offset < window && receiver.buffered[Math.floorMod(seq, window)] == null) {
+                final byte[] copy = new byte[data.remaining()];
+                data.get(copy);
+                receiver.buffered[Math.floorMod(seq, window)] = ByteBuffer.wrap(copy).asReadOnlyBuffer();
+                receiver.bufferedCount++;
+            }
+        }
+        if (ackNow) {
+            sendAck(peer, receiver);
+        }
+    }
+
+    private void delayedAck(final ClientNode peer, final Receiver receiver) {
+        synchronized (receiver) {
+            receiver.ackTimer = null;
+            if (receiver.unacked == 0) {
+                return;
+            }
+        }
+        sendAck(peer, receiver);
+    }
+
+    private void sendAck(final ClientNode peer, final Receiver receiver) {
+        final ByteBuffer buffer = header(ACK, 2 * Long.BYTES + Integer.BYTES);
+        final int priority;
+        synchronized (receiver) {
+            buffer.putLong(receiver.epoch);
+            long bitmap = 0;
+            for (int i = 0; i < SACK_BITS && i + 1 < window; i++) {
+                if (receiver.buffered[Math.floorMod(receiver.expected + 1 + i, window)] != null) {
+                    bitmap |= 1L << i;
+                }
+            }
+            buffer.putInt(receiver.expected);
+            buffer.putLong(bitmap);
+            receiver.unacked = 0;
+            if (receiver.ackTimer != null) {
+                receiver.ackTimer.cancel();
+                receiver.ackTimer = null;
+            }
+            priority = receiver.priority;
+        }
+        network.sendData(buffer.array(), new ClientNode[] {peer}, module, priority);
+    }
+
+    /**
+     * Function to release the acknowledged packets and send again the ones
+     * the bitmap shows as lost.
+     *
+     * @param peer     the peer that acknowledged
+     * @param expected the next packet the peer expects
+     * @param bitmap   the packets after it the peer holds
+     */
+    private void receiveAck(final ClientNode peer, final int expected, final long bitmap) {
+        final Sender sender = peer(peer).sender;
+        final List<Pending> lost = new ArrayList<>();
+        synchronized (sender) {
+            final long now = System.nanoTime();
+            while (sender.base - expected < 0 && sender.base - sender.next < 0) {
+                final Pending pending = sender.pending[Math.floorMod(sender.base, window)];
+                sender.pending[Math.floorMod(sender.base, window)] = null;
+                sender.base++;
+                if (pending != null) {
+                    pending.timer.cancel();
+                    if (!pending.retransmitted && !pending.sacked) {
+                        sender.sample(TimeUnit.NANOSECONDS.toMicros(now - pending.sentNanos));
+                    }
+                }
+            }
+            int highest = -1;
+            for (int i = 0; i < SACK_BITS; i++) {
+                if ((bitmap & (1L << i)) == 0) {
+                    continue;
+                }
+                final Pending pending = slot(sender, expected + 1 + i);
+                if (pending != null && !pending.sacked) {
+                    pending.sacked = true;
+                    pending.timer.cancel();
+                }
+                highest = i;
+            }
+            // every unacknowledged packet below the highest one held is lost
+            for (int i = -1; i < highest; i++) {
+                final Pending pending = slot(sender, expected + 1 + i);
+                if (pending != null && !pending.sacked && !pending.fastRetransmitted) {
+                    pending.fastRetransmitted = true;
+                    pending.retransmitted = true;
+                    lost.add(pending);
+                }
+            }
+            for (int i = 0; i < lost.size(); i++) {
+                lost.set(i, resend(sender, lost.get(i)));
+            }
+            sender.notifyAll();
+        }
+        for (Pending pending : lost) {
+            retransmits.incrementAndGet();
+            network.sendData(pending.packet, new ClientNode[] {peer}, module, pending.priority);
+        }
+    }
+
+    /**
+     * Function to copy a packet for sending again, with the current oldest
+     * unacknowledged number so a restarted receiver starts there.
+     *
+     * @param sender  the send state of the peer, locked by the caller
+     * @param pending the packet
+     * @return a pending packet holding the copy, to send only
+     */
+    private Pending resend(final Sender sender, final Pending pending) {
+        final byte[] copy = pending.packet.clone();
+        ByteBuffer.wrap(copy).putInt(baseIndex, sender.base);
+        return new Pending(pending.seq, copy, pending.priority, pending.rtoMicros);
+    }
+
+    private Pending slot(final Sender sender, final int seq) {
+        if (seq - sender.base < 0 || seq - sender.next >= 0) {
+            return null;
+        }
+        final Pending pending = sender.pending[Math.floorMod(seq, window)];
+        if (pending == null || pending.seq != seq) {
+            return null;
+        }
+        return pending;
+    }
+
+    /**
+     * Function to send a packet again when its timer fires unacknowledged,
+     * doubling its timeout.
+     *
+     * @param peer    the peer
+     * @param sender  the send state of the peer
+     * @param pending the packet
+     */
+    private void expire(final ClientNode peer, final Sender sender, final Pending pending) {
+        final byte[] packet;
+        synchronized (sender) {
+            if (slot(sender, pending.seq) != pending || pending.sacked) {
+                return;
+            }
+            pending.retransmitted = true;
+            pending.rtoMicros = Math.min(MAX_RTO_MICROS, 2 * pending.rtoMicros);
+            pending.timer = wheel.schedule(() -> expire(peer, sender, pending), pending.rtoMicros);
+            packet = resend(sender, pending).packet;
+        }
+        retransmits.incrementAndGet();
+        network.sendData(packet, new ClientNode[] {peer}, module, pending.priority);
+    }
+
+    /**
+     * Send and receive state of one peer.
+     */
+    private static final class Peer {
+        /** State of the packets sent to the peer. */
+        private final Sender sender;
+
+        /** State of the packets received from the peer. */
+        private final Receiver receiver;
+
+        Peer(final int window) {
+            this.sender = new Sender(window);
+            this.receiver = new Receiver(window);
+        }
+    }
+
+    /**
+     * State of the packets sent to one peer.
+     */
+    private static final class Sender {
+        /** Unacknowledged packets, by sequence number modulo the window. */
+        private final Pending[] pending;
+
+        /** Oldest unacknowledged sequence number. */
+        private int base;
+
+        /** Next sequence number to send. */
+        private int next;
+
+        /** Smoothed round trip time in microseconds. */
+        private double srttMicros;
+
+        /** Round trip time variation in microseconds. */
+        private double rttvarMicros;
+
+        /** Retransmit timeout of new packets in microseconds. */
+        private long rtoMicros = INITIAL_RTO_MICROS;
+
+        Sender(final int window) {
+            this.pending = new Pending[window];
+        }
+
+        void sample(final long rttMicros) {
+            if (srttMicros == 0) {
+                srttMicros = rttMicros;
+                rttvarMicros = rttMicros / 2.0;
+            } else {
+                rttvarMicros += RTTVAR_GAIN * (Math.abs(srttMicros - rttMicros) - rttvarMicros);
+                srttMicros += RTT_GAIN * (rttMicros - srttMicros);
+            }
+            final long rto = (long) (srttMicros + RTTVAR_FACTOR * rttvarMicros);
+            rtoMicros = Math.max(MIN_RTO_MICROS, Math.min(MAX_RTO_MICROS, rto));
+        }
+    }
+
+    /**
+     * A packet sent but not yet acknowledged.
+     */
+    private static final class Pending {
+        /** Sequence number. */
+        private final int seq;
+
+        /** The encoded packet. */
+        private final byte[] packet;
+
+        /** Priority it was sent with. */
+        private final int priority;
+
+        /** When it was first sent. */
+        private final long sentNanos = System.nanoTime();
+
+        /** Current retransmit timeout in microseconds. */
+        private long rtoMicros;
+
+        /** Retransmit timer. */
+        private TimingWheel.Timeout timer;
+
+        /** Whether it was sent more than once. */
+        private boolean retransmitted;
+
+        /** Whether it was sent again because of a gap in an acknowledgement. */
+        private boolean fastRetransmitted;
+
+        /** Whether the bitmap of an acknowledgement holds it. */
+        private boolean sacked;
+
+        Pending(final int sequence, final byte[] encoded, final int sendPriority, final long rto) {
+            this.seq = sequence;
+            this.packet = encoded;
+            this.priority = sendPriority;
+            this.rtoMicros = rto;
+        }
+    }
+
+    /**
+     * State of the packets received from one peer.
+     */
+    private static final class Receiver {
+        /** Packets received ahead of the next expected one, by sequence number modulo the window. */
+        private final ByteBuffer[] buffered;
+
+        /** Next sequence number to deliver. */
+        private int expected;
+
+        /** In-order packets delivered but not yet acknowledged. */
+        private int unacked;
+
+        /** Timer of the delayed acknowledgement, or null. */
+        private TimingWheel.Timeout ackTimer;
+
+        /** Priority of the last packet, used for the acknowledgements. */
+        private int priority;
+
+        /** Packets in the buffer. */
+        private int bufferedCount;
+
+        /** Session epoch of the peer, or 0 before its first packet. */
+        private long epoch;
+
+        Receiver(final int window) {
+            this.buffered = new ByteBuffer[window];
+        }
+
+        /**
+         * Function to start over for a new session of the peer.
+         *
+         * @param peerEpoch the epoch of the session
+         * @param base      the oldest number the peer waits for
+         */
+        void reset(final long peerEpoch, final int base) {
+            epoch = peerEpoch;
+            expected = base;
+            Arrays.fill(buffered, null);
+            bufferedCount = 0;
+            unacked = 0;
+            if (ackTimer != null) {
+                ackTimer.cancel();
+                ackTimer = null;
+            }
+        }
+
+        /**
+         * Function to drop the packets before a number the peer no longer waits for.
+         *
+         * @param base the oldest number the peer waits for
+         */
+        void skipTo(final int base) {
+            if (base - expected >= buffered.length) {
+                Arrays.fill(buffered, null);
+                bufferedCount = 0;
+                expected = base;
+                return;
+            }
+            while (expected - base < 0) {
+                final int index = Math.floorMod(expected, buffered.length);
+                if (buffered[index] != null) {
+                    buffered[index] = null;
+                    bufferedCount--;
+                }
+                expected++;
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.swe.networking;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Interface which a {@link ReliableChannel} invokes with the messages of a
+ * peer, exactly once each and in the order the peer sent them.
+ *
+ */
+@FunctionalInterface
+public interface ReliableListener {
+    /**
+     * Function to call on receiving the next message of a peer.
+     * The view is only valid until the function returns.
+     *
+     * @param data read-only view of the payload
+     * @param peer the peer that sent it
+     */
+    void receiveData(ByteBuffer data, ClientNode peer);
+}
@@ -0,0 +1,718 @@
+package com.swe.networking;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Non-blocking socket transport in which one node acts as the main server.
+ *
+ * <p>Every peer keeps one connection to the main server and sends its
+ * sendData and broadcast frames there; the main server routes them to the
+ * destinations over its own connections. Connections are pooled by
+ * {@link ClientNode} and reused for all traffic, and a small fixed number of
+ * event-loop threads, each with its own {@link Selector}, serve all of them.
+ *
+ * <p>Direct frames skip the main server: the node opens its own pooled
+ * connection to every destination and delivers the frame itself, which is
+ * how a cluster relay forwards a broadcast to its members.
+ *
+ * <p>On the wire every message is a length, a type byte and a body. HELLO
+ * carries the address of the connecting node, ROUTE a procedure byte and an
+ * outbound frame, and DELIVER an inbound frame for the receiver. The main
+ * server keeps the destination groups of every node, so a group frame only
+ * carries the group id. A message longer than {@link #MAX_MESSAGE_BYTES}
+ * is rejected when sent, and a peer announcing one is disconnected before
+ * anything is allocated for it.
+ *
+ * <p>The bytes waiting to be written to a connection are bounded. A sending
+ * thread waits while the connection to the main server is over the bound;
+ * a connection the main server routes to is closed instead, since the event
+ * loop must not wait on one slow peer, and the peer reconnects. An error
+ * while serving one connection closes only that connection.
+ */
+public final class SelectorTransport implements FrameTransport {
+    /** Message announcing the address of the connecting node. */
+    private static final byte HELLO = 1;
+
+    /** Message asking the main server to route a frame. */
+    private static final byte ROUTE = 2;
+
+    /** Message carrying an inbound frame. */
+    private static final byte DELIVER = 3;
+
+    /** Procedure byte of a routed sendData frame. */
+    private static final byte ROUTE_SEND = 0;
+
+    /** Procedure byte of a routed broadcast frame. */
+    private static final byte ROUTE_BROADCAST = 1;
+
+    /** Procedure byte of a routed group frame. */
+    private static final byte ROUTE_GROUP = 2;
+
+    /** Procedure byte of a routed group update frame. */
+    private static final byte ROUTE_GROUP_UPDATE = 3;
+
+    /** Initial size of the read buffer of a connection. */
+    private static final int READ_BUFFER = 64 * 1024;
+
+    /** Largest length a message may announce, type byte included. */
+    static final int MAX_MESSAGE_BYTES = 16 * 1024 * 1024;
+
+    /** Bytes of the message header: length and type. */
+    private static final int MESSAGE_HEADER = Integer.BYTES + 1;
+
+    /** Default bound of the bytes waiting to be written to a connection. */
+    private static final int DEFAULT_PENDING_BYTES = 4 * 1024 * 1024;
+
+    /** Logger of the errors that close a connection. */
+    private static final Logger LOG = Logger.getLogger(SelectorTransport.class.getName());
+
+    /** Address of this node. */
+    private final ClientNode self;
+
+    /** Event loops serving the connections. */
+    private final EventLoop[] loops;
+
+    /** Next event loop to assign a connection to. */
+    private final AtomicInteger nextLoop = new AtomicInteger();
+
+    /** Open connections keyed by the address of the remote node. */
+    private final Map<ClientNode, Connection> connections = new ConcurrentHashMap<>();
+
+    /** Every open connection, including accepted ones before their HELLO. */
+    private final Set<Connection> open = ConcurrentHashMap.newKeySet();
+
+    /** Bound of the bytes waiting to be written to a connection. */
+    private final long maxPendingBytes;
+
+    /** Number of connections closed for falling behind. */
+    private final AtomicLong slowClosed = new AtomicLong();
+
+    /** Destination groups of every node, as routed by the main server. */
+    private final Map<ClientNode, Map<Integer, ClientNode[]>> groups = new ConcurrentHashMap<>();
+
+    /** Address of the main server, or null before addUser. */
+    private volatile ClientNode mainServer;
+
+    /** Receiver of the inbound frames of this node. */
+    private volatile Consumer<byte[]> receiver = data -> {
+    };
+
+    /** Listening socket, or null if not listening. */
+    private ServerSocketChannel acceptor;
+
+    /**
+     * Creates a transport and starts its event loops.
+     *
+     * @param node       the address of this node
+     * @param eventLoops the number of event-loop threads
+     * @throws IOException if a selector cannot be opened
+     */
+    public SelectorTransport(final ClientNode node, final int eventLoops) throws IOException {
+        this(node, eventLoops, DEFAULT_PENDING_BYTES);
+    }
+
+    /**
+     * Creates a transport with a bound on the unwritten bytes of a connection
+     * and starts its event loops.
+     *
+     * @param node         the address of this node
+     * @param eventLoops   the number of event-loop threads
+     * @param pendingBytes the bytes that may wait to be written to a connection
+     * @throws IOException if a selector cannot be opened
+     */
+    public SelectorTransport(final ClientNode node, final int eventLoops, final long pendingBytes)
+            throws IOException {
+        if (pendingBytes <= 0) {
+            throw new IllegalArgumentException("Pending bytes must be positive: " + pendingBytes);
+        }
+        this.self = node;
+        this.maxPendingBytes = pendingBytes;
+        this.loops = new EventLoop[eventLoops];
+        for (int i = 0; i < eventLoops; i++) {
+            loops[i] = new EventLoop(i);
+        }
+    }
+
+    /**
+     * Function to set who receives the inbound frames of this node.
+     *
+     * @param inbound the receiver, usually a front's networkFrontCallSubscriber
+     */
+    public void setReceiver(final Consumer<byte[]> inbound) {
+        this.receiver = inbound;
+    }
+
+    /**
+     * Function to accept connections on the port of this node.
+     *
+     * @throws IOException if the port cannot be bound
+     */
+    public void listen() throws IOException {
+        acceptor = ServerSocketChannel.open();
+        acceptor.configureBlocking(false);
+        acceptor.bind(new InetSocketAddress(self.hostName(), self.port()));
+        loops[0].execute(() -> {
+            try {
+                acceptor.register(loops[0].selector, SelectionKey.OP_ACCEPT);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Function to get the number of open connections.
+     *
+     * @return the connection count
+     */
+    public int connectionCount() {
+        return connections.size();
+    }
+
+    /**
+     * Function to get the number of connections closed because their peer
+     * fell behind.
+     *
+     * @return the closed count
+     */
+    public long slowClosedCount() {
+        return slowClosed.get();
+    }
+
+    /**
+     * Function to close every connection and stop the event loops.
+     *
+     * @throws IOException if closing the listening socket or a selector fails
+     */
+    public void close() throws IOException {
+        for (EventLoop loop : loops) {
+            loop.running = false;
+        }
+        for (Connection connection : open) {
+            connection.close();
+        }
+        if (acceptor != null) {
+            acceptor.close();
+        }
+        for (EventLoop loop : loops) {
+            loop.selector.close();
+        }
+    }
+
+    @Override
+    public void call(final String procedure, final ByteBuffer frame) {
+        switch (procedure) {
+            case FrameTransport.SEND_DATA:
+                send(ROUTE_SEND, frame);
+                break;
+            case FrameTransport.SEND_DIRECT:
+                sendDirect(frame.duplicate());
+                break;
+            case FrameTransport.BROADCAST:
+                send(ROUTE_BROADCAST, frame);
+                break;
+            case FrameTransport.SEND_GROUP:
+                send(ROUTE_GROUP, frame);
+                break;
+            case FrameTransport.GROUP_UPDATE:
+                send(ROUTE_GROUP_UPDATE, frame);
+                break;
+            case FrameTransport.ADD_USER:
+                addUser(frame.duplicate());
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Function to remember the main server and connect to it.
+     *
+     * @param args the device address followed by the main server address
+     */
+    private void addUser(final ByteBuffer args) {
+        FrameCodec.getNode(args);
+        mainServer = FrameCodec.getNode(args);
+        if (!isMainServer()) {
+            connection(mainServer);
+        }
+    }
+
+    private boolean isMainServer() {
+        return mainServer == null || mainServer.equals(self);
+    }
+
+    /**
+     * Function to send a frame, through the main server unless this is it.
+     *
+     * @param kind  the routed procedure byte
+     * @param frame the outbound frame
+     */
+    private void send(final byte kind, final ByteBuffer frame) {
+        if (isMainServer()) {
+            route(kind, frame.duplicate(), self);
+            return;
+        }
+        final ByteBuffer message = ByteBuffer.allocate(MESSAGE_HEADER + 1 + frame.remaining());
+        message.putInt(1 + 1 + frame.remaining()).put(ROUTE).put(kind).put(frame.duplicate()).flip();
+        connection(mainServer).enqueue(message);
+    }
+
+    /**
+     * Function to deliver a sendData frame over direct connections.
+     *
+     * @param frame the outbound frame
+     */
+    private void sendDirect(final ByteBuffer frame) {
+        final ClientNode[] dest = FrameCodec.getDestinations(frame);
+        final ByteBuffer message = deliverMessage(frame);
+        for (ClientNode node : dest) {
+            deliverTo(node, message);
+        }
+    }
+
+    /**
+     * Function to route a frame on the main server.
+     *
+     * @param kind   the routed procedure byte
+     * @param frame  the outbound frame
+     * @param origin the node that sent it
+     */
+    private void route(final byte kind, final ByteBuffer frame, final ClientNode origin) {
+        ClientNode[] dest = null;
+        if (kind == ROUTE_GROUP_UPDATE) {
+            updateGroup(frame, origin);
+            return;
+        } else if (kind == ROUTE_SEND) {
+            dest = FrameCodec.getDestinations(frame);
+        } else if (kind == ROUTE_GROUP) {
+            dest = groups.getOrDefault(origin, Map.of()).get(frame.getInt());
+            if (dest == null) {
+                return;
+            }
+        }
+        final ByteBuffer message = deliverMessage(frame);
+        if (dest != null) {
+            for (ClientNode node : dest) {
+                deliverTo(node, message);
+            }
+            return;
+        }
+        if (!origin.equals(self)) {
+            deliverTo(self, message);
+        }
+        for (ClientNode node : connections.keySet()) {
+            if (!node.equals(origin)) {
+                deliverTo(node, message);
+            }
+        }
+    }
+
+    /**
+     * Function to build the DELIVER message of an outbound frame.
+     *
+     * @param frame the outbound frame, positioned at the data length
+     * @return the message
+     */
+    private static ByteBuffer deliverMessage(final ByteBuffer frame) {
+        final int dataLength = frame.getInt();
+        final int dataStart = frame.position();
+        final ByteBuffer message = ByteBuffer.allocate(MESSAGE_HEADER + 2 * Integer.BYTES + dataLength);
+        message.putInt(1 + 2 * Integer.BYTES + dataLength).put(DELIVER);
+        message.putInt(frame.getInt(dataStart + dataLength));
+        message.putInt(frame.getInt(dataStart + dataLength + Integer.BYTES));
+        message.put(frame.duplicate().limit(dataStart + dataLength));
+        return message.flip();
+    }
+
+    /**
+     * Function to apply a group update on the main server.
+     *
+     * @param frame  the group update frame
+     * @param origin the node that owns the group
+     */
+    private void updateGroup(final ByteBuffer frame, final ClientNode origin) {
+        final Map<Integer, ClientNode[]> owned = groups.computeIfAbsent(origin, key -> new ConcurrentHashMap<>());
+        final int group = frame.getInt();
+        final ClientNode[] added = FrameCodec.getDestinations(frame);
+        final ClientNode[] removed = FrameCodec.getDestinations(frame);
+        final ClientNode[] members = NetworkFront.applyDelta(owned.getOrDefault(group, new ClientNode[0]),
+                added, removed);
+        if (members.length == 0) {
+            owned.remove(group);
+        } else {
+            owned.put(group, members);
+        }
+    }
+
+    private void deliverTo(final ClientNode node, final ByteBuffer message) {
+        if (node.equals(self)) {
+            final byte[] inbound = new byte[message.remaining() - MESSAGE_HEADER];
+            message.duplicate().position(MESSAGE_HEADER).get(inbound);
+            receiver.accept(inbound);
+            return;
+        }
+        connection(node).enqueue(message.duplicate());
+    }
+
+    /**
+     * Function to get the pooled connection to a node, opening it if needed.
+     *
+     * @param node the remote node
+     * @return the connection
+     */
+    private Connection connection(final ClientNode node) {
+        return connections.computeIfAbsent(node, key -> {
+            final EventLoop loop = nextLoop();
+            try {
+                final SocketChannel channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                final boolean connected = channel.connect(new InetSocketAddress(key.hostName(), key.port()));
+                final Connection connection = new Connection(channel, loop, key);
+                connection.enqueue(hello());
+                loop.execute(() -> connection.register(connected));
+                return connection;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    private ByteBuffer hello() {
+        final int nodeSize = 1 + FrameCodec.hostBytes(self.hostName()).length + Integer.BYTES;
+        final ByteBuffer message = ByteBuffer.allocate(MESSAGE_HEADER + nodeSize);
+        message.putInt(1 + nodeSize).put(HELLO);
+        FrameCodec.putNode(message, self);
+        return message.flip();
+    }
+
+    private EventLoop nextLoop() {
+        return loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+    }
+
+    /**
+     * Function to handle one complete message from a connection.
+     *
+     * @param connection the connection
+     * @param type       the message type
+     * @param body       the message body
+     */
+    private void handle(final Connection connection, final byte type, final ByteBuffer body) {
+        if (type == HELLO) {
+            connection.peer = FrameCodec.getNode(body);
+            connections.put(connection.peer, connection);
+        } else if (type == ROUTE && connection.peer != null) {
+            route(body.get(), body, connection.peer);
+        } else if (type == DELIVER) {
+            final byte[] inbound = new byte[body.remaining()];
+            body.get(inbound);
+            receiver.accept(inbound);
+        }
+    }
+
+    /**
+     * Thread with its own selector serving a share of the connections.
+     */
+    private final class EventLoop implements Runnable {
+        /** The selector. */
+        private final Selector selector;
+
+        /** Work handed over by other threads. */
+        private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+        /** The thread of the loop. */
+        private final Thread thread;
+
+        /** Whether the loop keeps running. */
+        private volatile boolean running = true;
+
+        EventLoop(final int index) throws IOException {
+            this.selector = Selector.open();
+            this.thread = new Thread(this, "networking-selector-" + index);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        void execute(final Runnable task) {
+            tasks.add(task);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                try {
+                    selector.select();
+                } catch (IOException | ClosedSelectorException e) {
+                    if (running) {
+                        LOG.log(Level.SEVERE, "Stopped an event loop whose selector failed", e);
+                    }
+                    return;
+                }
+                Runnable task = tasks.poll();
+                while (task != null) {
+                    try {
+                        task.run();
+                    } catch (RuntimeException e) {
+                        LOG.log(Level.WARNING, "Skipped a failing event-loop task", e);
+                    }
+                    task = tasks.poll();
+                }
+                final Set<SelectionKey> ready;
+                try {
+                    ready = selector.selectedKeys();
+                } catch (ClosedSelectorException e) {
+                    return;
+                }
+                for (SelectionKey key : ready) {
+                    handleKey(key);
+                }
+                ready.clear();
+            }
+        }
+
+        boolean isCurrent() {
+            return Thread.currentThread() == thread;
+        }
+
+        private void handleKey(final SelectionKey key) {
+            if (!key.isValid()) {
+                return;
+            }
+            if (key.isAcceptable()) {
+                try {
+                    final SocketChannel channel = ((ServerSocketChannel) key.channel()).accept();
+                    if (channel != null) {
+                        channel.configureBlocking(false);
+                        final EventLoop loop = nextLoop();
+                        final Connection connection = new Connection(channel, loop, null);
+                        loop.execute(() -> connection.register(true));
+                    }
+                } catch (IOException e) {
+                    LOG.log(Level.WARNING, "Failed to accept a connection", e);
+                }
+                return;
+            }
+            final Connection connection = (Connection) key.attachment();
+            try {
+                if (key.isConnectable() && connection.channel.finishConnect()) {
+                    connection.updateInterest();
+                }
+                if (key.isReadable()) {
+                    connection.read();
+                }
+                if (key.isValid() && key.isWritable()) {
+                    connection.flush();
+                }
+            } catch (IOException e) {
+                connection.close();
+            } catch (RuntimeException e) {
+                // a malformed message from one peer must not stop the loop serving the others
+                LOG.log(Level.WARNING, "Closed the connection to " + connection.peer, e);
+                connection.close();
+            }
+        }
+    }
+
+    /**
+     * A pooled connection to one remote node.
+     */
+    private final class Connection {
+        /** The socket. */
+        private final SocketChannel channel;
+
+        /** The event loop serving the socket. */
+        private final EventLoop loop;
+
+        /** Messages waiting to be written. */
+        private final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>();
+
+        /** Bytes of the messages waiting to be written. */
+        private long pendingBytes;
+
+        /** Whether the connection was closed. */
+        private boolean closed;
+
+        /** Bytes read but not yet handled. */
+        private ByteBuffer readBuffer = ByteBuffer.allocate(READ_BUFFER);
+
+        /** Registration with the selector, or null before registering. */
+        private SelectionKey key;
+
+        /** Address of the remote node, known after its HELLO for accepted sockets. */
+        private volatile ClientNode peer;
+
+        /** Whether a flush has been requested and not yet run. */
+        private boolean flushScheduled;
+
+        Connection(final SocketChannel socket, final EventLoop eventLoop, final ClientNode remote) {
+            this.channel = socket;
+            this.loop = eventLoop;
+            this.peer = remote;
+            open.add(this);
+        }
+
+        void register(final boolean connected) {
+            try {
+                int interest = SelectionKey.OP_CONNECT;
+                if (connected) {
+                    interest = SelectionKey.OP_READ;
+                }
+                key = channel.register(loop.selector, interest, this);
+                if (connected) {
+                    updateInterest();
+                }
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        void enqueue(final ByteBuffer message) {
+            if (message.remaining() - Integer.BYTES > MAX_MESSAGE_BYTES) {
+                throw new IllegalArgumentException("Message of " + (message.remaining() - Integer.BYTES)
+                        + " bytes exceeds the limit of " + MAX_MESSAGE_BYTES);
+            }
+            synchronized (this) {
+                if (!closed && pendingBytes > 0 && pendingBytes + message.remaining() > maxPendingBytes) {
+                    if (!awaitRoom(message.remaining())) {
+                        return;
+                    }
+                }
+                if (closed) {
+                    return;
+                }
+                pending.add(message);
+                pendingBytes += message.remaining();
+                if (flushScheduled) {
+                    return;
+                }
+                flushScheduled = true;
+            }
+            loop.execute(this::updateInterest);
+        }
+
+        /**
+         * Function to wait until the message fits under the bound, or to close
+         * the connection when called from an event loop.
+         *
+         * @param bytes the size of the message
+         * @return false if the message is dropped
+         */
+        private boolean awaitRoom(final int bytes) {
+            for (EventLoop eventLoop : loops) {
+                if (eventLoop.isCurrent()) {
+                    slowClosed.incrementAndGet();
+                    LOG.warning("Closed the connection to " + peer + ", which fell " + pendingBytes + " bytes behind");
+                    loop.execute(this::close);
+                    closed = true;
+                    return false;
+                }
+            }
+            while (!closed && pendingBytes > 0 && pendingBytes + bytes > maxPendingBytes) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return !closed;
+        }
+
+        void updateInterest() {
+            if (key == null || !key.isValid() || !channel.isConnected()) {
+                return;
+            }
+            synchronized (this) {
+                flushScheduled = false;
+                int interest = SelectionKey.OP_READ;
+                if (!pending.isEmpty()) {
+                    interest |= SelectionKey.OP_WRITE;
+                }
+                key.interestOps(interest);
+            }
+        }
+
+        void flush() throws IOException {
+            synchronized (this) {
+                while (!pending.isEmpty()) {
+                    final ByteBuffer head = pending.peek();
+                    pendingBytes -= channel.write(head);
+                    notifyAll();
+                    if (head.hasRemaining()) {
+                        return;
+                    }
+                    pending.poll();
+                }
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        void read() throws IOException {
+            if (channel.read(readBuffer) < 0) {
+                close();
+                return;
+            }
+            readBuffer.flip();
+            while (readBuffer.remaining() >= Integer.BYTES) {
+                final int length = readBuffer.getInt(readBuffer.position());
+                if (length < 1 || length > MAX_MESSAGE_BYTES) {
+                    LOG.warning("Closed the connection to " + peer + ", which announced a message of "
+                            + length + " bytes");
+                    close();
+                    return;
+                }
+                if (readBuffer.remaining() < Integer.BYTES + length) {
+                    break;
+                }
+                readBuffer.position(readBuffer.position() + Integer.BYTES);
+                final int end = readBuffer.position() + length;
+                final byte type = readBuffer.get();
+                handle(this, type, readBuffer.slice().limit(end - readBuffer.position()));
+                readBuffer.position(end);
+            }
+            readBuffer.compact();
+            if (!readBuffer.hasRemaining()) {
+                final ByteBuffer grown = ByteBuffer.allocate(readBuffer.capacity() * 2);
+                grown.put(readBuffer.flip());
+                readBuffer = grown;
+            }
+        }
+
+        void close() {
+            if (peer != null) {
+                connections.remove(peer, this);
+            }
+            open.remove(this);
+            synchronized (this) {
+                closed = true;
+                pending.clear();
+                pendingBytes = 0;
+                notifyAll();
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // The connection is dropped either way; the next send reconnects.
+            }
+        }
+    }
+}
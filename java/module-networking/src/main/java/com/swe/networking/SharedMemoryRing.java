@@ -0,0 +1,261 @@
+package com.swe.networking;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Single-producer, single-consumer ring of messages in a memory-mapped file,
+ * shared by two processes on the same machine.
+ *
+ * <p>The file starts with a header holding a magic number and the ring size,
+ * then the consumer position and the producer position on cache lines of
+ * their own, followed by the ring. One process creates the ring, which
+ * replaces any file left by an earlier session with a fresh one, so stale
+ * positions and messages are never read; the other process opens it
+ * afterwards and checks the header. Positions only grow, and
+ * the ring index is the position modulo the ring size, which is a power of
+ * two. A message is its length and its bytes, padded to eight bytes; a
+ * message that does not fit before the end of the ring is preceded by a
+ * padding marker and starts over at index 0. The producer publishes a
+ * message by storing its position with release semantics after writing the
+ * bytes, and the consumer frees the space the same way, so neither side
+ * takes a lock. A side that finds the ring full or empty spins for a while,
+ * unless there is a single CPU, then yields and finally parks in short
+ * steps, since the other process cannot wake it.
+ */
+public final class SharedMemoryRing {
+    /** Offset of the magic number, written last when a ring is created. */
+    private static final int MAGIC_OFFSET = 0;
+
+    /** Offset of the ring size. */
+    private static final int CAPACITY_OFFSET = Integer.BYTES;
+
+    /** Offset of the consumer position, on its own cache line. */
+    private static final int HEAD = 64;
+
+    /** Offset of the producer position, on its own cache line. */
+    private static final int TAIL = 128;
+
+    /** Offset of the first ring byte. */
+    private static final int DATA = 192;
+
+    /** Marks an initialised ring file. */
+    private static final int MAGIC = 0x52494E47;
+
+    /** Smallest ring size. */
+    static final int MIN_CAPACITY = 1024;
+
+    /** Length marking the end of the ring as padding. */
+    private static final int PADDING = -1;
+
+    /** Alignment of the messages. */
+    private static final int ALIGN = Long.BYTES;
+
+    /** Empty polls spent spinning, none on a single CPU where the other side needs it. */
+    private static final int SPINS = spinCount();
+
+    /** Empty polls spent yielding after spinning, before parking. */
+    private static final int YIELDS = 100;
+
+    /** Longest park between polls, in nanoseconds. */
+    private static final long MAX_PARK_NANOS = 50_000;
+
+    /** Ordered access to the positions. */
+    private static final VarHandle POSITION =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    /** The mapped file. */
+    private final MappedByteBuffer buffer;
+
+    /** Size of the ring in bytes. */
+    private final int capacity;
+
+    /** Position mask of the ring. */
+    private final int mask;
+
+    private SharedMemoryRing(final MappedByteBuffer buffer, final int capacityBytes) {
+        this.buffer = buffer;
+        this.capacity = capacityBytes;
+        this.mask = capacityBytes - 1;
+    }
+
+    /**
+     * Function to create a ring with both positions at zero, replacing any
+     * file left behind by an earlier session. The other process must open
+     * the ring only after it has been created.
+     *
+     * @param file          the file backing the ring
+     * @param capacityBytes the ring size, a power of two of at least {@value #MIN_CAPACITY}
+     * @return the ring
+     * @throws IOException if the file cannot be created or mapped
+     */
+    public static SharedMemoryRing create(final Path file, final int capacityBytes) throws IOException {
+        if (Integer.bitCount(capacityBytes) != 1 || capacityBytes < MIN_CAPACITY) {
+            throw new IllegalArgumentException("Ring size must be a power of two of at least " + MIN_CAPACITY
+                    + ": " + capacityBytes);
+        }
+        final Path fresh = file.resolveSibling(file.getFileName() + ".new");
+        Files.deleteIfExists(fresh);
+        final MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(fresh, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, DATA + (long) capacityBytes);
+        }
+        buffer.order(ByteOrder.nativeOrder());
+        buffer.putInt(CAPACITY_OFFSET, capacityBytes);
+        POSITION.setRelease(buffer, HEAD, 0L);
+        POSITION.setRelease(buffer, TAIL, 0L);
+        buffer.putInt(MAGIC_OFFSET, MAGIC);
+        buffer.force();
+        // a reader still mapping the old file keeps the old file, never this one
+        Files.move(fresh, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return new SharedMemoryRing(buffer, capacityBytes);
+    }
+
+    /**
+     * Function to open a ring the other process created.
+     *
+     * @param file          the file backing the ring
+     * @param capacityBytes the ring size, which must match the created one
+     * @return the ring
+     * @throws IOException if the file is missing, cannot be mapped or does
+     *                     not hold a ring of this size
+     */
+    public static SharedMemoryRing open(final Path file, final int capacityBytes) throws IOException {
+        final MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (channel.size() != DATA + (long) capacityBytes) {
+                throw new IOException("Ring file " + file + " has " + channel.size() + " bytes, expected "
+                        + (DATA + (long) capacityBytes));
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, DATA + (long) capacityBytes);
+        }
+        buffer.order(ByteOrder.nativeOrder());
+        if (buffer.getInt(MAGIC_OFFSET) != MAGIC || buffer.getInt(CAPACITY_OFFSET) != capacityBytes) {
+            throw new IOException("Ring file " + file + " does not hold a ring of " + capacityBytes + " bytes");
+        }
+        return new SharedMemoryRing(buffer, capacityBytes);
+    }
+
+    /**
+     * Function to get the largest message the ring takes, half the ring so
+     * a message and its padding always fit.
+     *
+     * @return the largest message in bytes
+     */
+    public int maxMessageBytes() {
+        return capacity / 2 - Integer.BYTES;
+    }
+
+    /**
+     * Function to write one message made of several parts, waiting while
+     * the ring is full. Only one thread may write to a ring.
+     *
+     * @param parts the parts of the message, each read from its position
+     * @throws IllegalArgumentException if the message is larger than
+     *                                  {@link #maxMessageBytes()}; nothing is written then
+     */
+    public void write(final ByteBuffer... parts) {
+        long length = 0;
+        for (ByteBuffer part : parts) {
+            length += part.remaining();
+        }
+        if (length > maxMessageBytes()) {
+            throw new IllegalArgumentException("Message of " + length + " bytes exceeds the ring limit of "
+                    + maxMessageBytes() + " bytes");
+        }
+        final int size = align(Integer.BYTES + (int) length);
+        final long tail = (long) POSITION.getOpaque(buffer, TAIL);
+        final int index = (int) (tail & mask);
+        final int toEnd = capacity - index;
+        long needed = size;
+        if (toEnd < size) {
+            needed += toEnd;
+        }
+        int idle = 0;
+        while (tail + needed - (long) POSITION.getAcquire(buffer, HEAD) > capacity) {
+            idle = idle(idle);
+        }
+        long position = tail;
+        if (toEnd < size) {
+            buffer.putInt(DATA + index, PADDING);
+            position += toEnd;
+        }
+        final int start = DATA + (int) (position & mask);
+        buffer.putInt(start, (int) length);
+        int offset = start + Integer.BYTES;
+        for (ByteBuffer part : parts) {
+            final int remaining = part.remaining();
+            buffer.put(offset, part, part.position(), remaining);
+            offset += remaining;
+        }
+        POSITION.setRelease(buffer, TAIL, position + size);
+    }
+
+    /**
+     * Function to read every message available now. Only one thread may
+     * read from a ring.
+     *
+     * @param handler receives a view of each message, valid until it returns
+     * @return the number of messages read
+     */
+    public int drain(final Consumer<ByteBuffer> handler) {
+        final long tail = (long) POSITION.getAcquire(buffer, TAIL);
+        long head = (long) POSITION.getOpaque(buffer, HEAD);
+        int count = 0;
+        while (head < tail) {
+            final int index = (int) (head & mask);
+            final int length = buffer.getInt(DATA + index);
+            if (length == PADDING) {
+                head += capacity - index;
+                continue;
+            }
+            final int start = DATA + index + Integer.BYTES;
+            handler.accept(buffer.slice(start, length).order(ByteOrder.BIG_ENDIAN));
+            head += align(Integer.BYTES + length);
+            POSITION.setRelease(buffer, HEAD, head);
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Function to wait after finding the ring full or empty: spin at first,
+     * then park for growing steps.
+     *
+     * @param attempt the number of fruitless attempts so far
+     * @return the attempt count to pass next time
+     */
+    static int idle(final int attempt) {
+        if (attempt < SPINS) {
+            Thread.onSpinWait();
+        } else if (attempt < SPINS + YIELDS) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(Math.min(MAX_PARK_NANOS, 1L << Math.min(attempt - SPINS - YIELDS, 16)));
+        }
+        return attempt + 1;
+    }
+
+    private static int spinCount() {
+        if (Runtime.getRuntime().availableProcessors() > 1) {
+            return 10_000;
+        }
+        return 0;
+    }
+
+    private static int align(final int size) {
+        return (size + ALIGN - 1) & -ALIGN;
+    }
+}
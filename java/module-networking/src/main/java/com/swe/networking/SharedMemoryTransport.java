@@ -0,0 +1,185 @@
+package com.swe.networking;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Transport to an RPC peer in another process on the same machine, through
+ * a pair of {@link SharedMemoryRing}s instead of a local socket.
+ *
+ * <p>Both directions carry the same messages: the length of the procedure
+ * name, the UTF-8 name and the frame. A reader thread picks up the messages
+ * of the inbound ring; frames for {@link #DELIVER} go to the receiver, usually
+ * a front, and frames for any other procedure go to the handler, usually the
+ * networking core serving the front. One side creates the two rings and the
+ * other opens the same two files with the roles swapped, once they exist.
+ * Each side starts its reader once its receiver and handler are set, so the
+ * frames the peer sent before are not lost. A frame larger than the ring limit is rejected with an
+ * {@link IllegalArgumentException} before anything is written.
+ */
+public final class SharedMemoryTransport implements FrameTransport {
+    /** Procedure of the inbound frames a peer delivers for the receiver. */
+    public static final String DELIVER = "Networking-Deliver";
+
+    /** Logger of the inbound frames that failed. */
+    private static final Logger LOG = Logger.getLogger(SharedMemoryTransport.class.getName());
+
+    /** Ring the frames are written to. */
+    private final SharedMemoryRing outbound;
+
+    /** Ring the inbound frames are read from. */
+    private final SharedMemoryRing inbound;
+
+    /** Cache of the encoded procedure names, each with its length byte. */
+    private final Map<String, ByteBuffer> procedures = new ConcurrentHashMap<>();
+
+    /** Thread reading the inbound ring. */
+    private final Thread reader;
+
+    /** Receiver of the delivered frames. */
+    private volatile Consumer<byte[]> receiver = data -> {
+    };
+
+    /** Handler of the frames for every other procedure. */
+    private volatile FrameTransport handler = (procedure, frame) -> {
+    };
+
+    /** Whether the reader keeps running. */
+    private volatile boolean running = true;
+
+    private SharedMemoryTransport(final SharedMemoryRing outbound, final SharedMemoryRing inbound) {
+        this.outbound = outbound;
+        this.inbound = inbound;
+        this.reader = new Thread(this::readLoop, "networking-shm-reader");
+        reader.setDaemon(true);
+    }
+
+    /**
+     * Function to create the two rings. The peer opens them with
+     * {@link #open} afterwards.
+     *
+     * @param outboundFile  the file of the ring towards the peer
+     * @param inboundFile   the file of the ring from the peer
+     * @param capacityBytes the size of each ring, a power of two
+     * @return the transport
+     * @throws IOException if a ring cannot be created
+     */
+    public static SharedMemoryTransport create(final Path outboundFile, final Path inboundFile,
+            final int capacityBytes) throws IOException {
+        return new SharedMemoryTransport(SharedMemoryRing.create(outboundFile, capacityBytes),
+                SharedMemoryRing.create(inboundFile, capacityBytes));
+    }
+
+    /**
+     * Function to open the two rings the peer created.
+     *
+     * @param outboundFile  the file of the ring towards the peer, its inbound file
+     * @param inboundFile   the file of the ring from the peer, its outbound file
+     * @param capacityBytes the size of each ring, as created by the peer
+     * @return the transport
+     * @throws IOException if a ring is missing or cannot be mapped
+     */
+    public static SharedMemoryTransport open(final Path outboundFile, final Path inboundFile,
+            final int capacityBytes) throws IOException {
+        return new SharedMemoryTransport(SharedMemoryRing.open(outboundFile, capacityBytes),
+                SharedMemoryRing.open(inboundFile, capacityBytes));
+    }
+
+    /**
+     * Function to set who receives the delivered frames.
+     *
+     * @param frames the receiver, usually a front's networkFrontCallSubscriber
+     */
+    public void setReceiver(final Consumer<byte[]> frames) {
+        this.receiver = frames;
+    }
+
+    /**
+     * Function to set who serves the frames of every procedure other than
+     * {@link #DELIVER}. The frame is only valid during the call.
+     *
+     * @param procedures the handler, usually the networking core of the peer
+     */
+    public void setHandler(final FrameTransport procedures) {
+        this.handler = procedures;
+    }
+
+    /**
+     * Function to deliver an inbound frame to the receiver of the peer.
+     *
+     * @param frame the frame, positioned at its first byte
+     */
+    public void deliver(final ByteBuffer frame) {
+        call(DELIVER, frame);
+    }
+
+    /**
+     * Function to start reading the inbound ring. Called once, after the
+     * receiver and the handler are set.
+     */
+    public void start() {
+        reader.start();
+    }
+
+    /**
+     * Function to stop the reader. The rings stay mapped until collected.
+     */
+    public void close() {
+        running = false;
+        reader.interrupt();
+    }
+
+    @Override
+    public void call(final String procedure, final ByteBuffer frame) {
+        final ByteBuffer name = procedures.computeIfAbsent(procedure, key -> {
+            final byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+            return ByteBuffer.allocate(1 + bytes.length).put((byte) bytes.length).put(bytes).flip();
+        });
+        // the ring has a single producer, so concurrent callers take turns
+        synchronized (outbound) {
+            outbound.write(name.duplicate(), frame.duplicate());
+        }
+    }
+
+    private void readLoop() {
+        int idle = 0;
+        while (running) {
+            final int read = inbound.drain(this::dispatch);
+            if (read > 0) {
+                idle = 0;
+            } else {
+                idle = SharedMemoryRing.idle(idle);
+            }
+        }
+    }
+
+    /**
+     * Function to hand one inbound message to the receiver or the handler. A
+     * failing frame is logged and skipped so the ring keeps moving.
+     *
+     * @param message the message, positioned at the length of the name
+     */
+    private void dispatch(final ByteBuffer message) {
+        try {
+            final byte[] name = new byte[message.get() & 0xFF];
+            message.get(name);
+            final String procedure = new String(name, StandardCharsets.UTF_8);
+            if (procedure.equals(DELIVER)) {
+                final byte[] data = new byte[message.remaining()];
+                message.get(data);
+                receiver.accept(data);
+            } else {
+                handler.call(procedure, message);
+            }
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "Skipped a failing inbound frame", e);
+        }
+    }
+}
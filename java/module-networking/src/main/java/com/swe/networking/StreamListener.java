@@ -0,0 +1,20 @@
+package com.swe.networking;
+
+import java.nio.file.Path;
+
+/**
+ * Interface which the networking module invokes once a streamed payload has
+ * been reassembled. The file belongs to the listener, which should map or
+ * read it and then delete it.
+ *
+ */
+@FunctionalInterface
+public interface StreamListener {
+    /**
+     * Function to call on receiving a complete stream.
+     *
+     * @param file the temporary file holding the payload
+     * @param size the size of the payload in bytes
+     */
+    void receiveStream(Path file, long size);
+}
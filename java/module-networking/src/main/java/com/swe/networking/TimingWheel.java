@@ -0,0 +1,141 @@
+package com.swe.networking;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timing wheel running many short timers on one thread.
+ *
+ * <p>Scheduling and cancelling are O(1), which suits per-packet
+ * retransmit timers that are almost always cancelled before they fire. A
+ * timer fires on the first tick at or after its deadline, so the precision
+ * is one tick.
+ */
+final class TimingWheel {
+    /** Length of a tick in nanoseconds. */
+    private final long tickNanos;
+
+    /** Timers per slot, the slot of a timer being its deadline tick modulo the wheel size. */
+    private final List<Timeout>[] slots;
+
+    /** Ticks processed so far. */
+    private long tick;
+
+    /** Thread advancing the wheel. */
+    private final Thread worker;
+
+    /** Whether the wheel was stopped. */
+    private volatile boolean stopped;
+
+    /**
+     * Handle of a scheduled task.
+     */
+    static final class Timeout {
+        /** The task. */
+        private final Runnable task;
+
+        /** Full turns of the wheel left before the task is due. */
+        private long rounds;
+
+        /** Whether the task was cancelled. */
+        private volatile boolean cancelled;
+
+        Timeout(final Runnable timeoutTask, final long turns) {
+            this.task = timeoutTask;
+            this.rounds = turns;
+        }
+
+        /**
+         * Function to cancel the task if it has not run yet.
+         */
+        void cancel() {
+            cancelled = true;
+        }
+    }
+
+    /**
+     * Creates a wheel and starts its thread.
+     *
+     * @param tickMicros the tick length in microseconds
+     * @param wheelSize  the number of slots
+     * @param name       the name of the thread
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    TimingWheel(final long tickMicros, final int wheelSize, final String name) {
+        this.tickNanos = TimeUnit.MICROSECONDS.toNanos(tickMicros);
+        this.slots = new List[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            slots[i] = new ArrayList<>();
+        }
+        this.worker = new Thread(this::run, name);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * Function to run a task after a delay.
+     *
+     * @param task        the task, run on the wheel thread
+     * @param delayMicros the delay in microseconds
+     * @return the handle to cancel the task with
+     */
+    Timeout schedule(final Runnable task, final long delayMicros) {
+        final long ticks = Math.max(1, (TimeUnit.MICROSECONDS.toNanos(delayMicros) + tickNanos - 1) / tickNanos);
+        synchronized (this) {
+            final Timeout timeout = new Timeout(task, (ticks - 1) / slots.length);
+            slots[(int) ((tick + ticks) % slots.length)].add(timeout);
+            return timeout;
+        }
+    }
+
+    /**
+     * Function to stop the wheel. Pending tasks never run.
+     */
+    void stop() {
+        stopped = true;
+        LockSupport.unpark(worker);
+    }
+
+    private void run() {
+        long deadline = System.nanoTime() + tickNanos;
+        final List<Timeout> due = new ArrayList<>();
+        while (!stopped) {
+            final long wait = deadline - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(this, wait);
+                continue;
+            }
+            deadline += tickNanos;
+            synchronized (this) {
+                tick++;
+                final List<Timeout> slot = slots[(int) (tick % slots.length)];
+                for (int i = slot.size() - 1; i >= 0; i--) {
+                    final Timeout timeout = slot.get(i);
+                    if (timeout.rounds > 0 && !timeout.cancelled) {
+                        timeout.rounds--;
+                        continue;
+                    }
+                    if (!timeout.cancelled) {
+                        due.add(timeout);
+                    }
+                    // the entries after i were already visited, so the last one can fill the gap
+                    slot.set(i, slot.get(slot.size() - 1));
+                    slot.remove(slot.size() - 1);
+                }
+            }
+            for (Timeout timeout : due) {
+                if (!timeout.cancelled) {
+                    try {
+                        timeout.task.run();
+                    } catch (RuntimeException e) {
+                        final Thread current = Thread.currentThread();
+                        current.getUncaughtExceptionHandler().uncaughtException(current, e);
+                    }
+                }
+            }
+            due.clear();
+        }
+    }
+}
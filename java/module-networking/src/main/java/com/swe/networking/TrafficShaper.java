@@ -0,0 +1,274 @@
+package com.swe.networking;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.LongSupplier;
+
+/**
+ * Shapes the outgoing bytes of every module and every destination with a
+ * token bucket, holding the producer thread back until its send fits.
+ *
+ * <p>A bucket fills at its rate up to its burst size. A send takes its bytes
+ * even when that drives the bucket into debt, and the producer then waits
+ * out the debt, so a payload larger than the burst still goes out and
+ * concurrent producers are served in the order they arrived. Rates can be
+ * changed while producers are waiting; the new rate applies to the next
+ * send. Sends to modules or destinations without a rate are never held back,
+ * and neither are the envelopes of the reserved modules, whose payloads were
+ * shaped when they were first sent.
+ *
+ * <p>Asynchronous sends do not hold their producer back: a send that does not
+ * fit yet is handed to a timer and goes out once its debt is paid. While any
+ * send waits on the timer, later sends queue behind it, so the sends of a
+ * module keep their order.
+ */
+final class TrafficShaper {
+    /** Nanoseconds per second. */
+    private static final double NANOS = 1e9;
+
+    /** Timer running the asynchronous sends that had to wait for tokens. */
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(task -> {
+        final Thread thread = new Thread(task, "networking-shaper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** Asynchronous sends waiting on the timer. */
+    private final AtomicInteger delayed = new AtomicInteger();
+
+    /** Source of the time the buckets refill by, in nanoseconds. */
+    private final LongSupplier clock;
+
+    /** Bucket of every shaped module, by module id. */
+    private volatile TokenBucket[] modules = new TokenBucket[0];
+
+    /** Bucket of every shaped destination. */
+    private final Map<ClientNode, TokenBucket> destinations = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a shaper whose buckets refill by {@link System#nanoTime}.
+     */
+    TrafficShaper() {
+        this(System::nanoTime);
+    }
+
+    /**
+     * Creates a shaper whose buckets refill by the given clock. The producers
+     * and the timer still wait in real time.
+     *
+     * @param nanoClock the source of the time in nanoseconds
+     */
+    TrafficShaper(final LongSupplier nanoClock) {
+        this.clock = nanoClock;
+    }
+
+    /**
+     * Function to set or clear the rate of a module.
+     *
+     * @param module         the module
+     * @param bytesPerSecond the rate, or 0 to stop shaping the module
+     * @param burstBytes     the bytes that can go out at once after a pause
+     */
+    synchronized void setModuleRate(final int module, final long bytesPerSecond, final long burstBytes) {
+        final TokenBucket[] next = Arrays.copyOf(modules, Math.max(modules.length, module + 1));
+        next[module] = reconfigure(next[module], bytesPerSecond, burstBytes);
+        modules = next;
+    }
+
+    /**
+     * Function to set or clear the rate of a destination.
+     *
+     * @param node           the destination
+     * @param bytesPerSecond the rate, or 0 to stop shaping the destination
+     * @param burstBytes     the bytes that can go out at once after a pause
+     */
+    void setDestinationRate(final ClientNode node, final long bytesPerSecond, final long burstBytes) {
+        destinations.compute(node, (key, bucket) -> reconfigure(bucket, bytesPerSecond, burstBytes));
+    }
+
+    /**
+     * Function to get the rate of a module.
+     *
+     * @param module the module
+     * @return the rate in bytes per second, or 0 if the module is not shaped
+     */
+    long moduleRate(final int module) {
+        return rate(moduleBucket(module));
+    }
+
+    /**
+     * Function to get the rate of a destination.
+     *
+     * @param node the destination
+     * @return the rate in bytes per second, or 0 if the destination is not shaped
+     */
+    long destinationRate(final ClientNode node) {
+        return rate(destinations.get(node));
+    }
+
+    /**
+     * Function to wait until a send fits the buckets of its module and of
+     * every destination.
+     *
+     * @param module the module
+     * @param dest   the destinations, or null for a broadcast
+     * @param bytes  the size of the send
+     */
+    void acquire(final int module, final ClientNode[] dest, final int bytes) {
+        final long waitNanos = take(module, dest, bytes);
+        final long deadline = System.nanoTime() + waitNanos;
+        long remaining = waitNanos;
+        while (remaining > 0 && !Thread.currentThread().isInterrupted()) {
+            LockSupport.parkNanos(this, remaining);
+            remaining = deadline - System.nanoTime();
+        }
+    }
+
+    /**
+     * Function to run a send once it fits the buckets of its module and of
+     * every destination, without holding the caller back. The send runs on
+     * the caller thread if it fits now and no earlier send is still waiting,
+     * and on the timer thread otherwise.
+     *
+     * @param module the module
+     * @param dest   the destinations, or null for a broadcast
+     * @param bytes  the size of the send
+     * @param send   the send
+     */
+    void schedule(final int module, final ClientNode[] dest, final int bytes, final Runnable send) {
+        final long waitNanos = take(module, dest, bytes);
+        if (waitNanos == 0 && delayed.get() == 0) {
+            send.run();
+            return;
+        }
+        delayed.incrementAndGet();
+        TIMER.schedule(() -> {
+            try {
+                send.run();
+            } finally {
+                delayed.decrementAndGet();
+            }
+        }, waitNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Function to take the tokens of a send from the buckets of its module and
+     * of every destination.
+     *
+     * @param module the module
+     * @param dest   the destinations, or null for a broadcast
+     * @param bytes  the size of the send
+     * @return how long the send must wait, in nanoseconds
+     */
+    long take(final int module, final ClientNode[] dest, final int bytes) {
+        if (module < 0) {
+            return 0;
+        }
+        long waitNanos = 0;
+        final TokenBucket bucket = moduleBucket(module);
+        if (bucket != null) {
+            waitNanos = bucket.take(bytes);
+        }
+        if (dest != null && !destinations.isEmpty()) {
+            for (ClientNode node : dest) {
+                final TokenBucket destination = destinations.get(node);
+                if (destination != null) {
+                    waitNanos = Math.max(waitNanos, destination.take(bytes));
+                }
+            }
+        }
+        return waitNanos;
+    }
+
+    private TokenBucket moduleBucket(final int module) {
+        final TokenBucket[] current = modules;
+        if (module < 0 || module >= current.length) {
+            return null;
+        }
+        return current[module];
+    }
+
+    private TokenBucket reconfigure(final TokenBucket bucket, final long bytesPerSecond, final long burstBytes) {
+        if (bytesPerSecond <= 0) {
+            return null;
+        }
+        if (bucket == null) {
+            return new TokenBucket(clock, bytesPerSecond, burstBytes);
+        }
+        bucket.configure(bytesPerSecond, burstBytes);
+        return bucket;
+    }
+
+    private static long rate(final TokenBucket bucket) {
+        if (bucket == null) {
+            return 0;
+        }
+        return bucket.rate();
+    }
+
+    /**
+     * Token bucket of one module or destination.
+     */
+    private static final class TokenBucket {
+        /** Source of the time in nanoseconds. */
+        private final LongSupplier clock;
+
+        /** Fill rate in bytes per second. */
+        private long rate;
+
+        /** Most tokens the bucket holds. */
+        private long burst;
+
+        /** Tokens in the bucket, negative while producers wait out a debt. */
+        private double tokens;
+
+        /** When the tokens were last brought up to date. */
+        private long refilledNanos;
+
+        TokenBucket(final LongSupplier nanoClock, final long bytesPerSecond, final long burstBytes) {
+            this.clock = nanoClock;
+            this.refilledNanos = nanoClock.getAsLong();
+            this.rate = bytesPerSecond;
+            this.burst = burstBytes;
+            this.tokens = burstBytes;
+        }
+
+        synchronized void configure(final long bytesPerSecond, final long burstBytes) {
+            refill();
+            rate = bytesPerSecond;
+            burst = burstBytes;
+            tokens = Math.min(tokens, burstBytes);
+        }
+
+        synchronized long rate() {
+            return rate;
+        }
+
+        /**
+         * Function to take the tokens of a send.
+         *
+         * @param bytes the size of the send
+         * @return how long the producer must wait, in nanoseconds
+         */
+        synchronized long take(final int bytes) {
+            refill();
+            tokens -= bytes;
+            if (tokens >= 0) {
+                return 0;
+            }
+            return (long) (-tokens * NANOS / rate);
+        }
+
+        private void refill() {
+            final long now = clock.getAsLong();
+            tokens = Math.min(burst, tokens + (now - refilledNanos) * rate / NANOS);
+            refilledNanos = now;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package com.swe.networking;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the zero-copy delivery contract of {@link BufferListener}.
+ */
+class BufferListenerTest {
+    private static byte[] inbound(final int module, final int priority, final byte[] payload) {
+        return ByteBuffer.allocate(2 * Integer.BYTES + payload.length).putInt(module).putInt(priority).put(payload)
+                .array();
+    }
+
+    @Test
+    void viewsStayValidAfterReturning() {
+        final NetworkFront front = new NetworkFront();
+        final List<ByteBuffer> kept = new ArrayList<>();
+        front.subscribe(3, (data, module, priority) -> {
+            assertTrue(data.isReadOnly());
+            assertEquals(3, module);
+            assertEquals(7, priority);
+            kept.add(data);
+        });
+        front.networkFrontCallSubscriber(inbound(3, 7, new byte[] {1, 2}));
+        front.networkFrontCallSubscriber(inbound(3, 7, new byte[] {3, 4}));
+        final byte[] first = new byte[2];
+        kept.get(0).get(first);
+        assertArrayEquals(new byte[] {1, 2}, first);
+        assertEquals(2, kept.get(1).remaining());
+    }
+
+    @Test
+    void everyListenerGetsItsOwnView() {
+        final NetworkFront front = new NetworkFront();
+        final List<Integer> seen = new ArrayList<>();
+        front.subscribe(1, (data, module, priority) -> data.position(data.limit()));
+        front.subscribe(1, (data, module, priority) -> seen.add(data.remaining()));
+        front.networkFrontCallSubscriber(inbound(1, 0, new byte[5]));
+        assertEquals(List.of(5), seen);
+    }
+
+    @Test
+    void publisherViewsAreReadOnly() {
+        final ModulePublisher publisher = new ModulePublisher(4, OverflowPolicy.SHED);
+        final List<ByteBuffer> received = new ArrayList<>();
+        publisher.subscribe(new Flow.Subscriber<ByteBuffer>() {
+            @Override
+            public void onSubscribe(final Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(final ByteBuffer item) {
+                received.add(item);
+            }
+
+            @Override
+            public void onError(final Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        publisher.receiveData(ByteBuffer.wrap(new byte[3]), 0, 0);
+        assertEquals(1, received.size());
+        assertTrue(received.get(0).isReadOnly());
+    }
+}
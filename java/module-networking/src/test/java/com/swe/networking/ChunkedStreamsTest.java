@@ -0,0 +1,84 @@
+package com.swe.networking;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the chunking and reassembly of streamed payloads.
+ */
+class ChunkedStreamsTest {
+    /** Chunks handed to the networking module. */
+    private final List<byte[]> sent = new ArrayList<>();
+
+    /** Networking module recording the broadcasts. */
+    private final AbstractNetworking network = (AbstractNetworking) Proxy.newProxyInstance(
+            getClass().getClassLoader(), new Class<?>[] {AbstractNetworking.class}, (proxy, method, args) -> {
+                if (method.getName().equals("broadcast")) {
+                    sent.add((byte[]) args[0]);
+                }
+                return null;
+            });
+
+    /** Completed streams. */
+    private final List<byte[]> received = new ArrayList<>();
+
+    private final ChunkedStreams streams = new ChunkedStreams(network, 5, 4, (file, size) -> {
+        try {
+            received.add(Files.readAllBytes(file));
+            Files.delete(file);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+    });
+
+    private static ByteBuffer atOffset(final byte[] chunk) {
+        final ByteBuffer frame = ByteBuffer.allocate(chunk.length + 3);
+        frame.position(3).mark();
+        frame.put(chunk).reset();
+        return frame;
+    }
+
+    @Test
+    void everyChunkHasItsOwnArray() throws IOException {
+        final byte[] payload = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+        assertEquals(10, streams.send(new ByteArrayInputStream(payload), null, 5, 0));
+        assertEquals(3, sent.size());
+        assertNotSame(sent.get(0), sent.get(1));
+        for (byte[] chunk : sent) {
+            streams.receiveData(atOffset(chunk), 5, 0);
+        }
+        assertEquals(1, received.size());
+        assertArrayEquals(payload, received.get(0));
+    }
+
+    @Test
+    void duplicateChunksAreWrittenOnce() throws IOException {
+        final byte[] payload = {1, 2, 3, 4, 5, 6, 7, 8, 9};
+        streams.send(new ByteArrayInputStream(payload), null, 5, 0);
+        streams.receiveData(ByteBuffer.wrap(sent.get(0)), 5, 0);
+        streams.receiveData(ByteBuffer.wrap(sent.get(0)), 5, 0);
+        streams.receiveData(ByteBuffer.wrap(sent.get(2)), 5, 0);
+        assertEquals(0, received.size());
+        streams.receiveData(ByteBuffer.wrap(sent.get(1)), 5, 0);
+        assertEquals(1, received.size());
+        assertArrayEquals(payload, received.get(0));
+        assertEquals(0, streams.failedCount());
+    }
+
+    @Test
+    void chunksMustHoldData() {
+        assertThrows(IllegalArgumentException.class, () -> new ChunkedStreams(network, 5, 0, null));
+        assertThrows(IllegalArgumentException.class, () -> new ChunkedStreams(network, 5, -1, null));
+    }
+}
@@ -0,0 +1,84 @@
+package com.swe.networking;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the clusters and relays of the topology and the broadcasts the
+ * relays forward.
+ */
+class ClusterTopologyTest {
+    private static final ClientNode A = new ClientNode("a", 1);
+
+    private static final ClientNode B = new ClientNode("b", 1);
+
+    private static final ClientNode C = new ClientNode("c", 1);
+
+    private static final ClientNode D = new ClientNode("d", 1);
+
+    @Test
+    void joiningClientsFillTheFirstClusterWithRoom() {
+        final ClusterTopology topology = new ClusterTopology(2);
+        topology.join(A);
+        topology.join(B);
+        topology.join(C);
+        topology.join(A);
+        assertArrayEquals(new ClientNode[][] {{A, B}, {C}}, topology.clusters());
+        assertEquals(A, topology.relayOf(B));
+        assertEquals(C, topology.relayOf(C));
+        assertNull(topology.relayOf(D));
+        topology.leave(B);
+        topology.join(D);
+        assertArrayEquals(new ClientNode[][] {{A, D}, {C}}, topology.clusters());
+    }
+
+    @Test
+    void aLeavingRelayHandsOverToTheLongestStandingMember() {
+        final ClusterTopology topology = new ClusterTopology(3);
+        topology.join(A);
+        topology.join(B);
+        topology.join(C);
+        final ClientNode[][] before = topology.clusters();
+        topology.leave(A);
+        assertArrayEquals(new ClientNode[][] {{B, C}}, topology.clusters());
+        assertEquals(B, topology.relayOf(C));
+        assertArrayEquals(new ClientNode[][] {{A, B, C}}, before);
+        topology.leave(B);
+        topology.leave(C);
+        topology.leave(C);
+        assertArrayEquals(new ClientNode[0][], topology.clusters());
+        assertNull(topology.relayOf(C));
+    }
+
+    @Test
+    void relayForwardsOverDirectConnections() {
+        final List<String> procedures = new ArrayList<>();
+        final List<ClientNode[]> destinations = new ArrayList<>();
+        final NetworkFront relay = new NetworkFront((procedure, frame) -> {
+            procedures.add(procedure);
+            if (procedure.equals(FrameTransport.SEND_DIRECT)) {
+                destinations.add(FrameCodec.getDestinations(frame.duplicate()));
+            }
+        }, new BufferPool(false));
+        final List<Integer> delivered = new ArrayList<>();
+        relay.subscribe(4, (data, module, priority) -> delivered.add((int) data.get()));
+        procedures.clear();
+        final ClientNode[] members = {new ClientNode("b", 1), new ClientNode("c", 1)};
+        final ByteBuffer envelope = ByteBuffer.allocate(64);
+        envelope.putInt(FrameCodec.RELAY_MODULE).putInt(0).putInt(4);
+        FrameCodec.putDestinations(envelope, members);
+        envelope.put((byte) 5);
+        final byte[] inbound = new byte[envelope.position()];
+        envelope.flip().get(inbound);
+        relay.networkFrontCallSubscriber(inbound);
+        assertEquals(List.of(FrameTransport.SEND_DIRECT), procedures);
+        assertArrayEquals(members, destinations.get(0));
+        assertEquals(List.of(5), delivered);
+    }
+}
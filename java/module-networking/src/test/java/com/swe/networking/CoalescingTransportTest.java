@@ -0,0 +1,78 @@
+package com.swe.networking;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks batching, per-priority coalescing and failure handling of
+ * {@link CoalescingTransport}.
+ */
+class CoalescingTransportTest {
+    private final BufferPool pool = new BufferPool(false);
+
+    private ByteBuffer broadcast(final int module, final int priority) {
+        return FrameCodec.encodeBroadcast(pool, new byte[] {(byte) module}, module, priority);
+    }
+
+    private static int priorityOf(final ByteBuffer frame) {
+        return frame.getInt(frame.limit() - Integer.BYTES);
+    }
+
+    @Test
+    void batchesAreUnpackedByTheFront() {
+        final List<Integer> received = new CopyOnWriteArrayList<>();
+        final NetworkFront receiver = new NetworkFront();
+        receiver.subscribe(1, (data, module, priority) -> received.add(module));
+        receiver.subscribe(2, (data, module, priority) -> received.add(module));
+        final CoalescingTransport coalescer = new CoalescingTransport((procedure, frame) -> {
+            final int length = frame.getInt(frame.position());
+            final ByteBuffer inbound = ByteBuffer.allocate(2 * Integer.BYTES + length);
+            inbound.putInt(frame.getInt(frame.position() + Integer.BYTES + length));
+            inbound.putInt(priorityOf(frame));
+            inbound.put(frame.duplicate().position(frame.position() + Integer.BYTES).limit(frame.position()
+                    + Integer.BYTES + length));
+            receiver.networkFrontCallSubscriber(inbound.array());
+        }, pool, 1024, TimeUnit.SECONDS.toMicros(10));
+        coalescer.call(FrameTransport.BROADCAST, broadcast(1, 0));
+        coalescer.call(FrameTransport.BROADCAST, broadcast(2, 0));
+        assertTrue(received.isEmpty());
+        coalescer.shutdown();
+        assertEquals(List.of(1, 2), received);
+        assertEquals(0, coalescer.failedCount());
+    }
+
+    @Test
+    void messagesAreCoalescedPerPriority() {
+        final List<Integer> priorities = new CopyOnWriteArrayList<>();
+        final CoalescingTransport coalescer = new CoalescingTransport(
+                (procedure, frame) -> priorities.add(priorityOf(frame)), pool, 1024, TimeUnit.SECONDS.toMicros(10));
+        coalescer.call(FrameTransport.BROADCAST, broadcast(1, 3));
+        coalescer.call(FrameTransport.BROADCAST, broadcast(2, 0));
+        coalescer.call(FrameTransport.BROADCAST, broadcast(3, 3));
+        coalescer.shutdown();
+        assertEquals(List.of(0, 3), priorities);
+    }
+
+    @Test
+    void aRejectedTimerFlushIsReported() throws InterruptedException {
+        final CoalescingTransport coalescer = new CoalescingTransport((procedure, frame) -> {
+            throw new IllegalStateException("rejected");
+        }, pool, 1024, 1000);
+        coalescer.call(FrameTransport.BROADCAST, broadcast(1, 0));
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (coalescer.failedCount() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(1, coalescer.failedCount());
+        final var async = coalescer.callAsync(FrameTransport.BROADCAST, broadcast(1, 0));
+        coalescer.flush();
+        assertTrue(async.isCompletedExceptionally());
+        coalescer.shutdown();
+    }
+}
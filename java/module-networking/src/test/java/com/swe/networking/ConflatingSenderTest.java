@@ -0,0 +1,83 @@
+package com.swe.networking;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the conflation keys and failure handling of {@link ConflatingSender}.
+ */
+class ConflatingSenderTest {
+    private static final ClientNode A = new ClientNode("10.0.0.1", 6000);
+
+    private static final ClientNode B = new ClientNode("10.0.0.2", 6000);
+
+    /** Released once the test has queued its updates. */
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    /** Values sent, as destination host and first byte. */
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+
+    private ConflatingSender sender;
+
+    @AfterEach
+    void tearDown() {
+        sender.shutdown();
+    }
+
+    private NetworkFront recordingFront() {
+        return new NetworkFront((procedure, frame) -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            final ClientNode[] dest = FrameCodec.getDestinations(frame.duplicate());
+            sent.add(dest[0].hostName() + ":" + frame.get(FrameCodec.payloadStart(procedure, frame) + Integer.BYTES));
+        }, new BufferPool(false));
+    }
+
+    private void awaitSent(final int count) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (sent.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(count, sent.size(), sent.toString());
+    }
+
+    @Test
+    void updatesForOtherDestinationsAreKept() throws InterruptedException {
+        sender = new ConflatingSender(recordingFront());
+        sender.publish(1, 7, new byte[] {0}, new ClientNode[] {B}, 0);
+        // wait for the drain thread to hold the first update in the blocked transport
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (sender.pendingCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        sender.publish(1, 7, new byte[] {1}, new ClientNode[] {A}, 0);
+        sender.publish(1, 7, new byte[] {2}, new ClientNode[] {B}, 0);
+        sender.publish(1, 7, new byte[] {3}, new ClientNode[] {A}, 0);
+        assertEquals(2, sender.pendingCount());
+        release.countDown();
+        awaitSent(3);
+        assertEquals(List.of("10.0.0.2:0", "10.0.0.1:3", "10.0.0.2:2"), sent);
+        assertEquals(1, sender.conflatedCount());
+    }
+
+    @Test
+    void aRejectedUpdateDoesNotStopTheSender() throws InterruptedException {
+        release.countDown();
+        sender = new ConflatingSender(recordingFront());
+        // a null value makes the front throw
+        sender.publish(1, 1, null, new ClientNode[] {A}, 0);
+        sender.publish(1, 2, new byte[] {5}, new ClientNode[] {A}, 0);
+        awaitSent(1);
+        assertEquals(List.of("10.0.0.1:5"), sent);
+        assertEquals(1, sender.failedCount());
+    }
+}
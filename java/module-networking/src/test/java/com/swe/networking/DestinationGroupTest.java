@@ -0,0 +1,81 @@
+package com.swe.networking;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the destination groups kept by the front and routed by the
+ * in-memory network.
+ */
+class DestinationGroupTest {
+    @Test
+    void membersFollowTheGroupUpdates() {
+        final NetworkFront front = new NetworkFront((procedure, frame) -> { }, new BufferPool(false));
+        final ClientNode a = new ClientNode("a", 1);
+        final ClientNode b = new ClientNode("b", 1);
+        final int group = front.registerGroup(new ClientNode[] {a});
+        front.updateGroup(group, new ClientNode[] {b}, new ClientNode[] {a});
+        assertEquals(List.of(b), front.groupMembers(group));
+        front.removeGroup(group);
+        assertEquals(List.of(), front.groupMembers(group));
+        assertEquals(List.of(), front.groupMembers(group + 1));
+    }
+
+    @Test
+    void groupFramesReachTheMembersAfterEachDelta() {
+        final LoopbackNetwork network = new LoopbackNetwork();
+        final NetworkFront sender = network.connect(new ClientNode("sender", 1));
+        final List<String> reached = new ArrayList<>();
+        final ClientNode[] nodes = new ClientNode[3];
+        for (int i = 0; i < nodes.length; i++) {
+            final ClientNode node = new ClientNode("member-" + i, 1);
+            nodes[i] = node;
+            network.connect(node).subscribe(1, data -> reached.add(node.hostName() + ":" + data[0]));
+        }
+        final int group = sender.registerGroup(new ClientNode[] {nodes[0], nodes[1]});
+        sender.sendToGroup(new byte[] {1}, group, 1, 0);
+        sender.updateGroup(group, new ClientNode[] {nodes[2]}, new ClientNode[] {nodes[0]});
+        sender.sendToGroup(new byte[] {2}, group, 1, 0);
+        assertEquals(List.of("member-0:1", "member-1:1", "member-1:2", "member-2:2"), reached);
+    }
+
+    @Test
+    void groupFramesReachExactlyTheMembersAfterConcurrentUpdates() throws InterruptedException {
+        final LoopbackNetwork network = new LoopbackNetwork();
+        final NetworkFront sender = network.connect(new ClientNode("sender", 1));
+        final List<ClientNode> nodes = new ArrayList<>();
+        final Set<ClientNode> reached = ConcurrentHashMap.newKeySet();
+        for (int i = 0; i < 8; i++) {
+            final ClientNode node = new ClientNode("member-" + i, 1);
+            nodes.add(node);
+            network.connect(node).subscribe(1, data -> reached.add(node));
+        }
+        final int group = sender.registerGroup(new ClientNode[] {nodes.get(0)});
+        final Thread[] updaters = new Thread[4];
+        for (int t = 0; t < updaters.length; t++) {
+            updaters[t] = new Thread(() -> {
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int i = 0; i < 2000; i++) {
+                    final ClientNode[] node = {nodes.get(random.nextInt(nodes.size()))};
+                    if (random.nextBoolean()) {
+                        sender.updateGroup(group, node, new ClientNode[0]);
+                    } else {
+                        sender.updateGroup(group, new ClientNode[0], node);
+                    }
+                }
+            });
+            updaters[t].start();
+        }
+        for (Thread updater : updaters) {
+            updater.join();
+        }
+        sender.sendToGroup(new byte[] {1}, group, 1, 0);
+        assertEquals(Set.copyOf(sender.groupMembers(group)), reached);
+    }
+}
@@ -0,0 +1,91 @@
+package com.swe.networking;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares the receive-path lookup of {@link DispatchTable} with the
+ * HashMap of listeners it replaced, and with the synchronized map that
+ * would have been needed to make that HashMap safe.
+ *
+ * <p>Run with {@code java -cp <test classpath> org.openjdk.jmh.Main DispatchTableBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DispatchTableBenchmark {
+    /** Number of subscribed modules. */
+    private static final int MODULES = 12;
+
+    private final DispatchTable table = new DispatchTable();
+
+    private final Map<Integer, BufferListener> hashMap = new HashMap<>();
+
+    private final Map<Integer, BufferListener> synchronizedMap = Collections.synchronizedMap(new HashMap<>());
+
+    private final ByteBuffer payload = ByteBuffer.allocate(64);
+
+    private int next;
+
+    @Setup
+    public void setUp() {
+        for (int module = 0; module < MODULES; module++) {
+            final BufferListener listener = (data, id, priority) -> {
+            };
+            table.add(module, listener);
+            hashMap.put(module, listener);
+            synchronizedMap.put(module, listener);
+        }
+    }
+
+    private int module() {
+        next = (next + 1) % MODULES;
+        return next;
+    }
+
+    @Benchmark
+    public void dispatchTable(final Blackhole hole) {
+        final int module = module();
+        for (BufferListener listener : table.get(module)) {
+            listener.receiveData(payload, module, 0);
+        }
+        hole.consume(module);
+    }
+
+    @Benchmark
+    public void hashMap(final Blackhole hole) {
+        final int module = module();
+        final BufferListener listener = hashMap.get(module);
+        if (listener != null) {
+            listener.receiveData(payload, module, 0);
+        }
+        hole.consume(module);
+    }
+
+    @Benchmark
+    public void synchronizedHashMap(final Blackhole hole) {
+        final int module = module();
+        final BufferListener listener = synchronizedMap.get(module);
+        if (listener != null) {
+            listener.receiveData(payload, module, 0);
+        }
+        hole.consume(module);
+    }
+}
@@ -0,0 +1,133 @@
+package com.swe.networking;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the recovery of lost payloads by the FEC decoder, the parity the
+ * encoder adapts to the loss, and both over a lossy loopback.
+ */
+class FecDecoderTest {
+    /** Flush deadline far past every test, so only full groups close. */
+    private static final long NO_FLUSH = 10_000_000;
+
+    /** Packets sent by the encoder, envelopes included. */
+    private final List<byte[]> packets = new ArrayList<>();
+
+    private static byte[] payload(final int id) {
+        // payloads of different lengths, so the length prefix in the parity matters
+        return ByteBuffer.allocate(Integer.BYTES + id % 5).putInt(id).array();
+    }
+
+    private static int id(final ByteBuffer data) {
+        return data.getInt(data.position());
+    }
+
+    private void encode(final FecEncoder encoder, final int from, final int count) {
+        for (int i = from; i < from + count; i++) {
+            encoder.send(payload(i), null, 0, (envelope, dest, priority) -> packets.add(envelope));
+        }
+    }
+
+    private static Set<Integer> decode(final FecDecoder decoder, final List<byte[]> arriving) {
+        final Set<Integer> ids = new HashSet<>();
+        for (byte[] packet : arriving) {
+            for (ByteBuffer data : decoder.receive(ByteBuffer.wrap(packet))) {
+                assertTrue(ids.add(id(data)), "delivered twice");
+                assertEquals(payload(id(data)).length, data.remaining());
+            }
+        }
+        return ids;
+    }
+
+    @Test
+    void oneLostPayloadPerSubgroupIsRebuilt() {
+        encode(new FecEncoder(1, new FecPolicy(8, 2, 2, NO_FLUSH)), 0, 8);
+        assertEquals(10, packets.size());
+        // payloads 3 and 6 are in subgroups 1 and 0
+        final List<byte[]> arriving = new ArrayList<>(packets);
+        arriving.remove(6);
+        arriving.remove(3);
+        assertEquals(Set.of(0, 1, 2, 3, 4, 5, 6, 7), decode(new FecDecoder(), arriving));
+    }
+
+    @Test
+    void twoLostPayloadsInOneSubgroupStayLost() {
+        encode(new FecEncoder(1, new FecPolicy(8, 2, 2, NO_FLUSH)), 0, 8);
+        final List<byte[]> arriving = new ArrayList<>(packets);
+        arriving.remove(4);
+        arriving.remove(2);
+        assertEquals(Set.of(0, 1, 3, 5, 6, 7), decode(new FecDecoder(), arriving));
+    }
+
+    @Test
+    void corruptParityRebuildsNothing() {
+        encode(new FecEncoder(1, new FecPolicy(4, 1, 1, NO_FLUSH)), 0, 4);
+        final List<byte[]> arriving = new ArrayList<>(packets);
+        arriving.remove(1);
+        // the length prefix of the parity now claims more than the packet holds
+        arriving.get(3)[FecEncoder.HEADER] ^= 0x40;
+        assertEquals(Set.of(0, 2, 3), decode(new FecDecoder(), arriving));
+    }
+
+    @Test
+    void groupsLeavingTheWindowCountTheirLoss() {
+        final FecEncoder encoder = new FecEncoder(1, new FecPolicy(4, 1, 1, NO_FLUSH));
+        encode(encoder, 0, 4);
+        final byte[] late = packets.remove(0);
+        // the parity of the first group is lost too, so payload 0 cannot come back
+        packets.remove(3);
+        encode(encoder, 4, 40);
+        final FecDecoder decoder = new FecDecoder();
+        final Set<Integer> ids = decode(decoder, packets);
+        assertEquals(43, ids.size());
+        assertTrue(decoder.lossRate(1) > 0);
+        assertEquals(0.0, decoder.lossRate(2));
+        // a packet of a group that left the window is delivered as it is
+        assertEquals(Set.of(0), decode(decoder, List.of(late)));
+    }
+
+    @Test
+    void parityFollowsTheReportedLoss() {
+        final FecEncoder encoder = new FecEncoder(1, new FecPolicy(8, 1, 4, NO_FLUSH));
+        assertEquals(1, encoder.parityCount());
+        encoder.reportLoss(0.1);
+        assertEquals(2, encoder.parityCount());
+        encoder.reportLoss(0.9);
+        assertEquals(4, encoder.parityCount());
+        encoder.reportLoss(0);
+        assertEquals(1, encoder.parityCount());
+    }
+
+    @Test
+    void paritySurvivesASeededLossyLoopback() {
+        final LoopbackNetwork network = new LoopbackNetwork();
+        network.setLossRate(0.15, 11);
+        final ClientNode sender = new ClientNode("sender", 1);
+        final ClientNode receiver = new ClientNode("receiver", 1);
+        final NetworkFront front = network.connect(sender);
+        final NetworkFront back = network.connect(receiver);
+        final Set<Integer> ids = new HashSet<>();
+        back.subscribe(1, data -> assertTrue(ids.add(ByteBuffer.wrap(data).getInt()), "delivered twice"));
+        front.setFec(1, new FecPolicy(8, 1, 4, NO_FLUSH));
+        for (int i = 0; i < 400; i++) {
+            front.sendData(payload(i), new ClientNode[] {receiver}, 1, 0);
+        }
+        front.setFec(1, null);
+        final long lost = network.droppedCount();
+        assertTrue(lost > 0);
+        // without parity every dropped payload would be missing
+        assertTrue(ids.size() > 400 - lost, ids.size() + " of 400 with " + lost + " dropped");
+        assertTrue(back.fecLossRate(1) > 0);
+        front.setFec(1, new FecPolicy(8, 1, 4, NO_FLUSH));
+        front.reportFecLoss(1, back.fecLossRate(1));
+        assertTrue(front.fecParity(1) > 1);
+    }
+}
@@ -0,0 +1,56 @@
+package com.swe.networking;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the parity groups of the FEC encoder.
+ */
+class FecEncoderTest {
+    @Test
+    void anOpenGroupIsClosedAtItsDeadline() throws InterruptedException {
+        final List<byte[]> packets = new CopyOnWriteArrayList<>();
+        final FecEncoder encoder = new FecEncoder(1, new FecPolicy(8, 1, 2, 50_000));
+        for (int i = 0; i < 3; i++) {
+            encoder.send(new byte[] {(byte) i}, null, 0, (envelope, dest, priority) -> packets.add(envelope));
+        }
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (packets.size() < 4 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(4, packets.size());
+        // index 3 of a group of 3: the parity packet
+        assertEquals(3, packets.get(3)[FecEncoder.HEADER - 3]);
+        assertEquals(3, packets.get(3)[FecEncoder.HEADER - 2]);
+        Thread.sleep(100);
+        assertEquals(4, packets.size());
+    }
+
+    @Test
+    void aGroupClosedWhenFullIsNotClosedAgain() throws InterruptedException {
+        final List<byte[]> packets = new CopyOnWriteArrayList<>();
+        // a deadline well past the second send, so only the full group closes it
+        final FecEncoder encoder = new FecEncoder(1, new FecPolicy(2, 1, 1, 50_000));
+        encoder.send(new byte[] {1}, null, 0, (envelope, dest, priority) -> packets.add(envelope));
+        encoder.send(new byte[] {2}, null, 0, (envelope, dest, priority) -> packets.add(envelope));
+        assertEquals(3, packets.size());
+        Thread.sleep(100);
+        assertEquals(3, packets.size());
+    }
+
+    @Test
+    void policiesAndModulesAreValidated() {
+        assertThrows(IllegalArgumentException.class, () -> new FecPolicy(128, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> new FecPolicy(0, 0, 0));
+        assertThrows(IllegalArgumentException.class, () -> new FecPolicy(4, 2, 1));
+        assertThrows(IllegalArgumentException.class, () -> new FecPolicy(4, 1, 5));
+        assertTrue(new FecPolicy(127, 0, 127).flushMicros() > 0);
+        assertThrows(IllegalArgumentException.class, () -> new NetworkFront().setFec(-1, new FecPolicy(4, 1, 1)));
+    }
+}
@@ -0,0 +1,115 @@
+package com.swe.networking;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the link emulator around a networking module.
+ */
+class ImpairedNetworkingTest {
+    private static final ClientNode NODE = new ClientNode("a", 1);
+
+    /** Arrival time of every message the wrapped module sent, by first payload byte. */
+    private final Map<Byte, Long> arrivals = new ConcurrentHashMap<>();
+
+    /** Wrapped module recording its sends. */
+    private final AbstractNetworking recording = (AbstractNetworking) Proxy.newProxyInstance(
+            getClass().getClassLoader(), new Class<?>[] {AbstractNetworking.class}, (proxy, method, args) -> {
+                arrivals.put(((byte[]) args[0])[0], System.nanoTime());
+                return CompletableFuture.completedFuture(null);
+            });
+
+    private static List<Long> plan(final LinkProfile profile, final long seed, final int messages) {
+        final ImpairedNetworking impaired = new ImpairedNetworking(null, profile, seed);
+        final List<Long> delays = new ArrayList<>();
+        for (int i = 0; i < messages; i++) {
+            delays.add(impaired.delayMicros(NODE, 100, 0));
+        }
+        impaired.shutdown();
+        return delays;
+    }
+
+    @Test
+    void theSameSeedMakesTheSameChoices() {
+        final LinkProfile lossy = new LinkProfile(1000, 1000, 0.3, 0.2, 0);
+        final List<Long> first = plan(lossy, 7, 200);
+        assertEquals(first, plan(lossy, 7, 200));
+        assertTrue(first.contains(ImpairedNetworking.DROPPED));
+        assertTrue(first.stream().filter(delay -> delay == ImpairedNetworking.DROPPED).count() < 100);
+        assertNotEquals(first, plan(lossy, 8, 200));
+    }
+
+    @Test
+    void delaysStayWithinLatencyAndJitter() {
+        final List<Long> delays = plan(new LinkProfile(10_000, 5_000, 0, 0, 0), 1, 100);
+        for (long delay : delays) {
+            assertTrue(delay >= 10_000 && delay < 15_000, Long.toString(delay));
+        }
+        assertTrue(delays.stream().distinct().count() > 1);
+    }
+
+    @Test
+    void reorderHoldsMessagesBackWithoutLatency() {
+        final List<Long> delays = plan(new LinkProfile(0, 0, 0, 0.5, 0), 1, 100);
+        assertTrue(delays.contains(0L));
+        assertTrue(delays.contains(ImpairedNetworking.MIN_REORDER_MICROS));
+        assertEquals(2, delays.stream().distinct().count());
+    }
+
+    @Test
+    void theBandwidthCapSpacesMessagesOut() {
+        // 100 bytes at 1000 bytes per second take 100 ms each
+        final ImpairedNetworking impaired = new ImpairedNetworking(null, new LinkProfile(0, 0, 0, 0, 1000), 1);
+        assertEquals(100_000, impaired.delayMicros(NODE, 100, 0));
+        assertEquals(200_000, impaired.delayMicros(NODE, 100, 0));
+        assertEquals(150_000, impaired.delayMicros(NODE, 100, 150_000));
+        // an idle link starts again from now
+        assertEquals(100_000, impaired.delayMicros(NODE, 100, 1_000_000));
+        impaired.shutdown();
+    }
+
+    @Test
+    void sentMessagesArriveAfterTheLatencyAndDroppedOnesNever() throws Exception {
+        final ImpairedNetworking impaired = new ImpairedNetworking(recording, new LinkProfile(20_000, 0, 0.2, 0, 0), 3);
+        final Map<Byte, Long> sentAt = new ConcurrentHashMap<>();
+        final List<CompletableFuture<Void>> sends = new ArrayList<>();
+        for (byte i = 0; i < 50; i++) {
+            sentAt.put(i, System.nanoTime());
+            sends.add(impaired.sendDataAsync(new byte[] {i}, new ClientNode[] {NODE}, 1, 0));
+        }
+        CompletableFuture.allOf(sends.toArray(new CompletableFuture<?>[0])).get(5, TimeUnit.SECONDS);
+        assertEquals(50, arrivals.size() + impaired.droppedCount());
+        assertTrue(impaired.droppedCount() > 0);
+        arrivals.forEach((message, arrival) -> assertTrue(arrival - sentAt.get(message)
+                >= TimeUnit.MILLISECONDS.toNanos(20), message + " arrived early"));
+        impaired.shutdown();
+    }
+
+    @Test
+    void aThrowingSendFailsItsFuture() {
+        final AbstractNetworking failing = (AbstractNetworking) Proxy.newProxyInstance(
+                getClass().getClassLoader(), new Class<?>[] {AbstractNetworking.class}, (proxy, method, args) -> {
+                    throw new IllegalStateException("closed");
+                });
+        final ImpairedNetworking impaired = new ImpairedNetworking(failing,
+                new LinkProfile(1000, 0, 0, 0, 0), 1);
+        final CompletableFuture<Void> sent = impaired.sendDataAsync(new byte[] {1},
+                new ClientNode[] {new ClientNode("a", 1)}, 1, 0);
+        final ExecutionException error = assertThrows(ExecutionException.class, () -> sent.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, error.getCause());
+        assertEquals("closed", error.getCause().getMessage());
+    }
+}
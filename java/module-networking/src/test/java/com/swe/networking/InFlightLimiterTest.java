@@ -0,0 +1,97 @@
+package com.swe.networking;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the in-flight budgets of the asynchronous sends.
+ */
+class InFlightLimiterTest {
+    /** Futures of the frames handed to the transport, completed by the test. */
+    private final List<CompletableFuture<Void>> pending = new CopyOnWriteArrayList<>();
+
+    /** First payload byte of every frame and the thread that wrote it. */
+    private final List<String> written = new CopyOnWriteArrayList<>();
+
+    private final NetworkFront front = new NetworkFront(new FrameTransport() {
+        @Override
+        public void call(final String procedure, final ByteBuffer frame) {
+            callAsync(procedure, frame);
+        }
+
+        @Override
+        public CompletableFuture<Void> callAsync(final String procedure, final ByteBuffer frame) {
+            written.add(frame.get(FrameCodec.payloadStart(procedure, frame) + Integer.BYTES) + "@"
+                    + Thread.currentThread().getName());
+            final CompletableFuture<Void> done = new CompletableFuture<>();
+            pending.add(done);
+            return done;
+        }
+    }, new BufferPool(false));
+
+    private void awaitWritten(final int count) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (written.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(count, written.size(), written.toString());
+    }
+
+    @Test
+    void heldBackSendsGoOutInOrderOnTheLimiterThread() throws InterruptedException {
+        front.setInFlightLimit(1, 10);
+        final String caller = Thread.currentThread().getName();
+        final CompletableFuture<Void> first = front.broadcastAsync(new byte[] {1, 0, 0, 0, 0, 0, 0, 0}, 1, 0);
+        final CompletableFuture<Void> second = front.broadcastAsync(new byte[] {2, 0, 0, 0, 0, 0, 0, 0}, 1, 0);
+        final CompletableFuture<Void> third = front.broadcastAsync(new byte[] {3}, 1, 0);
+        assertEquals(List.of("1@" + caller), written);
+        assertEquals(8, front.inFlightBytes(1));
+        pending.get(0).complete(null);
+        assertTrue(first.isDone());
+        awaitWritten(3);
+        assertEquals(List.of("1@" + caller, "2@networking-in-flight", "3@networking-in-flight"), written);
+        pending.forEach(done -> done.complete(null));
+        assertTrue(second.isDone() && third.isDone());
+        assertEquals(0, front.inFlightBytes(1));
+    }
+
+    @Test
+    void removingTheBudgetKeepsCountingTheSendsItReleases() throws InterruptedException {
+        front.setInFlightLimit(1, 10);
+        front.broadcastAsync(new byte[] {1, 0, 0, 0, 0, 0, 0, 0}, 1, 0);
+        front.broadcastAsync(new byte[] {2, 0, 0, 0, 0, 0, 0, 0}, 1, 0);
+        front.setInFlightLimit(1, -1);
+        awaitWritten(2);
+        assertEquals(16, front.inFlightBytes(1));
+        pending.forEach(done -> done.complete(null));
+        assertEquals(0, front.inFlightBytes(1));
+    }
+
+    @Test
+    void aSendBeyondTheWaitingBoundFails() throws InterruptedException {
+        front.setInFlightLimit(1, 10);
+        front.broadcastAsync(new byte[] {1, 0, 0, 0, 0, 0, 0, 0}, 1, 0);
+        final CompletableFuture<Void> queued = front.broadcastAsync(new byte[] {2, 0, 0, 0, 0, 0, 0, 0}, 1, 0);
+        final CompletableFuture<Void> rejected = front.broadcastAsync(new byte[] {3, 0, 0, 0, 0, 0, 0, 0}, 1, 0);
+        final ExecutionException failure = assertThrows(ExecutionException.class, rejected::get);
+        assertInstanceOf(RejectedExecutionException.class, failure.getCause());
+        assertFalse(queued.isDone());
+        pending.get(0).complete(null);
+        awaitWritten(2);
+        pending.get(1).complete(null);
+        assertTrue(queued.isDone());
+        assertEquals(0, front.inFlightBytes(1));
+    }
+}
@@ -0,0 +1,86 @@
+package com.swe.networking;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Messages per second the {@link LoopbackNetwork} hands to its clients when
+ * one member broadcasts to a meeting of all of them, for a small and a large
+ * number of simulated clients. Every message goes through the full send and
+ * receive path of the fronts; one operation is one delivered message.
+ *
+ * <p>Run with {@code java -cp <test classpath> org.openjdk.jmh.Main LoopbackNetworkBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoopbackNetworkBenchmark {
+    /** Broadcasts sent per invocation. */
+    private static final int BROADCASTS = 100;
+
+    /** Largest number of clients, which sizes the operations per invocation. */
+    private static final int MAX_CLIENTS = 2000;
+
+    /** Bytes of the payload of a message. */
+    private static final int PAYLOAD = 256;
+
+    /** Number of simulated clients in the meeting. */
+    @Param({"100", "2000"})
+    private int clients;
+
+    private final AtomicLong received = new AtomicLong();
+
+    private final byte[] payload = new byte[PAYLOAD];
+
+    private LoopbackNetwork network;
+
+    private NetworkFront sender;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        network = new LoopbackNetwork();
+        final ClientNode server = new ClientNode("server", 1);
+        for (int i = 0; i < clients; i++) {
+            final ClientNode node = new ClientNode("client-" + i, 1);
+            final NetworkFront front = network.connect(node);
+            front.subscribe(1, data -> received.incrementAndGet());
+            front.addUser(node, server);
+            if (i == 0) {
+                sender = front;
+            }
+        }
+    }
+
+    /**
+     * Sends the broadcasts for about {@link #BROADCASTS} times
+     * {@link #MAX_CLIENTS} deliveries, so every client count does the same
+     * work per invocation.
+     *
+     * @return the delivered count
+     */
+    @Benchmark
+    @OperationsPerInvocation(BROADCASTS * MAX_CLIENTS)
+    public long broadcastToMeeting() {
+        final int rounds = BROADCASTS * MAX_CLIENTS / (clients - 1);
+        for (int i = 0; i < rounds; i++) {
+            sender.broadcast(payload, 1, 0);
+        }
+        return received.get();
+    }
+}
@@ -0,0 +1,80 @@
+package com.swe.networking;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the routing of the in-process loopback network.
+ */
+class LoopbackNetworkTest {
+    private final LoopbackNetwork network = new LoopbackNetwork();
+
+    private final ClientNode server = new ClientNode("server", 1);
+
+    private final ClientNode a = new ClientNode("a", 1);
+
+    private final ClientNode b = new ClientNode("b", 1);
+
+    private final ClientNode c = new ClientNode("c", 1);
+
+    /** First payload byte of every message, prefixed by the receiving client. */
+    private final List<String> received = new ArrayList<>();
+
+    private NetworkFront connect(final ClientNode node) {
+        final NetworkFront front = network.connect(node);
+        front.subscribe(1, data -> received.add(node.hostName() + data[0]));
+        return front;
+    }
+
+    @Test
+    void framesReachTheirDestinationsAndMeetings() {
+        final NetworkFront frontA = connect(a);
+        final NetworkFront frontB = connect(b);
+        connect(c);
+        frontA.sendData(new byte[] {1}, new ClientNode[] {c}, 1, 0);
+        // outside a meeting a broadcast reaches every other client
+        frontA.broadcast(new byte[] {2}, 1, 0);
+        frontA.addUser(a, server);
+        frontB.addUser(b, server);
+        frontA.broadcast(new byte[] {3}, 1, 0);
+        received.sort(null);
+        assertEquals(List.of("b2", "b3", "c1", "c2"), received);
+        assertEquals(4, network.deliveredCount());
+    }
+
+    @Test
+    void aDisconnectedClientLeavesItsMeetingAndGetsNothing() {
+        final NetworkFront frontA = connect(a);
+        final NetworkFront frontB = connect(b);
+        frontA.addUser(a, server);
+        frontB.addUser(b, server);
+        network.disconnect(b);
+        frontA.broadcast(new byte[] {1}, 1, 0);
+        frontA.sendData(new byte[] {2}, new ClientNode[] {b}, 1, 0);
+        assertEquals(List.of(), received);
+        assertEquals(0, network.deliveredCount());
+    }
+
+    @Test
+    void theSameSeedDropsTheSameMessages() {
+        final List<List<Byte>> runs = new ArrayList<>();
+        for (int run = 0; run < 2; run++) {
+            final LoopbackNetwork lossy = new LoopbackNetwork();
+            lossy.setLossRate(0.3, 42);
+            final NetworkFront sender = lossy.connect(a);
+            final List<Byte> got = new ArrayList<>();
+            lossy.connect(b).subscribe(1, data -> got.add(data[0]));
+            for (int i = 0; i < 100; i++) {
+                sender.sendData(new byte[] {(byte) i}, new ClientNode[] {b}, 1, 0);
+            }
+            assertEquals(100, got.size() + lossy.droppedCount());
+            assertTrue(lossy.droppedCount() > 0 && !got.isEmpty());
+            runs.add(got);
+        }
+        assertEquals(runs.get(0), runs.get(1));
+    }
+}
@@ -0,0 +1,84 @@
+package com.swe.networking;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the per-module dispatchers and their retirement.
+ */
+class ModuleDispatcherTest {
+    private final DispatchTable table = new DispatchTable();
+
+    @Test
+    void retiredDispatcherRunsQueuedAndLateMessages() throws InterruptedException {
+        final AtomicInteger delivered = new AtomicInteger();
+        final CountDownLatch release = new CountDownLatch(1);
+        table.add(1, (data, module, priority) -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            delivered.incrementAndGet();
+        });
+        final ModuleDispatcher dispatcher = new ModuleDispatcher(1, table, DispatchMode.ORDERED, 1, 4,
+                OverflowPolicy.BLOCK);
+        for (int i = 0; i < 4; i++) {
+            dispatcher.submit(ByteBuffer.allocate(1), 0);
+        }
+        dispatcher.shutdown();
+        release.countDown();
+        // a receive thread still holding the old snapshot
+        dispatcher.submit(ByteBuffer.allocate(1), 0);
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (delivered.get() < 5 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(5, delivered.get());
+        assertEquals(0, dispatcher.queueDepth());
+        assertEquals(0, dispatcher.droppedCount());
+    }
+
+    @Test
+    void perMessageRunsAtMostTheGivenNumberAtOnce() throws InterruptedException {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger peak = new AtomicInteger();
+        final AtomicInteger delivered = new AtomicInteger();
+        table.add(2, (data, module, priority) -> {
+            peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            delivered.incrementAndGet();
+        });
+        final ModuleDispatcher dispatcher = new ModuleDispatcher(2, table, DispatchMode.PER_MESSAGE, 3, 8,
+                OverflowPolicy.SHED);
+        for (int i = 0; i < 100; i++) {
+            dispatcher.submit(ByteBuffer.allocate(1), 0);
+        }
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (delivered.get() + dispatcher.droppedCount() < 100 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue(peak.get() <= 3, "peak " + peak.get());
+        assertTrue(dispatcher.droppedCount() > 0);
+        assertEquals(100, delivered.get() + dispatcher.droppedCount());
+        dispatcher.shutdown();
+    }
+
+    @Test
+    void rejectsDispatchWithoutThreads() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new ModuleDispatcher(3, table, DispatchMode.PER_MESSAGE, 0, 8, OverflowPolicy.SHED));
+    }
+}
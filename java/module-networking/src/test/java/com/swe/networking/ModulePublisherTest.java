@@ -0,0 +1,96 @@
+package com.swe.networking;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the reactive publishers of the inbound module streams.
+ */
+class ModulePublisherTest {
+    private static byte[] inbound(final int module, final byte value) {
+        return ByteBuffer.allocate(2 * Integer.BYTES + 1).putInt(module).putInt(0).put(value).array();
+    }
+
+    /**
+     * Subscriber recording what it receives, with no demand until asked.
+     */
+    private static final class Recorder implements Flow.Subscriber<ByteBuffer> {
+        private final List<Byte> received = new ArrayList<>();
+
+        private Flow.Subscription subscription;
+
+        private boolean completed;
+
+        @Override
+        public void onSubscribe(final Flow.Subscription s) {
+            subscription = s;
+        }
+
+        @Override
+        public void onNext(final ByteBuffer item) {
+            received.add(item.get(0));
+        }
+
+        @Override
+        public void onError(final Throwable throwable) {
+        }
+
+        @Override
+        public void onComplete() {
+            completed = true;
+        }
+    }
+
+    @Test
+    void blockIsRejectedOnTheReceiveThread() {
+        final NetworkFront front = new NetworkFront();
+        assertThrows(IllegalArgumentException.class, () -> front.publisher(1, 1, OverflowPolicy.BLOCK));
+        front.configureDispatch(1, DispatchMode.ORDERED, 1, 4, OverflowPolicy.BLOCK);
+        front.publisher(1, 1, OverflowPolicy.BLOCK);
+    }
+
+    @Test
+    void aStalledSubscriberDoesNotHoldUpOtherModules() {
+        final NetworkFront front = new NetworkFront();
+        final Recorder stalled = new Recorder();
+        front.publisher(1, 1, OverflowPolicy.SHED).subscribe(stalled);
+        final List<Integer> other = new ArrayList<>();
+        front.subscribe(2, (data, module, priority) -> other.add(module));
+        for (int i = 0; i < 3; i++) {
+            front.networkFrontCallSubscriber(inbound(1, (byte) i));
+            front.networkFrontCallSubscriber(inbound(2, (byte) i));
+        }
+        assertEquals(3, other.size());
+        stalled.subscription.request(10);
+        assertEquals(List.of((byte) 0), stalled.received);
+    }
+
+    @Test
+    void removingOnePublisherKeepsTheOthers() {
+        final NetworkFront front = new NetworkFront();
+        final ModulePublisher first = front.publisher(4, 8, OverflowPolicy.SHED);
+        final ModulePublisher second = front.publisher(4, 8, OverflowPolicy.SHED);
+        final Recorder removed = new Recorder();
+        final Recorder kept = new Recorder();
+        first.subscribe(removed);
+        second.subscribe(kept);
+        front.networkFrontCallSubscriber(inbound(4, (byte) 1));
+        front.removePublisher(4, first);
+        front.networkFrontCallSubscriber(inbound(4, (byte) 2));
+        assertFalse(removed.completed);
+        removed.subscription.request(10);
+        kept.subscription.request(10);
+        assertEquals(List.of((byte) 1), removed.received);
+        assertTrue(removed.completed);
+        assertEquals(List.of((byte) 1, (byte) 2), kept.received);
+        assertFalse(kept.completed);
+    }
+}
@@ -0,0 +1,63 @@
+package com.swe.networking;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that the send path allocates nothing per message once the buffer
+ * pool has warmed up.
+ */
+class NetworkFrontAllocationTest {
+    /** Messages sent before measuring, so the pool and the JIT warm up. */
+    private static final int WARMUP = 200_000;
+
+    /** Messages measured. */
+    private static final int MESSAGES = 100_000;
+
+    /** Bytes per message tolerated for measurement noise. */
+    private static final double BUDGET = 1.0;
+
+    private static com.sun.management.ThreadMXBean threads() {
+        final java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        final com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+
+    private static double bytesPerMessage(final Runnable send) {
+        final com.sun.management.ThreadMXBean threads = threads();
+        for (int i = 0; i < WARMUP; i++) {
+            send.run();
+        }
+        final long thread = Thread.currentThread().getId();
+        final long before = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < MESSAGES; i++) {
+            send.run();
+        }
+        return (double) (threads.getThreadAllocatedBytes(thread) - before) / MESSAGES;
+    }
+
+    @Test
+    void sendDataDoesNotAllocate() {
+        final NetworkFront front = new NetworkFront((procedure, frame) -> {
+        }, new BufferPool(true));
+        final byte[] data = new byte[100];
+        final ClientNode[] dest = {new ClientNode("10.0.0.1", 6000), new ClientNode("10.0.0.2", 6000)};
+        final double allocated = bytesPerMessage(() -> front.sendData(data, dest, 1, 0));
+        assertTrue(allocated < BUDGET, "sendData allocated " + allocated + " bytes per message");
+    }
+
+    @Test
+    void broadcastDoesNotAllocate() {
+        final NetworkFront front = new NetworkFront((procedure, frame) -> {
+        }, new BufferPool(false));
+        final byte[] data = new byte[100];
+        final double allocated = bytesPerMessage(() -> front.broadcast(data, 1, 0));
+        assertTrue(allocated < BUDGET, "broadcast allocated " + allocated + " bytes per message");
+    }
+}
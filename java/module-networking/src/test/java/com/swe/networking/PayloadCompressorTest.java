@@ -0,0 +1,121 @@
+package com.swe.networking;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the compressed envelopes and their sampling.
+ */
+class PayloadCompressorTest {
+    private static final CompressionPolicy DEFLATE = new CompressionPolicy(CompressionCodec.DEFLATE, 6, 16, 0.9, 1);
+
+    private static final CompressionPolicy LZ = new CompressionPolicy(CompressionCodec.LZ, 0, 16, 0.9, 1);
+
+    private static ByteBuffer afterModule(final byte[] envelope, final int length) {
+        return ByteBuffer.wrap(envelope, 0, length).position(Integer.BYTES);
+    }
+
+    @Test
+    void truncatedDeflateFailsInsteadOfSpinning() {
+        final PayloadCompressor compressor = new PayloadCompressor();
+        compressor.setPolicy(1, DEFLATE);
+        final byte[] data = new byte[4096];
+        final byte[] envelope = compressor.pack(1, data);
+        assertNotNull(envelope);
+        assertArrayEquals(data, PayloadCompressor.unpack(afterModule(envelope, envelope.length)).array());
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> assertThrows(IllegalArgumentException.class,
+                () -> PayloadCompressor.unpack(afterModule(envelope, PayloadCompressor.HEADER + 4))));
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> assertThrows(IllegalArgumentException.class,
+                () -> PayloadCompressor.unpack(afterModule(envelope, PayloadCompressor.HEADER))));
+    }
+
+    private static byte[] withOriginalLength(final byte[] envelope, final int originalLength) {
+        final byte[] copy = envelope.clone();
+        ByteBuffer.wrap(copy).putInt(Integer.BYTES + 1, originalLength);
+        return copy;
+    }
+
+    @Test
+    void corruptAndTruncatedLzFails() {
+        final PayloadCompressor compressor = new PayloadCompressor();
+        compressor.setPolicy(1, LZ);
+        final byte[] data = new byte[4096];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i % 37);
+        }
+        final byte[] envelope = compressor.pack(1, data);
+        assertNotNull(envelope);
+        assertArrayEquals(data, PayloadCompressor.unpack(afterModule(envelope, envelope.length)).array());
+        // the wire length is checked before anything is allocated
+        for (int length : new int[] {-1, Integer.MAX_VALUE, PayloadCompressor.MAX_ORIGINAL_BYTES + 1}) {
+            final byte[] announced = withOriginalLength(envelope, length);
+            assertThrows(IllegalArgumentException.class,
+                    () -> PayloadCompressor.unpack(afterModule(announced, announced.length)));
+        }
+        // the last token holds no literals here, so only dropping it still decodes
+        for (int cut = PayloadCompressor.HEADER; cut < envelope.length - 1; cut++) {
+            final int length = cut;
+            assertThrows(IllegalArgumentException.class,
+                    () -> PayloadCompressor.unpack(afterModule(envelope, length)));
+        }
+        assertArrayEquals(data, PayloadCompressor.unpack(afterModule(envelope, envelope.length - 1)).array());
+        final byte[] longer = withOriginalLength(envelope, data.length + 1);
+        assertThrows(IllegalArgumentException.class, () -> PayloadCompressor.unpack(afterModule(longer, longer.length)));
+        final byte[] shorter = withOriginalLength(envelope, data.length - 1);
+        assertThrows(IllegalArgumentException.class,
+                () -> PayloadCompressor.unpack(afterModule(shorter, shorter.length)));
+        final Random random = new Random(7);
+        for (int i = 0; i < 1000; i++) {
+            final byte[] corrupt = envelope.clone();
+            corrupt[PayloadCompressor.HEADER + random.nextInt(corrupt.length - PayloadCompressor.HEADER)] =
+                    (byte) random.nextInt();
+            try {
+                assertEquals(data.length, PayloadCompressor.unpack(afterModule(corrupt, corrupt.length)).remaining());
+            } catch (IllegalArgumentException expected) {
+                // corrupt input may decode to other bytes, but fails only this way
+            }
+        }
+    }
+
+    @Test
+    void relayedBroadcastIsSampledOncePerSend() {
+        final List<Integer> targets = new ArrayList<>();
+        final NetworkFront front = new NetworkFront(new FrameTransport() {
+            @Override
+            public void call(final String procedure, final ByteBuffer frame) {
+                if (procedure.equals(FrameTransport.SEND_DATA)) {
+                    targets.add(frame.getInt(FrameCodec.payloadStart(procedure, frame) + Integer.BYTES));
+                }
+            }
+
+            @Override
+            public CompletableFuture<Void> callAsync(final String procedure, final ByteBuffer frame) {
+                call(procedure, frame);
+                return CompletableFuture.completedFuture(null);
+            }
+        }, new BufferPool(false));
+        final ClusterTopology topology = new ClusterTopology(1);
+        topology.join(new ClientNode("a", 1));
+        topology.join(new ClientNode("b", 1));
+        front.setRelayTopology(topology);
+        front.setCompression(2, DEFLATE);
+        final byte[] noise = new byte[256];
+        new Random(1).nextBytes(noise);
+        // incompressible, so the module backs off for one send
+        front.broadcast(noise, 2, 0);
+        front.broadcast(new byte[256], 2, 0);
+        front.broadcast(new byte[256], 2, 0);
+        assertEquals(List.of(2, 2, 2, 2, FrameCodec.COMPRESSED_MODULE, FrameCodec.COMPRESSED_MODULE), targets);
+    }
+}
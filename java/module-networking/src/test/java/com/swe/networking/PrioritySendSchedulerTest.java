@@ -0,0 +1,166 @@
+package com.swe.networking;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the ordering and failure handling of {@link PrioritySendScheduler}.
+ */
+class PrioritySendSchedulerTest {
+    private final BufferPool pool = new BufferPool(false);
+
+    /** Frames written downstream, as procedure and first payload byte. */
+    private final List<String> written = new CopyOnWriteArrayList<>();
+
+    /** Released to let the first frame through. */
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    /** Counted down once the first frame reached the downstream transport. */
+    private final CountDownLatch plugged = new CountDownLatch(1);
+
+    private PrioritySendScheduler scheduler;
+
+    @AfterEach
+    void tearDown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+        release.countDown();
+    }
+
+    private void record(final String procedure, final ByteBuffer frame) {
+        if (FrameCodec.carriesPayload(procedure)) {
+            written.add(procedure + ":" + frame.get(FrameCodec.payloadStart(procedure, frame) + Integer.BYTES));
+        } else {
+            written.add(procedure);
+        }
+    }
+
+    private ByteBuffer groupFrame(final int tag, final int priority) {
+        return FrameCodec.encodeSendGroup(pool, new byte[] {(byte) tag}, 0, 1, priority);
+    }
+
+    private void plug() throws InterruptedException {
+        scheduler.call(FrameTransport.BROADCAST, FrameCodec.encodeBroadcast(pool, new byte[] {0}, 1, 0));
+        assertTrue(plugged.await(5, TimeUnit.SECONDS));
+    }
+
+    private void awaitWritten(final int count) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (written.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(count, written.size(), written.toString());
+    }
+
+    private PrioritySendScheduler blockingScheduler() {
+        return new PrioritySendScheduler((procedure, frame) -> {
+            if (plugged.getCount() > 0) {
+                plugged.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return;
+            }
+            record(procedure, frame);
+        }, pool, new int[] {4, 2, 1}, 16);
+    }
+
+    @Test
+    void urgentFramesGoFirst() throws InterruptedException {
+        scheduler = blockingScheduler();
+        plug();
+        scheduler.call(FrameTransport.SEND_GROUP, groupFrame(2, 2));
+        scheduler.call(FrameTransport.SEND_GROUP, groupFrame(1, 0));
+        release.countDown();
+        awaitWritten(2);
+        assertEquals(List.of("Networking-SendGroup:1", "Networking-SendGroup:2"), written);
+    }
+
+    @Test
+    void controlFramesKeepTheirPlaceAmongTheData() throws InterruptedException {
+        scheduler = blockingScheduler();
+        plug();
+        scheduler.call(FrameTransport.SEND_GROUP, groupFrame(1, 2));
+        scheduler.call(FrameTransport.GROUP_UPDATE,
+                FrameCodec.encodeGroupUpdate(pool, 0, new ClientNode[0], new ClientNode[0]));
+        scheduler.call(FrameTransport.SEND_GROUP, groupFrame(2, 0));
+        release.countDown();
+        awaitWritten(3);
+        assertEquals(List.of("Networking-SendGroup:1", "Networking-GroupUpdate", "Networking-SendGroup:2"),
+                written);
+    }
+
+    @Test
+    void aRejectedFrameDoesNotStopTheScheduler() throws InterruptedException {
+        scheduler = new PrioritySendScheduler((procedure, frame) -> {
+            if (frame.get(FrameCodec.payloadStart(procedure, frame) + Integer.BYTES) == 1) {
+                throw new IllegalStateException("rejected");
+            }
+            record(procedure, frame);
+        }, pool, new int[] {1}, 1);
+        for (int tag = 0; tag < 4; tag++) {
+            scheduler.call(FrameTransport.SEND_GROUP, groupFrame(tag, 0));
+        }
+        awaitWritten(3);
+        assertEquals(1, scheduler.failedCount());
+        assertEquals(List.of("Networking-SendGroup:0", "Networking-SendGroup:2", "Networking-SendGroup:3"), written);
+    }
+
+    @Test
+    void weightsBelowOneAreRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new PrioritySendScheduler((procedure, frame) -> { }, pool, new int[] {2, 0}, 4));
+        assertThrows(IllegalArgumentException.class,
+                () -> new PrioritySendScheduler((procedure, frame) -> { }, pool, new int[] {-1}, 4));
+    }
+
+    @Test
+    void shutdownFailsQueuedFramesAndWakesBlockedProducers() throws Exception {
+        scheduler = new PrioritySendScheduler((procedure, frame) -> {
+            if (plugged.getCount() > 0) {
+                plugged.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, pool, new int[] {1}, 1);
+        plug();
+        final CompletableFuture<Void> queued = scheduler.callAsync(FrameTransport.SEND_GROUP, groupFrame(1, 0));
+        final CompletableFuture<Throwable> blocked = CompletableFuture.supplyAsync(() -> {
+            try {
+                scheduler.call(FrameTransport.SEND_GROUP, groupFrame(2, 0));
+                return null;
+            } catch (IllegalStateException e) {
+                return e;
+            }
+        });
+        // the lane holds one frame, so the second producer waits for room
+        Thread.sleep(50);
+        assertFalse(blocked.isDone());
+        scheduler.shutdown();
+        final ExecutionException error = assertThrows(ExecutionException.class, () -> queued.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, error.getCause());
+        assertInstanceOf(IllegalStateException.class, blocked.get(5, TimeUnit.SECONDS));
+        assertEquals(0, scheduler.queueDepth(0));
+        assertThrows(IllegalStateException.class,
+                () -> scheduler.call(FrameTransport.SEND_GROUP, groupFrame(3, 0)));
+    }
+}
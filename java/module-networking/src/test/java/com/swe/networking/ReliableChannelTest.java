@@ -0,0 +1,205 @@
+package com.swe.networking;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the delivery, retransmits, window and sessions of the reliable
+ * channels over the in-memory network.
+ */
+class ReliableChannelTest {
+    private static final ClientNode A = new ClientNode("a", 1);
+
+    private static final ClientNode B = new ClientNode("b", 1);
+
+    private final LoopbackNetwork network = new LoopbackNetwork();
+
+    private final List<Integer> received = new CopyOnWriteArrayList<>();
+
+    /**
+     * Function to wrap a networking module so it drops some sends.
+     *
+     * @param network the module
+     * @param drop    tells from the index of a sendData call whether to drop it
+     * @return the wrapped module
+     */
+    private static AbstractNetworking dropping(final AbstractNetworking network, final IntPredicate drop) {
+        final AtomicInteger calls = new AtomicInteger();
+        return (AbstractNetworking) Proxy.newProxyInstance(ReliableChannelTest.class.getClassLoader(),
+                new Class<?>[] {AbstractNetworking.class}, (proxy, method, args) -> {
+                    if (method.getName().equals("sendData") && drop.test(calls.getAndIncrement())) {
+                        return null;
+                    }
+                    try {
+                        return method.invoke(network, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+
+    private static byte[] message(final int value) {
+        return ByteBuffer.allocate(Integer.BYTES).putInt(value).array();
+    }
+
+    private ReliableChannel receiverAt(final AbstractNetworking networking) {
+        return new ReliableChannel(networking, B, 7, 16, (data, peer) -> received.add(data.getInt()));
+    }
+
+    private static List<Integer> upTo(final int count) {
+        return IntStream.range(0, count).boxed().collect(Collectors.toList());
+    }
+
+    private void awaitReceived(final int count) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (received.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(count, received.size(), received.toString());
+    }
+
+    @Test
+    void aRestartedSenderIsNotTakenForDuplicates() throws InterruptedException {
+        final ReliableChannel receiver = new ReliableChannel(network.connect(B), B, 5, 16,
+                (data, peer) -> received.add((int) data.get()));
+        ReliableChannel sender = new ReliableChannel(network.connect(A), A, 5, 16, (data, peer) -> {
+        });
+        for (int i = 0; i < 3; i++) {
+            sender.send(new byte[] {(byte) i}, B, 0);
+        }
+        awaitReceived(3);
+        sender.shutdown();
+        network.disconnect(A);
+        // the same client comes back with a fresh channel, numbering from 0 again
+        sender = new ReliableChannel(network.connect(A), A, 5, 16, (data, peer) -> {
+        });
+        for (int i = 10; i < 13; i++) {
+            sender.send(new byte[] {(byte) i}, B, 0);
+        }
+        awaitReceived(6);
+        assertEquals(List.of(0, 1, 2, 10, 11, 12), received);
+        sender.shutdown();
+        receiver.shutdown();
+    }
+
+    @Test
+    void aRestartedReceiverStartsAtTheOldestUnacknowledgedPacket() throws InterruptedException {
+        final ReliableChannel sender = new ReliableChannel(network.connect(A), A, 6, 16, (data, peer) -> {
+        });
+        final List<Integer> before = new CopyOnWriteArrayList<>();
+        final ReliableChannel first = new ReliableChannel(network.connect(B), B, 6, 16,
+                (data, peer) -> before.add((int) data.get()));
+        sender.send(new byte[] {1}, B, 0);
+        sender.send(new byte[] {2}, B, 0);
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (sender.unacknowledged(B) > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(List.of(1, 2), before);
+        first.shutdown();
+        network.disconnect(B);
+        final ReliableChannel second = new ReliableChannel(network.connect(B), B, 6, 16,
+                (data, peer) -> received.add((int) data.get()));
+        sender.send(new byte[] {3}, B, 0);
+        awaitReceived(1);
+        assertEquals(List.of(3), received);
+        sender.shutdown();
+        second.shutdown();
+    }
+
+    @Test
+    void lossAndReorderStillDeliverEveryMessageOnceInOrder() throws InterruptedException {
+        network.setLossRate(0.1, 3);
+        final ReliableChannel receiver = receiverAt(network.connect(B));
+        final ImpairedNetworking reordering = new ImpairedNetworking(network.connect(A),
+                new LinkProfile(0, 0, 0.05, 0.3, 0), 5);
+        final ReliableChannel sender = new ReliableChannel(reordering, A, 7, 16, (data, peer) -> {
+        });
+        for (int i = 0; i < 300; i++) {
+            sender.send(message(i), B, 0);
+        }
+        awaitReceived(300);
+        assertEquals(upTo(300), received);
+        assertTrue(sender.retransmitCount() > 0);
+        assertTrue(network.droppedCount() + reordering.droppedCount() > 0);
+        sender.shutdown();
+        receiver.shutdown();
+        reordering.shutdown();
+    }
+
+    @Test
+    void aGapInTheAcknowledgementIsFilledAtOnce() throws InterruptedException {
+        final ReliableChannel receiver = receiverAt(network.connect(B));
+        final ReliableChannel sender = new ReliableChannel(dropping(network.connect(A), call -> call == 0), A, 7,
+                16, (data, peer) -> {
+                });
+        sender.send(message(0), B, 0);
+        // the loopback delivers on this thread, so the bitmap of the next
+        // acknowledgement has already brought packet 0 back, long before its timer
+        sender.send(message(1), B, 0);
+        assertEquals(List.of(0, 1), received);
+        assertEquals(1, sender.retransmitCount());
+        sender.shutdown();
+        receiver.shutdown();
+    }
+
+    @Test
+    void aLonePacketIsSentAgainWhenItsTimerFires() throws InterruptedException {
+        final ReliableChannel receiver = receiverAt(network.connect(B));
+        final ReliableChannel sender = new ReliableChannel(dropping(network.connect(A), call -> call == 0), A, 7,
+                16, (data, peer) -> {
+                });
+        sender.send(message(0), B, 0);
+        assertEquals(List.of(), received);
+        awaitReceived(1);
+        assertEquals(1, sender.retransmitCount());
+        sender.shutdown();
+        receiver.shutdown();
+    }
+
+    @Test
+    void aFullWindowBlocksTheSenderUntilAcknowledged() throws Exception {
+        final ReliableChannel receiver = new ReliableChannel(network.connect(B), B, 7, 4,
+                (data, peer) -> received.add(data.getInt()));
+        final AtomicBoolean blackHole = new AtomicBoolean(true);
+        final ReliableChannel sender = new ReliableChannel(dropping(network.connect(A), call -> blackHole.get()), A,
+                7, 4, (data, peer) -> {
+                });
+        for (int i = 0; i < 4; i++) {
+            sender.send(message(i), B, 0);
+        }
+        final Thread fifth = new Thread(() -> {
+            try {
+                sender.send(message(4), B, 0);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        fifth.start();
+        Thread.sleep(50);
+        assertTrue(fifth.isAlive());
+        assertEquals(4, sender.unacknowledged(B));
+        // the timers send the window again, and its acknowledgements let the fifth in
+        blackHole.set(false);
+        fifth.join(TimeUnit.SECONDS.toMillis(5));
+        assertFalse(fifth.isAlive());
+        awaitReceived(5);
+        assertEquals(upTo(5), received);
+        sender.shutdown();
+        receiver.shutdown();
+    }
+}
@@ -0,0 +1,204 @@
+package com.swe.networking;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the messages and connections per second a main server built on
+ * {@link SelectorTransport} takes in with a thread-per-connection server
+ * reading the same messages, for a small and a large number of open
+ * connections. The clients are plain blocking sockets written round robin by
+ * the benchmark thread, so only the server side differs. A connection counts
+ * once the server has seen its HELLO and, after it closes, its end of stream.
+ *
+ * <p>Run with {@code java -cp <test classpath> org.openjdk.jmh.Main SelectorTransportBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SelectorTransportBenchmark {
+    /** Messages sent per invocation. */
+    private static final int BATCH = 1024;
+
+    /** Bytes of the payload of a message. */
+    private static final int PAYLOAD = 256;
+
+    /** Number of client connections. */
+    @Param({"16", "256"})
+    private int connections;
+
+    /** The server under test: selector or threadPerConnection. */
+    @Param({"selector", "threadPerConnection"})
+    private String server;
+
+    private final AtomicLong received = new AtomicLong();
+
+    private final AtomicLong live = new AtomicLong();
+
+    private ClientNode serverNode;
+
+    private byte[] hello;
+
+    private SelectorTransport selectorServer;
+
+    private ServerSocket blockingServer;
+
+    private Socket[] clients;
+
+    private OutputStream[] outputs;
+
+    private byte[] message;
+
+    private long expected;
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InterruptedException {
+        serverNode = new ClientNode("127.0.0.1", freePort());
+        final ByteBuffer frame = FrameCodec.encodeSendData(new BufferPool(false), new byte[PAYLOAD],
+                new ClientNode[] {serverNode}, 1, 0);
+        // length, ROUTE, sendData, frame: what a peer sends the main server
+        message = ByteBuffer.allocate(Integer.BYTES + 2 + frame.remaining()).putInt(2 + frame.remaining())
+                .put((byte) 2).put((byte) 0).put(frame).array();
+        if (server.equals("selector")) {
+            selectorServer = new SelectorTransport(serverNode, 2);
+            selectorServer.setReceiver(inbound -> received.incrementAndGet());
+            selectorServer.listen();
+        } else {
+            blockingServer = new ServerSocket();
+            blockingServer.bind(new InetSocketAddress(serverNode.hostName(), serverNode.port()), connections);
+            final Thread acceptor = new Thread(this::acceptLoop, "benchmark-acceptor");
+            acceptor.setDaemon(true);
+            acceptor.start();
+        }
+        clients = new Socket[connections];
+        outputs = new OutputStream[connections];
+        for (int i = 0; i < connections; i++) {
+            clients[i] = new Socket(serverNode.hostName(), serverNode.port());
+            clients[i].setTcpNoDelay(true);
+            outputs[i] = clients[i].getOutputStream();
+            outputs[i].write(hello(10000 + i));
+        }
+        hello = hello(9999);
+        while (liveConnections() < connections) {
+            Thread.sleep(1);
+        }
+    }
+
+    private static byte[] hello(final int port) {
+        final ByteBuffer buffer = ByteBuffer.allocate(64);
+        buffer.putInt(0).put((byte) 1);
+        FrameCodec.putNode(buffer, new ClientNode("127.0.0.1", port));
+        buffer.putInt(0, buffer.position() - Integer.BYTES);
+        final byte[] bytes = new byte[buffer.position()];
+        buffer.flip().get(bytes);
+        return bytes;
+    }
+
+    private long liveConnections() {
+        if (selectorServer != null) {
+            return selectorServer.connectionCount();
+        }
+        return live.get();
+    }
+
+    private void acceptLoop() {
+        while (!blockingServer.isClosed()) {
+            try {
+                final Socket socket = blockingServer.accept();
+                final Thread reader = new Thread(() -> readLoop(socket), "benchmark-connection");
+                reader.setDaemon(true);
+                reader.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void readLoop(final Socket socket) {
+        try (DataInputStream in = new DataInputStream(socket.getInputStream())) {
+            final byte[] body = new byte[message.length];
+            while (true) {
+                final int length = in.readInt();
+                in.readFully(body, 0, length);
+                if (body[0] == 2) {
+                    received.incrementAndGet();
+                } else if (body[0] == 1) {
+                    live.incrementAndGet();
+                }
+            }
+        } catch (IOException e) {
+            // the client closed
+            live.decrementAndGet();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        for (Socket client : clients) {
+            client.close();
+        }
+        if (selectorServer != null) {
+            selectorServer.close();
+        }
+        if (blockingServer != null) {
+            blockingServer.close();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public long messages() throws IOException {
+        for (int i = 0; i < BATCH; i++) {
+            outputs[i % connections].write(message);
+        }
+        expected += BATCH;
+        while (received.get() < expected) {
+            Thread.onSpinWait();
+        }
+        return expected;
+    }
+
+    @Benchmark
+    public long connection() throws IOException {
+        try (Socket client = new Socket(serverNode.hostName(), serverNode.port())) {
+            client.getOutputStream().write(hello);
+            while (liveConnections() <= connections) {
+                Thread.onSpinWait();
+            }
+        }
+        while (liveConnections() > connections) {
+            Thread.onSpinWait();
+        }
+        return connections;
+    }
+}
@@ -0,0 +1,169 @@
+package com.swe.networking;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the non-blocking socket transport on the loopback interface.
+ */
+class SelectorTransportTest {
+    private final List<SelectorTransport> transports = new CopyOnWriteArrayList<>();
+
+    private final List<byte[]> serverReceived = new CopyOnWriteArrayList<>();
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static void await(final BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    private SelectorTransport server(final ClientNode node, final long pendingBytes) throws IOException {
+        final SelectorTransport server = new SelectorTransport(node, 2, pendingBytes);
+        server.setReceiver(serverReceived::add);
+        server.listen();
+        transports.add(server);
+        return server;
+    }
+
+    private NetworkFront peer(final ClientNode server) throws IOException {
+        final ClientNode node = new ClientNode("127.0.0.1", freePort());
+        final SelectorTransport transport = new SelectorTransport(node, 1);
+        transports.add(transport);
+        final NetworkFront front = new NetworkFront(transport, new BufferPool(false));
+        front.addUser(node, server);
+        return front;
+    }
+
+    private static Socket rawPeer(final ClientNode server, final ClientNode claimed) throws IOException {
+        final Socket socket = new Socket();
+        socket.setReceiveBufferSize(4096);
+        socket.connect(new InetSocketAddress(server.hostName(), server.port()));
+        final ByteBuffer hello = ByteBuffer.allocate(64);
+        hello.putInt(0).put((byte) 1);
+        FrameCodec.putNode(hello, claimed);
+        hello.putInt(0, hello.position() - Integer.BYTES);
+        socket.getOutputStream().write(hello.array(), 0, hello.position());
+        return socket;
+    }
+
+    @AfterEach
+    void closeAll() throws IOException {
+        for (SelectorTransport transport : transports) {
+            transport.close();
+        }
+    }
+
+    @Test
+    void aMalformedMessageClosesOnlyItsConnection() throws Exception {
+        final ClientNode serverNode = new ClientNode("127.0.0.1", freePort());
+        server(serverNode, 1 << 20);
+        try (Socket bad = new Socket(serverNode.hostName(), serverNode.port())) {
+            final DataOutputStream out = new DataOutputStream(bad.getOutputStream());
+            out.writeInt(-5);
+            out.writeByte(2);
+            out.flush();
+            bad.setSoTimeout(5000);
+            assertEquals(-1, bad.getInputStream().read());
+        }
+        final NetworkFront front = peer(serverNode);
+        front.sendData(new byte[] {9}, new ClientNode[] {serverNode}, 1, 0);
+        await(() -> serverReceived.size() == 1);
+    }
+
+    @Test
+    void anOversizedMessageClosesItsConnectionBeforeAllocating() throws Exception {
+        final ClientNode serverNode = new ClientNode("127.0.0.1", freePort());
+        server(serverNode, 1 << 20);
+        try (Socket big = new Socket(serverNode.hostName(), serverNode.port())) {
+            final DataOutputStream out = new DataOutputStream(big.getOutputStream());
+            out.writeInt(SelectorTransport.MAX_MESSAGE_BYTES + 1);
+            out.writeByte(2);
+            out.write(new byte[1024]);
+            out.flush();
+            big.setSoTimeout(5000);
+            assertEquals(-1, big.getInputStream().read());
+        }
+        final NetworkFront front = peer(serverNode);
+        front.sendData(new byte[] {9}, new ClientNode[] {serverNode}, 1, 0);
+        await(() -> serverReceived.size() == 1);
+        assertThrows(IllegalArgumentException.class, () -> front.sendData(
+                new byte[SelectorTransport.MAX_MESSAGE_BYTES], new ClientNode[] {serverNode}, 1, 0));
+    }
+
+    @Test
+    void aPeerThatStopsReadingIsClosedByTheRoutingLoop() throws Exception {
+        final ClientNode serverNode = new ClientNode("127.0.0.1", freePort());
+        final SelectorTransport server = server(serverNode, 64 * 1024);
+        final ClientNode slowNode = new ClientNode("127.0.0.1", 1);
+        try (Socket slow = rawPeer(serverNode, slowNode)) {
+            await(() -> server.connectionCount() == 1);
+            final NetworkFront front = peer(serverNode);
+            final byte[] data = new byte[256 * 1024];
+            for (int i = 0; i < 256 && server.slowClosedCount() == 0; i++) {
+                front.sendData(data, new ClientNode[] {slowNode, serverNode}, 1, 0);
+            }
+            // frames still queued for the slow node may open and close further connections to it
+            await(() -> server.slowClosedCount() >= 1);
+            final int before = serverReceived.size();
+            front.sendData(new byte[] {1}, new ClientNode[] {serverNode}, 1, 0);
+            await(() -> serverReceived.size() > before);
+        }
+    }
+
+    @Test
+    void directFramesSkipTheMainServer() throws Exception {
+        final ClientNode serverNode = new ClientNode("127.0.0.1", freePort());
+        server(serverNode, 1 << 20);
+        final ClientNode memberNode = new ClientNode("127.0.0.1", freePort());
+        final SelectorTransport member = new SelectorTransport(memberNode, 1);
+        transports.add(member);
+        final List<byte[]> memberReceived = new CopyOnWriteArrayList<>();
+        member.setReceiver(memberReceived::add);
+        member.listen();
+        final NetworkFront relay = peer(serverNode);
+        final ByteBuffer frame = FrameCodec.encodeSendData(new BufferPool(false), new byte[] {7},
+                new ClientNode[] {memberNode}, 3, 0);
+        transports.get(transports.size() - 1).call(FrameTransport.SEND_DIRECT, frame);
+        await(() -> memberReceived.size() == 1);
+        assertEquals(3, ByteBuffer.wrap(memberReceived.get(0)).getInt());
+        assertEquals(0, serverReceived.size());
+        relay.sendData(new byte[] {1}, new ClientNode[] {serverNode}, 1, 0);
+        await(() -> serverReceived.size() == 1);
+    }
+
+    @Test
+    void closeClosesEveryConnection() throws Exception {
+        final ClientNode serverNode = new ClientNode("127.0.0.1", freePort());
+        final SelectorTransport server = server(serverNode, 1 << 20);
+        try (Socket accepted = rawPeer(serverNode, new ClientNode("127.0.0.1", 2))) {
+            await(() -> server.connectionCount() == 1);
+            server.close();
+            accepted.setSoTimeout(5000);
+            final InputStream in = accepted.getInputStream();
+            assertEquals(-1, in.read());
+        }
+    }
+}
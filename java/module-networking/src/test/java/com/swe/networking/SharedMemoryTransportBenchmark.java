@@ -0,0 +1,167 @@
+package com.swe.networking;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares {@link SharedMemoryTransport} with two {@link SelectorTransport}s
+ * talking over loopback TCP: frames per second sent one way, and the time a
+ * frame takes to go to the peer and back. Both peers live in the benchmark
+ * process, each with its own reader, as two co-located processes would.
+ *
+ * <p>Run with {@code java -cp <test classpath> org.openjdk.jmh.Main SharedMemoryTransportBenchmark}.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SharedMemoryTransportBenchmark {
+    /** Frames sent per one-way invocation. */
+    private static final int BATCH = 1024;
+
+    /** Bytes of the payload of a frame. */
+    private static final int PAYLOAD = 256;
+
+    /** The transport under test: sharedMemory or selector. */
+    @Param({"sharedMemory", "selector"})
+    private String transport;
+
+    private final AtomicLong received = new AtomicLong();
+
+    private final AtomicLong echoed = new AtomicLong();
+
+    private Path directory;
+
+    private SharedMemoryTransport front;
+
+    private SharedMemoryTransport core;
+
+    private SelectorTransport left;
+
+    private SelectorTransport right;
+
+    private ByteBuffer frame;
+
+    private ByteBuffer echo;
+
+    private volatile boolean echoing;
+
+    private long expected;
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        if (transport.equals("sharedMemory")) {
+            directory = Files.createTempDirectory("shm-benchmark");
+            front = SharedMemoryTransport.create(directory.resolve("out"), directory.resolve("in"), 1 << 20);
+            core = SharedMemoryTransport.open(directory.resolve("in"), directory.resolve("out"), 1 << 20);
+            final ByteBuffer reply = ByteBuffer.wrap(new byte[PAYLOAD]);
+            core.setHandler((procedure, data) -> {
+                received.incrementAndGet();
+                if (echoing) {
+                    core.deliver(reply);
+                }
+            });
+            front.setReceiver(data -> echoed.incrementAndGet());
+            front.start();
+            core.start();
+            frame = FrameCodec.encodeSendData(new BufferPool(false), new byte[PAYLOAD],
+                    new ClientNode[] {new ClientNode("127.0.0.1", 1)}, 1, 0);
+            return;
+        }
+        final ClientNode leftNode = new ClientNode("127.0.0.1", freePort());
+        final ClientNode rightNode = new ClientNode("127.0.0.1", freePort());
+        left = new SelectorTransport(leftNode, 1);
+        right = new SelectorTransport(rightNode, 1);
+        left.listen();
+        right.listen();
+        frame = FrameCodec.encodeSendData(new BufferPool(false), new byte[PAYLOAD], new ClientNode[] {rightNode},
+                1, 0);
+        echo = FrameCodec.encodeSendData(new BufferPool(false), new byte[PAYLOAD], new ClientNode[] {leftNode},
+                1, 0);
+        right.setReceiver(data -> {
+            received.incrementAndGet();
+            if (echoing) {
+                right.call(FrameTransport.SEND_DIRECT, echo.duplicate());
+            }
+        });
+        left.setReceiver(data -> echoed.incrementAndGet());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (front != null) {
+            front.close();
+            core.close();
+            for (String name : new String[] {"in", "out"}) {
+                Files.deleteIfExists(directory.resolve(name));
+            }
+            Files.deleteIfExists(directory);
+        } else {
+            left.close();
+            right.close();
+        }
+    }
+
+    private void send() {
+        if (front != null) {
+            front.call(FrameTransport.SEND_DATA, frame.duplicate());
+        } else {
+            left.call(FrameTransport.SEND_DIRECT, frame.duplicate());
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @OperationsPerInvocation(BATCH)
+    public long oneWay() {
+        echoing = false;
+        for (int i = 0; i < BATCH; i++) {
+            send();
+        }
+        expected += BATCH;
+        while (received.get() < expected) {
+            Thread.yield();
+        }
+        return expected;
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long roundTrip() {
+        echoing = true;
+        final long replies = echoed.get() + 1;
+        send();
+        expected++;
+        while (echoed.get() < replies) {
+            Thread.yield();
+        }
+        return replies;
+    }
+}
@@ -0,0 +1,83 @@
+package com.swe.networking;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Checks the shared-memory rings and the transport built on them.
+ */
+class SharedMemoryTransportTest {
+    /** Ring size used by the tests. */
+    private static final int CAPACITY = 4096;
+
+    @TempDir
+    private Path directory;
+
+    private static void await(final BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    @Test
+    void aCreatedAndAnOpenedTransportTalk() throws Exception {
+        final Path toCore = directory.resolve("to-core");
+        final Path toFront = directory.resolve("to-front");
+        final SharedMemoryTransport frontSide = SharedMemoryTransport.create(toCore, toFront, CAPACITY);
+        final SharedMemoryTransport coreSide = SharedMemoryTransport.open(toFront, toCore, CAPACITY);
+        try {
+            final List<String> procedures = new CopyOnWriteArrayList<>();
+            coreSide.setHandler((procedure, frame) -> procedures.add(procedure));
+            final List<byte[]> delivered = new CopyOnWriteArrayList<>();
+            frontSide.setReceiver(delivered::add);
+            frontSide.start();
+            coreSide.start();
+            final NetworkFront front = new NetworkFront(frontSide, new BufferPool(false));
+            front.sendData(new byte[] {1}, new ClientNode[] {new ClientNode("a", 1)}, 1, 0);
+            await(() -> procedures.contains(FrameTransport.SEND_DATA));
+            coreSide.deliver(ByteBuffer.wrap(new byte[] {0, 0, 0, 1, 9}));
+            await(() -> delivered.size() == 1);
+            assertArrayEquals(new byte[] {0, 0, 0, 1, 9}, delivered.get(0));
+        } finally {
+            frontSide.close();
+            coreSide.close();
+        }
+    }
+
+    @Test
+    void creatingAgainDropsTheMessagesOfTheLastSession() throws IOException {
+        final Path file = directory.resolve("ring");
+        final SharedMemoryRing stale = SharedMemoryRing.create(file, CAPACITY);
+        stale.write(ByteBuffer.wrap(new byte[] {1, 2, 3}));
+        SharedMemoryRing.create(file, CAPACITY);
+        assertEquals(0, SharedMemoryRing.open(file, CAPACITY).drain(message -> { }));
+        assertThrows(IOException.class, () -> SharedMemoryRing.open(file, CAPACITY * 2));
+        assertThrows(IOException.class, () -> SharedMemoryRing.open(directory.resolve("missing"), CAPACITY));
+    }
+
+    @Test
+    void oversizedMessagesAreRejectedWithoutWriting() throws IOException {
+        final Path file = directory.resolve("ring");
+        final SharedMemoryRing ring = SharedMemoryRing.create(file, CAPACITY);
+        assertThrows(IllegalArgumentException.class,
+                () -> ring.write(ByteBuffer.allocate(ring.maxMessageBytes()), ByteBuffer.allocate(1)));
+        ring.write(ByteBuffer.allocate(ring.maxMessageBytes()));
+        final List<Integer> sizes = new CopyOnWriteArrayList<>();
+        assertEquals(1, SharedMemoryRing.open(file, CAPACITY).drain(message -> sizes.add(message.remaining())));
+        assertEquals(List.of(ring.maxMessageBytes()), sizes);
+    }
+}
@@ -0,0 +1,81 @@
+package com.swe.networking;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks the rate limits of the modules and destinations.
+ */
+class TrafficShaperTest {
+    /** Payload sizes of the frames written, in order. */
+    private final List<Integer> written = new CopyOnWriteArrayList<>();
+
+    private final NetworkFront front = new NetworkFront(new FrameTransport() {
+        @Override
+        public void call(final String procedure, final ByteBuffer frame) {
+            written.add(frame.remaining());
+        }
+
+        @Override
+        public CompletableFuture<Void> callAsync(final String procedure, final ByteBuffer frame) {
+            call(procedure, frame);
+            return CompletableFuture.completedFuture(null);
+        }
+    }, new BufferPool(false));
+
+    @Test
+    void waitsFollowTheDebtOfTheBucket() {
+        final AtomicLong now = new AtomicLong();
+        final TrafficShaper shaper = new TrafficShaper(now::get);
+        shaper.setModuleRate(1, 1000, 100);
+        assertEquals(0, shaper.take(1, null, 100));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(200), shaper.take(1, null, 200));
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(150));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(51), shaper.take(1, null, 1));
+        // a long pause refills the bucket up to its burst only
+        now.addAndGet(TimeUnit.SECONDS.toNanos(10));
+        assertEquals(0, shaper.take(1, null, 100));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1), shaper.take(1, null, 1));
+        assertEquals(0, shaper.take(2, null, 1_000_000));
+    }
+
+    @Test
+    void anAsyncSendWithoutTokensDoesNotHoldItsCallerBack() {
+        // the clock stands still, so the second send waits out its whole debt of a minute
+        final TrafficShaper shaper = new TrafficShaper(() -> 0);
+        shaper.setModuleRate(1, 10, 10);
+        final List<Integer> sent = new CopyOnWriteArrayList<>();
+        shaper.schedule(1, null, 10, () -> sent.add(1));
+        shaper.schedule(1, null, 600, () -> sent.add(2));
+        shaper.schedule(1, null, 0, () -> sent.add(3));
+        assertEquals(List.of(1), sent);
+    }
+
+    @Test
+    void asyncSendsCompleteInOrder() throws Exception {
+        front.setModuleRate(1, 1000, 100);
+        final CompletableFuture<Void> first = front.broadcastAsync(new byte[100], 1, 0);
+        final CompletableFuture<Void> second = front.broadcastAsync(new byte[200], 1, 0);
+        final CompletableFuture<Void> third = front.broadcastAsync(new byte[1], 1, 0);
+        assertTrue(first.isDone());
+        third.get(5, TimeUnit.SECONDS);
+        assertTrue(second.isDone());
+        assertEquals(3, written.size());
+        assertTrue(written.get(0) < written.get(1));
+        assertTrue(written.get(2) < written.get(0));
+    }
+
+    @Test
+    void negativeModulesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> front.setModuleRate(-1, 1000, 100));
+    }
+}